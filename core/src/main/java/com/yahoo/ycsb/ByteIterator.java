@@ -16,6 +16,7 @@
  */
 package com.yahoo.ycsb;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.ArrayList;
 /**
@@ -88,5 +89,10 @@ public abstract class ByteIterator implements Iterator<Byte> {
 	    }
 	    return ret;
 	}
+	/** Consumes remaining contents of this object, and returns them as a ByteBuffer.  Iterators over data
+	 *  already in memory may return a read only view of it rather than a copy. */
+	public ByteBuffer toByteBuffer() {
+	    return ByteBuffer.wrap(toArray());
+	}
 
 }
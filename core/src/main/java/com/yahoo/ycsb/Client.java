@@ -18,20 +18,27 @@
 package com.yahoo.ycsb;
 
 
+import com.yahoo.ycsb.measurements.JvmHealth;
+import com.yahoo.ycsb.measurements.LatencyLogThread;
 import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.MetricsServer;
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
 
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.CyclicBarrier;
 
 //import org.apache.log4j.BasicConfigurator;
 
@@ -43,20 +50,27 @@ import java.util.Vector;
  */
 class StatusThread extends Thread
 {
-	Vector<Thread> _threads;
+	Map<Thread,ClientThread> _threads;
 	String _label;
 	boolean _standardstatus;
 	
 	/**
-	 * The interval for reporting status.
+	 * The interval for reporting status, in milliseconds.
 	 */
-	public static final long sleeptime=10000;
+	long _sleeptime;
 
-	public StatusThread(Vector<Thread> threads, String label, boolean standardstatus)
+	/**
+	 * Samples the client's own JVM, so each status line shows whether the client itself was paused.
+	 */
+	JvmHealth _health;
+
+	public StatusThread(Map<Thread,ClientThread> threads, String label, boolean standardstatus, long sleeptime, JvmHealth health)
 	{
 		_threads=threads;
 		_label=label;
 		_standardstatus=standardstatus;
+		_sleeptime=sleeptime;
+		_health=health;
 	}
 
 	/**
@@ -71,23 +85,26 @@ class StatusThread extends Thread
 		
 		boolean alldone;
 		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+
+		//the latencies of each interval are kept apart from those of the run, so their percentiles can be shown
+		Measurements measurements=Measurements.getMeasurements();
+		int intervals=measurements.addIntervals();
 		
 		do 
 		{
 			alldone=true;
 
-			int totalops=0;
+			long totalops=0;
 
 			//terminate this thread when all the worker threads are done
-			for (Thread t : _threads)
+			for (Map.Entry<Thread,ClientThread> t : _threads.entrySet())
 			{
-				if (t.getState()!=Thread.State.TERMINATED)
+				if (t.getKey().getState()!=Thread.State.TERMINATED)
 				{
 					alldone=false;
 				}
 
-				ClientThread ct=(ClientThread)t;
-				totalops+=ct.getOpsDone();
+				totalops+=t.getValue().getOpsDone();
 			}
 
 			long en=System.currentTimeMillis();
@@ -102,30 +119,31 @@ class StatusThread extends Thread
 			
 			DecimalFormat d = new DecimalFormat("#.##");
 			String label = _label + format.format(new Date());
+			String summary = Measurements.getIntervalSummary(measurements.nextInterval(intervals))+_health.next();
 			
 			if (totalops==0)
 			{
-				System.err.println(label+ " " +(interval/1000)+" sec: "+totalops+" operations; "+Measurements.getMeasurements().getSummary());
+				System.err.println(label+ " " +(interval/1000)+" sec: "+totalops+" operations; "+summary);
 			}
 			else
 			{
-				System.err.println(label+" " + (interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+Measurements.getMeasurements().getSummary());
+				System.err.println(label+" " + (interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+summary);
 			}
 
 			if (_standardstatus)
 			{
 			if (totalops==0)
 			{
-				System.out.println(label+" "+(interval/1000)+" sec: "+totalops+" operations; "+Measurements.getMeasurements().getSummary());
+				System.out.println(label+" "+(interval/1000)+" sec: "+totalops+" operations; "+summary);
 			}
 			else
 			{
-				System.out.println(label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+Measurements.getMeasurements().getSummary());			}
+				System.out.println(label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+summary);			}
 			}
 
 			try
 			{
-				sleep(sleeptime);
+				sleep(_sleeptime);
 			}
 			catch (InterruptedException e)
 			{
@@ -137,192 +155,6 @@ class StatusThread extends Thread
 	}
 }
 
-/**
- * A thread for executing transactions or data inserts to the database.
- * 
- * @author cooperb
- *
- */
-class ClientThread extends Thread
-{
-	DB _db;
-	boolean _dotransactions;
-	Workload _workload;
-	int _opcount;
-	double _target;
-
-	int _opsdone;
-	int _threadid;
-	int _threadcount;
-	Object _workloadstate;
-	Properties _props;
-
-
-	/**
-	 * Constructor.
-	 * 
-	 * @param db the DB implementation to use
-	 * @param dotransactions true to do transactions, false to insert data
-	 * @param workload the workload to use
-	 * @param threadid the id of this thread 
-	 * @param threadcount the total number of threads 
-	 * @param props the properties defining the experiment
-	 * @param opcount the number of operations (transactions or inserts) to do
-	 * @param targetperthreadperms target number of operations per thread per ms
-	 */
-	public ClientThread(DB db, boolean dotransactions, Workload workload, int threadid, int threadcount, Properties props, int opcount, double targetperthreadperms)
-	{
-		//TODO: consider removing threadcount and threadid
-		_db=db;
-		_dotransactions=dotransactions;
-		_workload=workload;
-		_opcount=opcount;
-		_opsdone=0;
-		_target=targetperthreadperms;
-		_threadid=threadid;
-		_threadcount=threadcount;
-		_props=props;
-		//System.out.println("Interval = "+interval);
-	}
-
-	public int getOpsDone()
-	{
-		return _opsdone;
-	}
-
-	public void run()
-	{
-		try
-		{
-			_db.init();
-		}
-		catch (DBException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-
-		try
-		{
-			_workloadstate=_workload.initThread(_props,_threadid,_threadcount);
-		}
-		catch (WorkloadException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-
-		//spread the thread operations out so they don't all hit the DB at the same time
-		try
-		{
-		   //GH issue 4 - throws exception if _target>1 because random.nextInt argument must be >0
-		   //and the sleep() doesn't make sense for granularities < 1 ms anyway
-		   if ( (_target>0) && (_target<=1.0) ) 
-		   {
-		      sleep(Utils.random().nextInt((int)(1.0/_target)));
-		   }
-		}
-		catch (InterruptedException e)
-		{
-		  // do nothing.
-		}
-		
-		try
-		{
-			if (_dotransactions)
-			{
-				long st=System.currentTimeMillis();
-
-				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-				{
-
-					if (!_workload.doTransaction(_db,_workloadstate))
-					{
-						break;
-					}
-
-					_opsdone++;
-
-					//throttle the operations
-					if (_target>0)
-					{
-						//this is more accurate than other throttling approaches we have tried,
-						//like sleeping for (1/target throughput)-operation latency,
-						//because it smooths timing inaccuracies (from sleep() taking an int, 
-						//current time in millis) over many operations
-						while (System.currentTimeMillis()-st<((double)_opsdone)/_target)
-						{
-							try
-							{
-								sleep(1);
-							}
-							catch (InterruptedException e)
-							{
-							  // do nothing.
-							}
-
-						}
-					}
-				}
-			}
-			else
-			{
-				long st=System.currentTimeMillis();
-
-				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-				{
-
-					if (!_workload.doInsert(_db,_workloadstate))
-					{
-						break;
-					}
-
-					_opsdone++;
-
-					//throttle the operations
-					if (_target>0)
-					{
-						//this is more accurate than other throttling approaches we have tried,
-						//like sleeping for (1/target throughput)-operation latency,
-						//because it smooths timing inaccuracies (from sleep() taking an int, 
-						//current time in millis) over many operations
-						while (System.currentTimeMillis()-st<((double)_opsdone)/_target)
-						{
-							try 
-							{
-								sleep(1);
-							}
-							catch (InterruptedException e)
-							{
-							  // do nothing.
-							}
-						}
-					}
-				}
-			}
-		}
-		catch (Exception e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			System.exit(0);
-		}
-
-		try
-		{
-			_db.cleanup();
-		}
-		catch (DBException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-	}
-}
-
 /**
  * Main class for executing YCSB.
  */
@@ -347,6 +179,60 @@ public class Client
    */
   public static final String MAX_EXECUTION_TIME = "maxexecutiontime";
 
+	/**
+	 * The number of operations each client thread keeps in flight at once. With more than one, operations
+	 * are issued through the asynchronous interfaces of the workload and the DB, so a few threads can drive
+	 * a high-latency store at a high rate.
+	 */
+	public static final String OUTSTANDING_OPS_PROPERTY="outstandingops";
+
+	public static final String OUTSTANDING_OPS_PROPERTY_DEFAULT="1";
+
+	/**
+	 * The number of operations that may be issued back to back to catch up when the client threads have fallen
+	 * behind the target throughput. By default there is no limit, so the overall schedule is followed exactly.
+	 */
+	public static final String TARGET_BURST_PROPERTY="target.burst";
+
+	/**
+	 * How each client thread is run: "platform" gives every client thread an operating system thread of its own,
+	 * "virtual" runs each one on a virtual thread, so tens of thousands of simulated clients can be run with
+	 * blocking DB bindings. Virtual threads require a Java 21 or later runtime.
+	 */
+	public static final String THREAD_MODE_PROPERTY="threadmode";
+
+	public static final String THREAD_MODE_PROPERTY_DEFAULT="platform";
+
+	/**
+	 * The number of DB instances shared by all the client threads, or 0 (the default) to give each client thread
+	 * a DB instance of its own. Shared instances are initialized once before the client threads start and
+	 * cleaned up after they finish, and are handed out to client threads round robin, so this must only be used
+	 * with DB bindings that are thread safe.
+	 */
+	public static final String DB_POOL_SIZE_PROPERTY="dbpoolsize";
+
+	public static final String DB_POOL_SIZE_PROPERTY_DEFAULT="0";
+
+	/**
+	 * How often the status is reported when it is shown with -s, in seconds. Each status line gives the
+	 * throughput and the latency percentiles of each operation over the interval since the last one, along
+	 * with the garbage collection, CPU and allocation of the client's own JVM (see JvmHealth).
+	 */
+	public static final String STATUS_INTERVAL_PROPERTY="status.interval";
+
+	public static final String STATUS_INTERVAL_PROPERTY_DEFAULT="10";
+
+	/**
+	 * A comma separated list of phases to run one after the other in this JVM, such as
+	 * "load,t:workloads/workloada,t:workloads/workloadb". Each phase is "load" or "t", optionally followed by a
+	 * colon and a property file whose properties are layered over those of the file given with -P for that phase
+	 * only; properties given with -p still take precedence. The phases share their DB instances, which are created
+	 * with the properties of the first phase, and the measurements of each phase are exported on their own. The
+	 * measurements are taken as the first phase sets them up, so a later phase may not change the measurement
+	 * type or any other measurement property.
+	 */
+	public static final String PHASES_PROPERTY="phases";
+
 	public static void usageMessage()
 	{
 		System.out.println("Usage: java com.yahoo.ycsb.Client [options]");
@@ -364,17 +250,142 @@ public class Client
 		System.out.println("  -p name=value:  specify a property to be passed to the DB and workloads;");
 		System.out.println("                  multiple properties can be specified, and override any");
 		System.out.println("                  values in the propertyfile");
-		System.out.println("  -s:  show status during run (default: no status)");
+		System.out.println("  -s:  show status during run (default: no status) - every 10 seconds unless");
+		System.out.println("       the \""+STATUS_INTERVAL_PROPERTY+"\" property gives another interval in seconds");
 		System.out.println("  -l label:  use label for status (e.g. to label one experiment out of a whole batch)");
 		System.out.println("");
+		System.out.println("To run several phases in one invocation, list them in the \""+PHASES_PROPERTY+"\" property, e.g.");
+		System.out.println("  -p "+PHASES_PROPERTY+"=load,t:workloads/workloada,t:workloads/workloadb");
+		System.out.println("");
 		System.out.println("Required properties:");
 		System.out.println("  "+WORKLOAD_PROPERTY+": the name of the workload class to use (e.g. com.yahoo.ycsb.workloads.CoreWorkload)");
 		System.out.println("");
-		System.out.println("To run the transaction phase from multiple servers, start a separate client on each.");
+		System.out.println("To run from multiple servers, start a com.yahoo.ycsb.Worker on each and give their host:port");
+		System.out.println("addresses in the \""+Coordinator.WORKERS_PROPERTY+"\" property; the work is divided among them and the results merged.");
+		System.out.println("Alternatively, to run the transaction phase from multiple servers, start a separate client on each.");
 		System.out.println("To run the load phase from multiple servers, start a separate client on each; additionally,");
 		System.out.println("use the \"insertcount\" and \"insertstart\" properties to divide up the records to be inserted");
 	}
 
+	/**
+	 * Lets another process control a run, as the coordinator of a distributed run does with each of its workers.
+	 */
+	interface RunControl
+	{
+		/**
+		 * Called when the workload and DB connections are ready; the client threads are started when it returns.
+		 * 
+		 * @param clients The client threads, which have not yet been started.
+		 * @return false if the run should be abandoned.
+		 */
+		boolean awaitStart(Map<Thread,ClientThread> clients);
+
+		/**
+		 * Called when the run is over, in place of exporting the measurements.
+		 * 
+		 * @param opsdone The number of operations done by all the client threads.
+		 * @param runtime The time from starting the client threads until they all finished, in milliseconds.
+		 */
+		void finished(long opsdone, long runtime);
+
+		/**
+		 * Called when the run is over, in place of finished(), if a client thread failed.
+		 */
+		void failed();
+	}
+
+	/**
+	 * Exports the measurements of one phase of a multi-phase run as soon as it is over, to the file named by the
+	 * "exportfile" property with ".phase" and the number of the phase appended, or to standard output.
+	 */
+	static class PhaseControl implements RunControl
+	{
+		Properties _props;
+		int _phasenumber;
+
+		PhaseControl(Properties props, int phasenumber)
+		{
+			_props=props;
+			_phasenumber=phasenumber;
+		}
+
+		public boolean awaitStart(Map<Thread,ClientThread> clients)
+		{
+			return true;
+		}
+
+		public void finished(long opsdone, long runtime)
+		{
+			MeasurementsExporter exporter=null;
+			try
+			{
+				exporter=newSegmentExporter(_props,".phase"+_phasenumber);
+				exporter.write("PHASE", "Number", _phasenumber);
+				exporter.write("OVERALL", "RunTime(ms)", (double)runtime);
+				exporter.write("OVERALL", "Throughput(ops/sec)", 1000.0*((double)opsdone)/((double)runtime));
+				Measurements.getMeasurements().exportMeasurements(exporter);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not export measurements of phase "+_phasenumber+", error: "+e.getMessage());
+				e.printStackTrace();
+			}
+			finally
+			{
+				if (exporter!=null)
+				{
+					try
+					{
+						exporter.close();
+					}
+					catch (IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+
+		public void failed()
+		{
+			//the phases that follow are not run, so there is nothing to export
+		}
+	}
+
+	/**
+	 * Return true if this JVM can run client threads on virtual threads.
+	 */
+	static boolean supportsVirtualThreads()
+	{
+		try
+		{
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		}
+		catch (NoSuchMethodException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Create an unstarted virtual thread. This goes through reflection so that the client still builds and runs
+	 * on JVMs that predate virtual threads.
+	 */
+	static Thread newVirtualThread(Runnable r)
+	{
+		try
+		{
+			Object builder=Thread.class.getMethod("ofVirtual").invoke(null);
+			Method unstarted=Class.forName("java.lang.Thread$Builder").getMethod("unstarted",Runnable.class);
+			return (Thread)unstarted.invoke(builder,r);
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException("Could not create a virtual thread",e);
+		}
+	}
+
 	public static boolean checkRequiredProperties(Properties props)
 	{
 		if (props.getProperty(WORKLOAD_PROPERTY)==null)
@@ -387,12 +398,61 @@ public class Client
 	}
 
 
+	/**
+	 * Create the exporter named by the "exporter" property, writing to the given stream.
+	 */
+	static MeasurementsExporter newExporter(Properties props, OutputStream out)
+	{
+		// if no exporter is provided the default text one will be used
+		String exporterStr = props.getProperty("exporter", "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
+		try
+		{
+			return (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
+		} catch (Exception e)
+		{
+			System.err.println("Could not find exporter " + exporterStr
+					+ ", will use default text reporter.");
+			e.printStackTrace();
+			return new TextMeasurementsExporter(out);
+		}
+	}
+
+	/**
+	 * Create an exporter for the measurements of one part of the run, such as a step of a throughput schedule.
+	 * It writes to the file named by the "exportfile" property with the given suffix appended, or, if there is
+	 * no export file, to standard output, which is left open for the final report.
+	 */
+	static MeasurementsExporter newSegmentExporter(Properties props, String suffix) throws IOException
+	{
+		OutputStream out;
+		String exportFile = props.getProperty("exportfile");
+		if (exportFile == null)
+		{
+			out = new FilterOutputStream(System.out)
+			{
+				public void write(byte[] b, int off, int len) throws IOException
+				{
+					out.write(b, off, len);
+				}
+
+				public void close() throws IOException
+				{
+					flush();
+				}
+			};
+		} else
+		{
+			out = new FileOutputStream(exportFile + suffix);
+		}
+		return newExporter(props, out);
+	}
+
 	/**
 	 * Exports the measurements to either sysout or a file using the exporter
 	 * loaded from conf.
 	 * @throws IOException Either failed to write to output stream or failed to close it.
 	 */
-	private static void exportMeasurements(Properties props, int opcount, long runtime)
+	static void exportMeasurements(Properties props, long opcount, long runtime)
 			throws IOException
 	{
 		MeasurementsExporter exporter = null;
@@ -409,20 +469,9 @@ public class Client
 				out = new FileOutputStream(exportFile);
 			}
 
-			// if no exporter is provided the default text one will be used
-			String exporterStr = props.getProperty("exporter", "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
-			try
-			{
-				exporter = (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
-			} catch (Exception e)
-			{
-				System.err.println("Could not find exporter " + exporterStr
-						+ ", will use default text reporter.");
-				e.printStackTrace();
-				exporter = new TextMeasurementsExporter(out);
-			}
+			exporter = newExporter(props, out);
 
-			exporter.write("OVERALL", "RunTime(ms)", runtime);
+			exporter.write("OVERALL", "RunTime(ms)", (double) runtime);
 			double throughput = 1000.0 * ((double) opcount) / ((double) runtime);
 			exporter.write("OVERALL", "Throughput(ops/sec)", throughput);
 
@@ -436,15 +485,11 @@ public class Client
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static void main(String[] args)
 	{
-		String dbname;
 		Properties props=new Properties();
 		Properties fileprops=new Properties();
 		boolean dotransactions=true;
-		int threadcount=1;
-		int target=0;
 		boolean status=false;
 		String label="";
 
@@ -479,7 +524,7 @@ public class Client
 					usageMessage();
 					System.exit(0);
 				}
-				int ttarget=Integer.parseInt(args[argindex]);
+				double ttarget=Double.parseDouble(args[argindex]);
 				props.setProperty("target", ttarget+"");
 				argindex++;
 			}
@@ -542,12 +587,9 @@ public class Client
 					System.exit(0);
 				}
 
-				//Issue #5 - remove call to stringPropertyNames to make compilable under Java 1.5
-				for (Enumeration e=myfileprops.propertyNames(); e.hasMoreElements(); )
+				for (String prop : myfileprops.stringPropertyNames())
 				{
-				   String prop=(String)e.nextElement();
-				   
-				   fileprops.setProperty(prop,myfileprops.getProperty(prop));
+					fileprops.setProperty(prop,myfileprops.getProperty(prop));
 				}
 
 			}
@@ -596,35 +638,18 @@ public class Client
 
 		//overwrite file properties with properties from the command line
 
-		//Issue #5 - remove call to stringPropertyNames to make compilable under Java 1.5
-		for (Enumeration e=props.propertyNames(); e.hasMoreElements(); )
+		for (String prop : props.stringPropertyNames())
 		{
-		   String prop=(String)e.nextElement();
-		   
-		   fileprops.setProperty(prop,props.getProperty(prop));
+			fileprops.setProperty(prop,props.getProperty(prop));
 		}
 
+		Properties cmdprops=props;
 		props=fileprops;
 
 		if (!checkRequiredProperties(props))
 		{
 			System.exit(0);
 		}
-		
-		long maxExecutionTime = Integer.parseInt(props.getProperty(MAX_EXECUTION_TIME, "0"));
-
-		//get number of threads, target and db
-		threadcount=Integer.parseInt(props.getProperty("threadcount","1"));
-		dbname=props.getProperty("db","com.yahoo.ycsb.BasicDB");
-		target=Integer.parseInt(props.getProperty("target","0"));
-		
-		//compute the target throughput
-		double targetperthreadperms=-1;
-		if (target>0)
-		{
-			double targetperthread=((double)target)/((double)threadcount);
-			targetperthreadperms=targetperthread/1000.0;
-		}	 
 
 		System.out.println("YCSB Client 0.1");
 		System.out.print("Command line:");
@@ -633,59 +658,393 @@ public class Client
 			System.out.print(" "+args[i]);
 		}
 		System.out.println();
-		System.err.println("Loading workload...");
-		
-		//show a warning message that creating the workload is taking a while
-		//but only do so if it is taking longer than 2 seconds 
-		//(showing the message right away if the setup wasn't taking very long was confusing people)
-		Thread warningthread=new Thread() 
-		{
-			public void run()
-			{
-				try
-				{
-					sleep(2000);
-				}
-				catch (InterruptedException e)
-				{
-					return;
-				}
-				System.err.println(" (might take a few minutes for large data sets)");
-			}
-		};
-
-		warningthread.start();
-		
-		//set up measurements
-		Measurements.setProperties(props);
-		
-		//load the workload
-		ClassLoader classLoader = Client.class.getClassLoader();
 
-		Workload workload=null;
-
-		try 
+		if ( (props.getProperty(PHASES_PROPERTY)!=null) && (props.getProperty(Coordinator.WORKERS_PROPERTY)!=null) )
 		{
-			Class workloadclass = classLoader.loadClass(props.getProperty(WORKLOAD_PROPERTY));
-
-			workload=(Workload)workloadclass.newInstance();
-		}
-		catch (Exception e) 
-		{  
-			e.printStackTrace();
-			e.printStackTrace(System.out);
+			System.out.println("Cannot use both "+PHASES_PROPERTY+" and "+Coordinator.WORKERS_PROPERTY);
 			System.exit(0);
 		}
 
 		try
 		{
-			workload.init(props);
-		}
-		catch (WorkloadException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			System.exit(0);
+			if (props.getProperty(PHASES_PROPERTY)!=null)
+			{
+				runPhases(props,cmdprops,status,label);
+			}
+			else if (props.getProperty(Coordinator.WORKERS_PROPERTY)!=null)
+			{
+				Coordinator.run(props,dotransactions,status,label);
+			}
+			else
+			{
+				run(props,dotransactions,status,label,null,null);
+			}
+		}
+		catch (ClientException e)
+		{
+			System.out.println(e.getMessage());
+			if (e.getCause()!=null)
+			{
+				e.getCause().printStackTrace();
+				e.getCause().printStackTrace(System.out);
+			}
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Run the phases listed in the "phases" property one after the other, keeping the same DB instances from one
+	 * phase to the next, and export the measurements of each phase.
+	 * 
+	 * @param props The properties of the run, to which the property file of each phase is added.
+	 * @param cmdprops The properties given on the command line, which override those of every phase.
+	 * @throws ClientException if a phase is malformed or cannot be set up, in which case no later phase is run.
+	 */
+	static void runPhases(Properties props, Properties cmdprops, boolean status, String label) throws ClientException
+	{
+		String[] phases=props.getProperty(PHASES_PROPERTY).split(",");
+		boolean[] dotransactions=new boolean[phases.length];
+		Properties[] phaseprops=new Properties[phases.length];
+
+		//check every phase before running any, so a mistake is not found hours into the run
+		for (int i=0; i<phases.length; i++)
+		{
+			phases[i]=phases[i].trim();
+			String phase=phases[i];
+			String propfile=null;
+			int colon=phase.indexOf(':');
+			if (colon>=0)
+			{
+				propfile=phase.substring(colon+1);
+				phase=phase.substring(0,colon);
+			}
+
+			if (phase.compareTo("load")==0)
+			{
+				dotransactions[i]=false;
+			}
+			else if (phase.compareTo("t")==0)
+			{
+				dotransactions[i]=true;
+			}
+			else
+			{
+				throw new ClientException("Unknown phase \""+phases[i]+"\" in "+PHASES_PROPERTY+"; each phase must be load or t, optionally followed by :propertyfile");
+			}
+
+			phaseprops[i]=new Properties();
+			for (String prop : props.stringPropertyNames())
+			{
+				phaseprops[i].setProperty(prop,props.getProperty(prop));
+			}
+			if (propfile!=null)
+			{
+				Properties myfileprops=new Properties();
+				try
+				{
+					myfileprops.load(new FileInputStream(propfile));
+				}
+				catch (IOException e)
+				{
+					throw new ClientException(e.getMessage());
+				}
+				for (String prop : myfileprops.stringPropertyNames())
+				{
+					phaseprops[i].setProperty(prop,myfileprops.getProperty(prop));
+				}
+				for (String prop : cmdprops.stringPropertyNames())
+				{
+					phaseprops[i].setProperty(prop,cmdprops.getProperty(prop));
+				}
+			}
+			//each phase writes its own logs
+			for (String log : new String[] {LatencyLogThread.LATENCY_LOG_PROPERTY,OperationTrace.TRACE_FILE_PROPERTY})
+			{
+				if (phaseprops[i].getProperty(log)!=null)
+				{
+					phaseprops[i].setProperty(log,phaseprops[i].getProperty(log)+".phase"+(i+1));
+				}
+			}
+			//and draws its own random numbers
+			if (phaseprops[i].getProperty(Utils.SEED_PROPERTY)!=null)
+			{
+				phaseprops[i].setProperty(Utils.SEED_PROPERTY,Long.toString(FastRandom.splitmix64(Long.parseLong(phaseprops[i].getProperty(Utils.SEED_PROPERTY).trim())+i)));
+			}
+			if (!checkRequiredProperties(phaseprops[i]))
+			{
+				throw new ClientException("Phase "+(i+1)+" is missing a required property");
+			}
+			//the DB instances of the first phase record into its measurements, so a later phase cannot change them
+			if (i>0)
+			{
+				for (String prop : phaseprops[i].stringPropertyNames())
+				{
+					if ( isMeasurementProperty(prop) && !phaseprops[i].getProperty(prop).equals(phaseprops[0].getProperty(prop)) )
+					{
+						throw new ClientException("Phase "+(i+1)+" sets "+prop+", which only the first phase can set; set it for all phases with -P or -p");
+					}
+				}
+			}
+		}
+
+		Vector<DB> dbs=new Vector<DB>();
+		try
+		{
+			for (int i=0; i<phases.length; i++)
+			{
+				System.err.println("Phase "+(i+1)+" of "+phases.length+": "+phases[i]);
+				run(phaseprops[i],dotransactions[i],status,label,new PhaseControl(phaseprops[i],i+1),dbs);
+			}
+		}
+		finally
+		{
+			for (DB db : dbs)
+			{
+				try
+				{
+					db.cleanup();
+				}
+				catch (DBException e)
+				{
+					e.printStackTrace();
+					e.printStackTrace(System.out);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return true if the given property sets up how operations are measured, such as "measurementtype".
+	 */
+	static boolean isMeasurementProperty(String prop)
+	{
+		return prop.startsWith("measurement") || prop.startsWith("histogram.") || prop.startsWith("hdrhistogram.") || prop.startsWith("timeseries.");
+	}
+
+	/**
+	 * Release what a run that will not go ahead has set up so far, any of which may be null.
+	 * 
+	 * @param dbpool The DB instances to clean up, or null if they are kept for a later phase.
+	 */
+	static void abandon(Thread warningthread, LatencyLogThread latencylog, MetricsServer metricsserver, OperationTrace trace, Workload workload, Vector<DB> dbpool)
+	{
+		if (warningthread!=null)
+		{
+			warningthread.interrupt();
+		}
+		if (latencylog!=null)
+		{
+			latencylog.abandon();
+		}
+		if (trace!=null)
+		{
+			trace.stop();
+		}
+		if (metricsserver!=null)
+		{
+			metricsserver.abandon();
+		}
+		if (workload!=null)
+		{
+			try
+			{
+				workload.cleanup();
+			}
+			catch (WorkloadException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		if (dbpool!=null)
+		{
+			for (DB db : dbpool)
+			{
+				try
+				{
+					db.cleanup();
+				}
+				catch (DBException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run the workload with the given properties, and export the measurements unless the run is controlled by
+	 * someone else.
+	 * 
+	 * @param control Controls the start of the run and receives its results, or null to run at once and export
+	 *                the measurements.
+	 * @param dbs The DB instances kept from earlier phases of a multi-phase run, to which any more that are needed
+	 *            are added and which are left for the caller to clean up, or null to create DB instances for
+	 *            this run only.
+	 * @throws ClientException if the run cannot be set up or a client thread fails, in which case whatever had
+	 *                         been set up is released, so that a worker can go on to serve its next run.
+	 */
+	static void run(Properties props, boolean dotransactions, boolean status, String label, RunControl control, Vector<DB> dbs) throws ClientException
+	{
+		String dbname;
+		int threadcount;
+		double target;
+
+		long maxExecutionTime = Integer.parseInt(props.getProperty(MAX_EXECUTION_TIME, "0"));
+
+		//get number of threads, target and db
+		threadcount=Integer.parseInt(props.getProperty("threadcount","1"));
+		dbname=props.getProperty("db","com.yahoo.ycsb.BasicDB");
+		target=Double.parseDouble(props.getProperty("target","0"));
+		long targetburst=Long.parseLong(props.getProperty(TARGET_BURST_PROPERTY,Long.toString(Long.MAX_VALUE)));
+
+		Vector<TargetScheduleThread.Step> schedule=null;
+		if (props.getProperty(TargetScheduleThread.TARGET_SCHEDULE_PROPERTY)!=null)
+		{
+			try
+			{
+				schedule=TargetScheduleThread.parse(props.getProperty(TargetScheduleThread.TARGET_SCHEDULE_PROPERTY));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new ClientException("Bad "+TargetScheduleThread.TARGET_SCHEDULE_PROPERTY+": "+e.getMessage());
+			}
+		}
+
+		Vector<ThroughputSearchThread.Objective> objectives=null;
+		if (props.getProperty(ThroughputSearchThread.SLO_PROPERTY)!=null)
+		{
+			if (schedule!=null)
+			{
+				throw new ClientException("Cannot use both "+TargetScheduleThread.TARGET_SCHEDULE_PROPERTY+" and "+ThroughputSearchThread.SLO_PROPERTY);
+			}
+			try
+			{
+				objectives=ThroughputSearchThread.parse(props.getProperty(ThroughputSearchThread.SLO_PROPERTY));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new ClientException("Bad "+ThroughputSearchThread.SLO_PROPERTY+": "+e.getMessage());
+			}
+		}
+
+		System.err.println("Loading workload...");
+		
+		//show a warning message that creating the workload is taking a while
+		//but only do so if it is taking longer than 2 seconds 
+		//(showing the message right away if the setup wasn't taking very long was confusing people)
+		Thread warningthread=new Thread() 
+		{
+			public void run()
+			{
+				try
+				{
+					sleep(2000);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				System.err.println(" (might take a few minutes for large data sets)");
+			}
+		};
+
+		warningthread.start();
+		
+		//set up measurements; DB instances kept from an earlier phase go on recording into the measurements
+		//they were created with, so those are reused rather than replaced
+		if ( (dbs==null) || dbs.isEmpty() )
+		{
+			Measurements.setProperties(props);
+		}
+		else
+		{
+			Measurements.getMeasurements().reset();
+		}
+
+		//seed the random number generators before the workload draws anything
+		Utils.setRandomProperties(props);
+
+		LatencyLogThread latencylog=null;
+		if (props.getProperty(LatencyLogThread.LATENCY_LOG_PROPERTY)!=null)
+		{
+			try
+			{
+				latencylog=new LatencyLogThread(props);
+			}
+			catch (IOException e)
+			{
+				abandon(warningthread,null,null,null,null,null);
+				throw new ClientException("Could not create latency log: "+e.getMessage());
+			}
+		}
+
+		MetricsServer metricsserver=null;
+		if (props.getProperty(MetricsServer.METRICS_PORT_PROPERTY)!=null)
+		{
+			try
+			{
+				metricsserver=new MetricsServer(props);
+			}
+			catch (IOException e)
+			{
+				abandon(warningthread,latencylog,null,null,null,null);
+				throw new ClientException("Could not start metrics server: "+e.getMessage());
+			}
+		}
+
+		OperationTrace trace=null;
+		if (props.getProperty(OperationTrace.TRACE_FILE_PROPERTY)!=null)
+		{
+			try
+			{
+				trace=new OperationTrace(props);
+			}
+			catch (IOException e)
+			{
+				abandon(warningthread,latencylog,metricsserver,null,null,null);
+				throw new ClientException("Could not create operation trace: "+e.getMessage());
+			}
+		}
+		
+		//load the workload
+		ClassLoader classLoader = Client.class.getClassLoader();
+
+		Workload workload=null;
+
+		try 
+		{
+			Class workloadclass = classLoader.loadClass(props.getProperty(WORKLOAD_PROPERTY));
+
+			workload=(Workload)workloadclass.newInstance();
+		}
+		catch (Exception e) 
+		{  
+			abandon(warningthread,latencylog,metricsserver,trace,null,null);
+			throw new ClientException("Could not load workload "+props.getProperty(WORKLOAD_PROPERTY),e);
+		}
+
+		try
+		{
+			workload.init(props);
+		}
+		catch (WorkloadException e)
+		{
+			abandon(warningthread,latencylog,metricsserver,trace,null,null);
+			throw new ClientException("Could not initialize workload",e);
+		}
+
+		if ( (objectives!=null) && dotransactions && (workload.getTransactionOperations()!=null) )
+		{
+			try
+			{
+				ThroughputSearchThread.check(objectives,workload.getTransactionOperations());
+			}
+			catch (IllegalArgumentException e)
+			{
+				abandon(warningthread,latencylog,metricsserver,trace,workload,null);
+				throw new ClientException("Bad "+ThroughputSearchThread.SLO_PROPERTY+": "+e.getMessage());
+			}
 		}
 		
 		warningthread.interrupt();
@@ -694,26 +1053,38 @@ public class Client
 
 		System.err.println("Starting test.");
 
-		int opcount;
+		long opcount;
 		if (dotransactions)
 		{
-			opcount=Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY,"0"));
+			opcount=Long.parseLong(props.getProperty(OPERATION_COUNT_PROPERTY,"0"));
 		}
 		else
 		{
 			if (props.containsKey(INSERT_COUNT_PROPERTY))
 			{
-				opcount=Integer.parseInt(props.getProperty(INSERT_COUNT_PROPERTY,"0"));
+				opcount=Long.parseLong(props.getProperty(INSERT_COUNT_PROPERTY,"0"));
 			}
 			else
 			{
-				opcount=Integer.parseInt(props.getProperty(RECORD_COUNT_PROPERTY,"0"));
+				opcount=Long.parseLong(props.getProperty(RECORD_COUNT_PROPERTY,"0"));
 			}
 		}
 
-		Vector<Thread> threads=new Vector<Thread>();
+		boolean virtualthreads=props.getProperty(THREAD_MODE_PROPERTY,THREAD_MODE_PROPERTY_DEFAULT).compareTo("virtual")==0;
+		if (virtualthreads && !supportsVirtualThreads())
+		{
+			abandon(null,latencylog,metricsserver,trace,workload,null);
+			throw new ClientException("Virtual threads are not supported by this JVM; "+THREAD_MODE_PROPERTY+"=virtual requires Java 21 or later");
+		}
 
-		for (int threadid=0; threadid<threadcount; threadid++)
+		//DB instances kept across phases are pooled, one per client thread unless a pool size is given
+		Vector<DB> dbpool=dbs!=null ? dbs : new Vector<DB>();
+		int dbpoolsize=Integer.parseInt(props.getProperty(DB_POOL_SIZE_PROPERTY,DB_POOL_SIZE_PROPERTY_DEFAULT));
+		if ( (dbs!=null) && (dbpoolsize==0) )
+		{
+			dbpoolsize=threadcount;
+		}
+		for (int i=dbpool.size(); i<dbpoolsize; i++)
 		{
 			DB db=null;
 			try
@@ -722,13 +1093,94 @@ public class Client
 			}
 			catch (UnknownDBException e)
 			{
-				System.out.println("Unknown DB "+dbname);
-				System.exit(0);
+				abandon(null,latencylog,metricsserver,trace,workload,dbs==null ? dbpool : null);
+				throw new ClientException("Unknown DB "+dbname);
+			}
+
+			try
+			{
+				db.init();
+			}
+			catch (DBException e)
+			{
+				abandon(null,latencylog,metricsserver,trace,workload,dbs==null ? dbpool : null);
+				throw new ClientException("Could not initialize DB "+dbname,e);
+			}
+			dbpool.add(db);
+		}
+
+		//all the client threads draw from one rate limiter, so the target throughput is met overall
+		RateLimiter limiter=null;
+		if (schedule!=null)
+		{
+			limiter=new RateLimiter(schedule.get(0)._startrate,targetburst);
+		}
+		else if (objectives!=null)
+		{
+			limiter=new RateLimiter(Double.parseDouble(props.getProperty(ThroughputSearchThread.START_PROPERTY,ThroughputSearchThread.START_PROPERTY_DEFAULT)),targetburst);
+		}
+		else if (target>0)
+		{
+			limiter=new RateLimiter(target,targetburst);
+		}
+		if ( (limiter==null) && Boolean.parseBoolean(props.getProperty(Measurements.MEASUREMENT_CORRECTION,"false")) )
+		{
+			System.err.println("No target throughput is set, so latencies will not be corrected for coordinated omission");
+		}
+
+		//the schedule starts once every client thread has connected to the DB, rather than when the limiter was
+		//created, so the time spent connecting is not made up afterwards by a burst of back to back operations
+		CyclicBarrier ready=null;
+		if ( (limiter!=null) && (threadcount>0) )
+		{
+			final RateLimiter startlimiter=limiter;
+			ready=new CyclicBarrier(threadcount,new Runnable()
+			{
+				public void run()
+				{
+					startlimiter.skipBacklog();
+				}
+			});
+		}
+
+		Vector<Thread> threads=new Vector<Thread>();
+		Map<Thread,ClientThread> clients=new HashMap<Thread,ClientThread>();
+
+		for (int threadid=0; threadid<threadcount; threadid++)
+		{
+			DB db=null;
+			if (dbpoolsize>0)
+			{
+				db=dbpool.get(threadid%dbpoolsize);
+			}
+			else
+			{
+				try
+				{
+					db=DBFactory.newDB(dbname,props);
+				}
+				catch (UnknownDBException e)
+				{
+					abandon(null,latencylog,metricsserver,trace,workload,dbs==null ? dbpool : null);
+					throw new ClientException("Unknown DB "+dbname);
+				}
 			}
 
-			Thread t=new ClientThread(db,dotransactions,workload,threadid,threadcount,props,opcount/threadcount,targetperthreadperms);
+			ClientThread ct=new ClientThread(db,dbpoolsize==0,dotransactions,workload,threadid,threadcount,props,opcount/threadcount,limiter);
+			ct._ready=ready;
+
+			Thread t;
+			if (virtualthreads)
+			{
+				t=newVirtualThread(ct);
+			}
+			else
+			{
+				t=new Thread(ct);
+			}
 
 			threads.add(t);
+			clients.put(t,ct);
 			//t.start();
 		}
 
@@ -741,17 +1193,64 @@ public class Client
 			{
 				standardstatus=true;
 			}	
-			statusthread=new StatusThread(threads,label,standardstatus);
+			long statusinterval=(long)(Double.parseDouble(props.getProperty(STATUS_INTERVAL_PROPERTY,STATUS_INTERVAL_PROPERTY_DEFAULT))*1000);
+			statusthread=new StatusThread(clients,label,standardstatus,statusinterval,new JvmHealth(props));
 			statusthread.start();
 		}
 
+		if ( (control!=null) && !control.awaitStart(clients) )
+		{
+			System.err.println("Run abandoned.");
+			if (statusthread!=null)
+			{
+				statusthread.interrupt();
+			}
+			abandon(null,latencylog,metricsserver,trace,workload,dbs==null ? dbpool : null);
+			return;
+		}
+
+		if (latencylog!=null)
+		{
+			latencylog.start();
+		}
+		if (trace!=null)
+		{
+			trace.start();
+		}
+		if (metricsserver!=null)
+		{
+			metricsserver.start();
+		}
+
 		long st=System.currentTimeMillis();
 
 		for (Thread t : threads)
 		{
 			t.start();
 		}
+
+		//varies the target over the run, following a schedule or searching for the highest sustainable one
+		Thread targetthread=null;
+		if (schedule!=null)
+		{
+			targetthread=new TargetScheduleThread(schedule,limiter,clients,workload,props);
+			targetthread.start();
+		}
+		else if (objectives!=null)
+		{
+			targetthread=new ThroughputSearchThread(objectives,limiter,clients,workload,props);
+			targetthread.start();
+		}
 		
+		WarmupThread warmupthread=null;
+		long warmupops=Long.parseLong(props.getProperty(WarmupThread.WARMUP_OPERATION_COUNT_PROPERTY,"0"));
+		long warmuptime=(long)(Double.parseDouble(props.getProperty(WarmupThread.WARMUP_TIME_PROPERTY,"0"))*1000);
+		if ( (warmupops>0) || (warmuptime>0) )
+		{
+			warmupthread=new WarmupThread(clients,warmupops,warmuptime);
+			warmupthread.start();
+		}
+
     Thread terminator = null;
     
     if (maxExecutionTime > 0) {
@@ -759,14 +1258,14 @@ public class Client
       terminator.start();
     }
     
-    int opsDone = 0;
+    long opsDone = 0;
 
 		for (Thread t : threads)
 		{
 			try
 			{
 				t.join();
-				opsDone += ((ClientThread)t).getOpsDone();
+				opsDone += clients.get(t).getOpsDone();
 			}
 			catch (InterruptedException e)
 			{
@@ -774,6 +1273,22 @@ public class Client
 		}
 
 		long en=System.currentTimeMillis();
+
+		if (dbs==null)
+		{
+			for (DB db : dbpool)
+			{
+				try
+				{
+					db.cleanup();
+				}
+				catch (DBException e)
+				{
+					e.printStackTrace();
+					e.printStackTrace(System.out);
+				}
+			}
+		}
 		
 		if (terminator != null && !terminator.isInterrupted()) {
       terminator.interrupt();
@@ -784,6 +1299,67 @@ public class Client
 			statusthread.interrupt();
 		}
 
+		if (warmupthread!=null)
+		{
+			//report only the steady state after warmup
+			warmupthread.interrupt();
+			try
+			{
+				warmupthread.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+			if (warmupthread.isFinished())
+			{
+				opsDone-=warmupthread.getOpsDone();
+				st=warmupthread.getEndTime();
+			}
+		}
+
+		if (trace!=null)
+		{
+			trace.stop();
+		}
+
+		if (metricsserver!=null)
+		{
+			metricsserver.interrupt();
+			try
+			{
+				metricsserver.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		if (latencylog!=null)
+		{
+			//write the last interval
+			latencylog.interrupt();
+			try
+			{
+				latencylog.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		if (targetthread!=null)
+		{
+			//export the step or search that was in progress
+			targetthread.interrupt();
+			try
+			{
+				targetthread.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
 		try
 		{
 			workload.cleanup();
@@ -792,7 +1368,24 @@ public class Client
 		{
 			e.printStackTrace();
 			e.printStackTrace(System.out);
-			System.exit(0);
+		}
+
+		for (ClientThread ct : clients.values())
+		{
+			if (ct._error!=null)
+			{
+				if (control!=null)
+				{
+					control.failed();
+				}
+				throw new ClientException("Client thread "+ct._threadid+" failed: "+ct._error);
+			}
+		}
+
+		if (control!=null)
+		{
+			control.finished(opsDone,en-st);
+			return;
 		}
 
 		try
@@ -804,7 +1397,5 @@ public class Client
 			e.printStackTrace();
 			System.exit(-1);
 		}
-
-		System.exit(0);
 	}
 }
@@ -0,0 +1,294 @@
+/**                                                                                                                                                                                
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.                                                                                                                             
+ *                                                                                                                                                                                 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you                                                                                                             
+ * may not use this file except in compliance with the License. You                                                                                                                
+ * may obtain a copy of the License at                                                                                                                                             
+ *                                                                                                                                                                                 
+ * http://www.apache.org/licenses/LICENSE-2.0                                                                                                                                      
+ *                                                                                                                                                                                 
+ * Unless required by applicable law or agreed to in writing, software                                                                                                             
+ * distributed under the License is distributed on an "AS IS" BASIS,                                                                                                               
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or                                                                                                                 
+ * implied. See the License for the specific language governing                                                                                                                    
+ * permissions and limitations under the License. See accompanying                                                                                                                 
+ * LICENSE file.                                                                                                                                                                   
+ */
+
+package com.yahoo.ycsb;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+import java.util.Properties;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread for executing transactions or data inserts to the database. This is run either by a platform
+ * thread of its own or by a virtual thread; see {@link Client#THREAD_MODE_PROPERTY}.
+ * 
+ * @author cooperb
+ *
+ */
+class ClientThread implements Runnable
+{
+	DB _db;
+	boolean _ownsdb;
+	boolean _dotransactions;
+	Workload _workload;
+	long _opcount;
+	RateLimiter _limiter;
+
+	/**
+	 * Holds the client threads back until all of them have set up, or null if they need not wait.
+	 */
+	CyclicBarrier _ready;
+
+	long _opsdone;
+	int _threadid;
+	int _threadcount;
+	Object _workloadstate;
+	Properties _props;
+	Measurements _measurements;
+
+	/**
+	 * The exception that stopped this thread before it had done its operations, or null if none did.
+	 */
+	volatile Exception _error=null;
+
+	/**
+	 * The number of operations this thread keeps in flight at once. If more than one, operations are issued
+	 * through the asynchronous workload and DB interfaces.
+	 */
+	int _outstanding;
+
+	/**
+	 * Tracks the completion of asynchronous operations, or null if this thread issues blocking operations.
+	 */
+	Completion _completion;
+
+	/**
+	 * Limits the number of asynchronous operations in flight, and counts those that have completed.
+	 */
+	class Completion implements DBCallback
+	{
+		Semaphore _inflight=new Semaphore(_outstanding);
+		AtomicLong _completed=new AtomicLong();
+		volatile boolean _failed=false;
+
+		public void completed(int returncode)
+		{
+			//a failed insert stops the load, as it does for blocking inserts
+			if ( (!_dotransactions) && (returncode!=0) )
+			{
+				_failed=true;
+			}
+			_completed.incrementAndGet();
+			_inflight.release();
+		}
+	}
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param db the DB implementation to use
+	 * @param ownsdb true if this thread should init() and cleanup() the DB, false if it is shared with other threads
+	 * @param dotransactions true to do transactions, false to insert data
+	 * @param workload the workload to use
+	 * @param threadid the id of this thread 
+	 * @param threadcount the total number of threads 
+	 * @param props the properties defining the experiment
+	 * @param opcount the number of operations (transactions or inserts) to do
+	 * @param limiter paces the operations of all the client threads to the target throughput, or null for no target
+	 */
+	public ClientThread(DB db, boolean ownsdb, boolean dotransactions, Workload workload, int threadid, int threadcount, Properties props, long opcount, RateLimiter limiter)
+	{
+		//TODO: consider removing threadcount and threadid
+		_db=db;
+		_ownsdb=ownsdb;
+		_dotransactions=dotransactions;
+		_workload=workload;
+		_opcount=opcount;
+		_opsdone=0;
+		_limiter=limiter;
+		_threadid=threadid;
+		_threadcount=threadcount;
+		_props=props;
+		_measurements=Measurements.getMeasurements();
+		_outstanding=Integer.parseInt(props.getProperty(Client.OUTSTANDING_OPS_PROPERTY,Client.OUTSTANDING_OPS_PROPERTY_DEFAULT));
+		if (_outstanding>1)
+		{
+			_completion=new Completion();
+		}
+		//System.out.println("Interval = "+interval);
+	}
+
+	/**
+	 * Wait until the scheduled start time of the next operation, and tell the measurements when that was.
+	 * Operations are scheduled by a rate limiter shared by all the client threads, regardless of how long
+	 * earlier operations took; if the clients have fallen behind schedule, the next operation is issued at once
+	 * and the time it spent waiting for its turn is counted in its response time. This keeps a stalled store
+	 * from silently lowering the offered load.
+	 */
+	void throttleNanos()
+	{
+		long deadline=_limiter.acquire();
+		_measurements.setIntendedStartTimeNs(deadline);
+		//this thread's share of the rate, for correcting latencies for coordinated omission
+		_measurements.setExpectedIntervalNs((long)(1000000000.0*_threadcount*_outstanding/_limiter.getRate()));
+	}
+
+	/**
+	 * Wait until every client thread has set up its DB and workload state. A thread that fails to set up still
+	 * calls this, so that the others are not held back forever.
+	 */
+	void awaitReady()
+	{
+		if (_ready==null)
+		{
+			return;
+		}
+		try
+		{
+			_ready.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (BrokenBarrierException e)
+		{
+		}
+	}
+
+	public long getOpsDone()
+	{
+		if (_completion!=null)
+		{
+			return _completion._completed.get();
+		}
+		return _opsdone;
+	}
+
+	/**
+	 * Issue one operation without waiting for it to complete, once fewer than the allowed number are in flight.
+	 * 
+	 * @return false if this thread should issue no more operations.
+	 */
+	boolean doAsync()
+	{
+		_completion._inflight.acquireUninterruptibly();
+		if (_completion._failed)
+		{
+			_completion._inflight.release();
+			return false;
+		}
+		if (_dotransactions)
+		{
+			return _workload.doTransactionAsync(_db,_workloadstate,_completion);
+		}
+		else
+		{
+			return _workload.doInsertAsync(_db,_workloadstate,_completion);
+		}
+	}
+
+	public void run()
+	{
+		Utils.setThreadRandom(_threadid);
+		OperationTrace.setClientThread(_threadid);
+		try
+		{
+			if (_ownsdb)
+			{
+				_db.init();
+			}
+		}
+		catch (DBException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			awaitReady();
+			return;
+		}
+
+		try
+		{
+			_workloadstate=_workload.initThread(_props,_threadid,_threadcount);
+		}
+		catch (WorkloadException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			awaitReady();
+			return;
+		}
+
+		awaitReady();
+
+		try
+		{
+			while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
+			{
+				//throttle the operations
+				if (_limiter!=null)
+				{
+					throttleNanos();
+				}
+
+				boolean more;
+				if (_completion!=null)
+				{
+					more=doAsync();
+				}
+				else if (_dotransactions)
+				{
+					more=_workload.doTransaction(_db,_workloadstate);
+				}
+				else
+				{
+					more=_workload.doInsert(_db,_workloadstate);
+				}
+				_measurements.setIntendedStartTimeNs(0);
+
+				if (!more)
+				{
+					break;
+				}
+
+				_opsdone++;
+			}
+
+			if (_completion!=null)
+			{
+				//wait for the operations still in flight
+				_completion._inflight.acquireUninterruptibly(_outstanding);
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			//the run is not valid without this thread, so stop the others and let the client report it
+			_error=e;
+			_workload.requestStop();
+		}
+
+		try
+		{
+			if (_ownsdb)
+			{
+				_db.cleanup();
+			}
+		}
+		catch (DBException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			return;
+		}
+	}
+}
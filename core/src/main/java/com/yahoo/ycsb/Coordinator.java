@@ -0,0 +1,438 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+
+package com.yahoo.ycsb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurementHdrHistogram;
+
+/**
+ * Runs a workload on several Worker processes, possibly on different machines, as if it were one client. The
+ * coordinator sends each worker the properties of the run with its share of the work: for the load phase, a
+ * separate range of the records to insert (via insertstart and insertcount); for the transaction phase, its share
+ * of the operation count. The target throughput is also divided among the workers; threadcount applies to each
+ * worker. Once every worker has set up its workload and DB connections, all are told to start at once.
+ * 
+ * While the run is in progress each worker streams back the latency histograms of every interval, and the
+ * coordinator merges them into a status line, giving the same percentiles as the status line of a single client,
+ * if asked to show status. When the workers finish, their latency histograms are
+ * merged bucket by bucket, so the percentiles reported are exactly those of the run as a whole.
+ * 
+ * Properties:
+ * <UL>
+ * <LI><b>workers</b>: comma separated host:port addresses of the workers; setting this makes the client a coordinator
+ * <LI><b>coordinator.interval</b>: how often the workers report, in seconds (default: 10)
+ * </UL>
+ */
+public class Coordinator
+{
+	public static final String WORKERS_PROPERTY="workers";
+
+	public static final String INTERVAL_PROPERTY="coordinator.interval";
+	public static final String INTERVAL_PROPERTY_DEFAULT="10";
+
+	/**
+	 * The connection to one worker, and a thread that reads what it sends.
+	 */
+	class WorkerConnection extends Thread
+	{
+		String _address;
+		Socket _socket;
+		DataInputStream _in;
+		DataOutputStream _out;
+
+		volatile long _opsdone=0;
+		int _intervals=0;
+		long _runtime=0;
+		boolean _done=false;
+
+		WorkerConnection(String address) throws IOException
+		{
+			_address=address;
+			int colon=address.lastIndexOf(':');
+			if (colon<0)
+			{
+				_socket=new Socket(address,Worker.DEFAULT_PORT);
+			}
+			else
+			{
+				_socket=new Socket(address.substring(0,colon),Integer.parseInt(address.substring(colon+1)));
+			}
+			_out=new DataOutputStream(new BufferedOutputStream(_socket.getOutputStream()));
+			_in=new DataInputStream(new BufferedInputStream(_socket.getInputStream()));
+		}
+
+		void close()
+		{
+			try
+			{
+				_socket.close();
+			}
+			catch (IOException e)
+			{
+			}
+		}
+
+		/**
+		 * Read interval reports until the worker is done.
+		 */
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					String msg=_in.readUTF();
+					if (msg.compareTo(Worker.INTERVAL)==0)
+					{
+						_opsdone=_in.readLong();
+						synchronized (Coordinator.this)
+						{
+							Measurements.mergeInterval(_in,_interval);
+							_intervals++;
+							Coordinator.this.notifyAll();
+						}
+					}
+					else if (msg.compareTo(Worker.DONE)==0)
+					{
+						_opsdone=_in.readLong();
+						_runtime=_in.readLong();
+						Measurements.getMeasurements().merge(_in);
+						_done=true;
+						return;
+					}
+					else if (msg.compareTo(Worker.FAILED)==0)
+					{
+						System.err.println("Worker "+_address+" failed: "+_in.readUTF());
+						return;
+					}
+					else
+					{
+						System.err.println("Unexpected message from worker "+_address+": "+msg);
+						return;
+					}
+				}
+			}
+			catch (Exception e)
+			{
+				System.err.println("Lost worker "+_address+": "+e);
+			}
+			finally
+			{
+				close();
+			}
+		}
+	}
+
+	Properties _props;
+	Vector<WorkerConnection> _workers=new Vector<WorkerConnection>();
+
+	/**
+	 * The merged latency histograms of the current interval, by operation.
+	 */
+	HashMap<String,OneMeasurementHdrHistogram> _interval=new HashMap<String,OneMeasurementHdrHistogram>();
+
+	Coordinator(Properties props)
+	{
+		_props=props;
+	}
+
+	/**
+	 * Return the part of [0,total) that worker i of n is responsible for, as {start, count}.
+	 */
+	static long[] share(long total, int i, int n)
+	{
+		long start=total*i/n;
+		long end=total*(i+1)/n;
+		return new long[] {start,end-start};
+	}
+
+	/**
+	 * Return the properties to send to worker i of n.
+	 */
+	static Properties workerProperties(Properties props, boolean dotransactions, int i, int n)
+	{
+		Properties workerprops=new Properties();
+		for (String prop : props.stringPropertyNames())
+		{
+			workerprops.setProperty(prop,props.getProperty(prop));
+		}
+		workerprops.remove(WORKERS_PROPERTY);
+
+		if (dotransactions)
+		{
+			long opcount=Long.parseLong(props.getProperty(Client.OPERATION_COUNT_PROPERTY,"0"));
+			if (opcount>0)
+			{
+				workerprops.setProperty(Client.OPERATION_COUNT_PROPERTY,Long.toString(share(opcount,i,n)[1]));
+			}
+		}
+		else
+		{
+			long insertstart=Long.parseLong(props.getProperty(Workload.INSERT_START_PROPERTY,Workload.INSERT_START_PROPERTY_DEFAULT));
+			long insertcount;
+			if (props.containsKey(Client.INSERT_COUNT_PROPERTY))
+			{
+				insertcount=Long.parseLong(props.getProperty(Client.INSERT_COUNT_PROPERTY));
+			}
+			else
+			{
+				insertcount=Long.parseLong(props.getProperty(Client.RECORD_COUNT_PROPERTY,"0"))-insertstart;
+			}
+			long[] part=share(insertcount,i,n);
+			workerprops.setProperty(Workload.INSERT_START_PROPERTY,Long.toString(insertstart+part[0]));
+			workerprops.setProperty(Client.INSERT_COUNT_PROPERTY,Long.toString(part[1]));
+		}
+
+		double target=Double.parseDouble(props.getProperty("target","0"));
+		if (target>0)
+		{
+			workerprops.setProperty("target",Double.toString(target/n));
+		}
+
+		//give each worker its own seed, or they would all draw the same numbers
+		String seed=props.getProperty(Utils.SEED_PROPERTY);
+		if (seed!=null)
+		{
+			workerprops.setProperty(Utils.SEED_PROPERTY,Long.toString(FastRandom.splitmix64(Long.parseLong(seed.trim())+i)));
+		}
+		return workerprops;
+	}
+
+	/**
+	 * Return true if every worker still running has reported the given number of intervals.
+	 */
+	synchronized boolean allReported(int intervals)
+	{
+		for (WorkerConnection w : _workers)
+		{
+			if ( w.isAlive() && (w._intervals<intervals) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean anyRunning()
+	{
+		for (WorkerConnection w : _workers)
+		{
+			if (w.isAlive())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Print the merged latency histograms of the interval just ended.
+	 * 
+	 * @return The number of operations done so far.
+	 */
+	long reportInterval(long st, long lasten, long lasttotalops, String label)
+	{
+		long en=System.currentTimeMillis();
+		long totalops=0;
+		for (WorkerConnection w : _workers)
+		{
+			totalops+=w._opsdone;
+		}
+		double curthroughput=1000.0*(((double)(totalops-lasttotalops))/((double)(en-lasten)));
+
+		String summary;
+		synchronized (this)
+		{
+			summary=Measurements.getIntervalSummary(_interval);
+			_interval=new HashMap<String,OneMeasurementHdrHistogram>();
+		}
+
+		DecimalFormat d=new DecimalFormat("#.##");
+		SimpleDateFormat format=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+		System.err.println(label+format.format(new Date())+" "+((en-st)/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+summary);
+		return totalops;
+	}
+
+	/**
+	 * Disconnect from every worker, abandoning the run.
+	 */
+	void abandon()
+	{
+		for (WorkerConnection w : _workers)
+		{
+			w.close();
+		}
+	}
+
+	/**
+	 * Run the workload on the workers given by the "workers" property and export the merged measurements.
+	 * 
+	 * @throws ClientException if the run cannot be set up or a worker is lost, in which case the other workers
+	 *                         are disconnected and left waiting for the next run.
+	 */
+	static void run(Properties props, boolean dotransactions, boolean status, String label) throws ClientException
+	{
+		if ( (props.getProperty(TargetScheduleThread.TARGET_SCHEDULE_PROPERTY)!=null) || (props.getProperty(ThroughputSearchThread.SLO_PROPERTY)!=null) )
+		{
+			throw new ClientException("A distributed run cannot follow "+TargetScheduleThread.TARGET_SCHEDULE_PROPERTY+" or search with "+ThroughputSearchThread.SLO_PROPERTY);
+		}
+
+		Measurements.setProperties(props);
+		Coordinator coordinator=new Coordinator(props);
+
+		String[] addresses=props.getProperty(WORKERS_PROPERTY).split(",");
+		int n=addresses.length;
+		for (int i=0; i<n; i++)
+		{
+			String address=addresses[i].trim();
+			try
+			{
+				WorkerConnection w=coordinator.new WorkerConnection(address);
+				coordinator._workers.add(w);
+				Worker.writeProperties(w._out,workerProperties(props,dotransactions,i,n));
+				w._out.writeBoolean(dotransactions);
+				w._out.flush();
+			}
+			catch (IOException e)
+			{
+				coordinator.abandon();
+				throw new ClientException("Could not connect to worker "+address+": "+e.getMessage());
+			}
+		}
+
+		System.err.println("Waiting for "+n+" workers to load the workload...");
+		for (WorkerConnection w : coordinator._workers)
+		{
+			try
+			{
+				String msg=w._in.readUTF();
+				if (msg.compareTo(Worker.FAILED)==0)
+				{
+					throw new IOException(w._in.readUTF());
+				}
+				if (msg.compareTo(Worker.READY)!=0)
+				{
+					throw new IOException("expected "+Worker.READY+" but got "+msg);
+				}
+			}
+			catch (IOException e)
+			{
+				coordinator.abandon();
+				throw new ClientException("Worker "+w._address+" failed to get ready: "+e.getMessage());
+			}
+		}
+
+		System.err.println("Starting test.");
+		long st=System.currentTimeMillis();
+		for (WorkerConnection w : coordinator._workers)
+		{
+			try
+			{
+				w._out.writeUTF(Worker.START);
+				w._out.flush();
+			}
+			catch (IOException e)
+			{
+				coordinator.abandon();
+				throw new ClientException("Could not start worker "+w._address+": "+e.getMessage());
+			}
+		}
+		for (WorkerConnection w : coordinator._workers)
+		{
+			w.start();
+		}
+
+		//report each interval once every worker still running has reported it
+		long lasten=st;
+		long lasttotalops=0;
+		int intervals=0;
+		while (true)
+		{
+			synchronized (coordinator)
+			{
+				while ( coordinator.anyRunning() && !coordinator.allReported(intervals+1) )
+				{
+					try
+					{
+						coordinator.wait(100);
+					}
+					catch (InterruptedException e)
+					{
+					}
+				}
+			}
+			if (!coordinator.anyRunning())
+			{
+				break;
+			}
+			intervals++;
+			if (status)
+			{
+				lasttotalops=coordinator.reportInterval(st,lasten,lasttotalops,label);
+				lasten=System.currentTimeMillis();
+			}
+		}
+		for (WorkerConnection w : coordinator._workers)
+		{
+			try
+			{
+				w.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		long opsdone=0;
+		long runtime=0;
+		for (WorkerConnection w : coordinator._workers)
+		{
+			if (!w._done)
+			{
+				throw new ClientException("Worker "+w._address+" did not finish; no results.");
+			}
+			opsdone+=w._opsdone;
+			runtime=Math.max(runtime,w._runtime);
+		}
+
+		try
+		{
+			Client.exportMeasurements(props,opsdone,runtime);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not export measurements, error: " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+}
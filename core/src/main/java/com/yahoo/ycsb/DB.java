@@ -24,7 +24,8 @@ import java.util.Vector;
 
 /**
  * A layer for accessing a database to be benchmarked. Each thread in the client
- * will be given its own instance of whatever DB class is to be used in the test.
+ * will be given its own instance of whatever DB class is to be used in the test
+ * (unless the "dbpoolsize" property is set, in which case bindings must be thread safe).
  * This class should be constructed using a no-argument constructor, so we can
  * load it dynamically. Any argument-based initialization should be
  * done by init().
@@ -40,6 +41,16 @@ import java.util.Vector;
  * to match the database's default semantics, or the semantics of your 
  * target application.  For the sake of comparison between experiments we also 
  * recommend you explain the semantics you chose when presenting performance results.
+ * 
+ * Each operation also has an asynchronous form, which lets a client thread keep several operations in flight
+ * at once. By default these simply perform the blocking operation and then invoke the callback, so every DB
+ * supports them; bindings whose client library can issue requests without blocking should override them.
+ * 
+ * A workload may pass the same maps, sets and vectors to every operation of a client thread, clearing them in
+ * between, as CoreWorkload does when its "reuserecords" property is set. A DB that is run that way must not
+ * keep a reference to the fields, values or results of an operation, or to their ByteIterators, once the
+ * operation has returned; it should copy whatever it needs to keep. Asynchronous operations are always given
+ * records of their own.
  */
 public abstract class DB
 {
@@ -67,7 +78,9 @@ public abstract class DB
 
 	/**
 	 * Initialize any state for this DB.
-	 * Called once per DB instance; there is one DB instance per client thread.
+	 * Called once per DB instance. There is one DB instance per client thread, unless the "dbpoolsize" property
+	 * is set, in which case each instance is shared by several client threads, initialized once before any of
+	 * them starts, and must be thread safe.
 	 */
 	public void init() throws DBException
 	{
@@ -75,7 +88,9 @@ public abstract class DB
 
 	/**
 	 * Cleanup any state for this DB.
-	 * Called once per DB instance; there is one DB instance per client thread.
+	 * Called once per DB instance. There is one DB instance per client thread, unless the "dbpoolsize" property
+	 * is set, in which case each instance is shared by several client threads and cleaned up once after all of
+	 * them have finished.
 	 */
 	public void cleanup() throws DBException
 	{
@@ -134,4 +149,71 @@ public abstract class DB
 	 * @return Zero on success, a non-zero error code on error.  See this class's description for a discussion of error codes.
 	 */
 	public abstract int delete(String table, String key);
+
+	/**
+	 * Asynchronously read a record from the database. The default implementation calls read() and then the callback.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to read.
+	 * @param fields The list of fields to read, or null for all of them
+	 * @param result A HashMap of field/value pairs for the result, which must be filled in before the callback is invoked
+	 * @param callback Notified with the return code of the read once it has completed.
+	 */
+	public void readAsync(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result, DBCallback callback)
+	{
+		callback.completed(read(table,key,fields,result));
+	}
+
+	/**
+	 * Asynchronously perform a range scan for a set of records in the database. The default implementation calls scan() and then the callback.
+	 *
+	 * @param table The name of the table
+	 * @param startkey The record key of the first record to read.
+	 * @param recordcount The number of records to read
+	 * @param fields The list of fields to read, or null for all of them
+	 * @param result A Vector of HashMaps, which must be filled in before the callback is invoked
+	 * @param callback Notified with the return code of the scan once it has completed.
+	 */
+	public void scanAsync(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result, DBCallback callback)
+	{
+		callback.completed(scan(table,startkey,recordcount,fields,result));
+	}
+
+	/**
+	 * Asynchronously update a record in the database. The default implementation calls update() and then the callback.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to write.
+	 * @param values A HashMap of field/value pairs to update in the record
+	 * @param callback Notified with the return code of the update once it has completed.
+	 */
+	public void updateAsync(String table, String key, HashMap<String,ByteIterator> values, DBCallback callback)
+	{
+		callback.completed(update(table,key,values));
+	}
+
+	/**
+	 * Asynchronously insert a record in the database. The default implementation calls insert() and then the callback.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to insert.
+	 * @param values A HashMap of field/value pairs to insert in the record
+	 * @param callback Notified with the return code of the insert once it has completed.
+	 */
+	public void insertAsync(String table, String key, HashMap<String,ByteIterator> values, DBCallback callback)
+	{
+		callback.completed(insert(table,key,values));
+	}
+
+	/**
+	 * Asynchronously delete a record from the database. The default implementation calls delete() and then the callback.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to delete.
+	 * @param callback Notified with the return code of the delete once it has completed.
+	 */
+	public void deleteAsync(String table, String key, DBCallback callback)
+	{
+		callback.completed(delete(table,key));
+	}
 }
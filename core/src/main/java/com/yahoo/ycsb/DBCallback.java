@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+/**
+ * Notified when an asynchronous operation issued through one of the *Async() methods of {@link DB} completes.
+ */
+public interface DBCallback
+{
+	/**
+	 * Called exactly once, when the operation has completed and any results have been stored.
+	 * This may be called from any thread, including the one that issued the operation.
+	 *
+	 * @param returncode Zero on success, a non-zero error code on error or "not found".
+	 */
+	public void completed(int returncode);
+}
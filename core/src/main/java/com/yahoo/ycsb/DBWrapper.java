@@ -25,7 +25,8 @@ import java.util.Vector;
 import com.yahoo.ycsb.measurements.Measurements;
 
 /**
- * Wrapper around a "real" DB that measures latencies and counts return codes.
+ * Wrapper around a "real" DB that measures latencies, counts return codes and, if asked to (see
+ * Measurements.MEASUREMENT_PAYLOAD), counts the bytes written by inserts and updates and read by reads and scans.
  */
 public class DBWrapper extends DB
 {
@@ -56,7 +57,9 @@ public class DBWrapper extends DB
 
 	/**
 	 * Initialize any state for this DB.
-	 * Called once per DB instance; there is one DB instance per client thread.
+	 * Called once per DB instance. There is one DB instance per client thread, unless the "dbpoolsize" property
+	 * is set, in which case each instance is shared by several client threads, initialized once before any of
+	 * them starts, and must be thread safe.
 	 */
 	public void init() throws DBException
 	{
@@ -65,7 +68,9 @@ public class DBWrapper extends DB
 
 	/**
 	 * Cleanup any state for this DB.
-	 * Called once per DB instance; there is one DB instance per client thread.
+	 * Called once per DB instance. There is one DB instance per client thread, unless the "dbpoolsize" property
+	 * is set, in which case each instance is shared by several client threads and cleaned up once after all of
+	 * them have finished.
 	 */
 	public void cleanup() throws DBException
 	{
@@ -75,6 +80,62 @@ public class DBWrapper extends DB
     _measurements.measure("CLEANUP", (int)((en-st)/1000));
 	}
 
+	/**
+	 * Record the service time and, if measured, the response time and the corrected service time of an
+	 * operation issued by the calling thread, along with its return code.
+	 */
+	void measure(String op, int res, long intendedStartTimeNanos, long startTimeNanos, long endTimeNanos)
+	{
+		measure(op,res,intendedStartTimeNanos,_measurements.getExpectedIntervalNs(),startTimeNanos,endTimeNanos);
+	}
+
+	/**
+	 * Record an operation as measure() does, given the interval expected between operations by the thread
+	 * that issued it.
+	 */
+	void measure(String op, int res, long intendedStartTimeNanos, long expectedIntervalNanos, long startTimeNanos, long endTimeNanos)
+	{
+		int latency=(int)((endTimeNanos-startTimeNanos)/1000);
+		_measurements.measure(op,latency);
+		_measurements.measureIntended(op,(int)((endTimeNanos-intendedStartTimeNanos)/1000));
+		_measurements.measureCorrected(op,latency,expectedIntervalNanos);
+		_measurements.reportReturnCode(op,res);
+	}
+
+	/**
+	 * Record an operation as measure() does, along with the bytes it wrote or read.
+	 */
+	void measurePayload(String op, int res, long intendedStartTimeNanos, long expectedIntervalNanos, long startTimeNanos, long endTimeNanos, long payload)
+	{
+		measure(op,res,intendedStartTimeNanos,expectedIntervalNanos,startTimeNanos,endTimeNanos);
+		_measurements.measurePayload(op,payload,(int)((endTimeNanos-startTimeNanos)/1000));
+	}
+
+	/**
+	 * Return the bytes held by the values of a record, or 0 if neither the measurements nor the trace count them.
+	 */
+	long size(HashMap<String,ByteIterator> values, OperationTrace trace)
+	{
+		if ( (trace==null) && !_measurements.isMeasuringPayload() )
+		{
+			return 0;
+		}
+		return OperationTrace.size(values);
+	}
+
+	/**
+	 * Return the bytes held by the values of several records, or 0 if neither the measurements nor the trace
+	 * count them.
+	 */
+	long size(Vector<HashMap<String,ByteIterator>> records, OperationTrace trace)
+	{
+		if ( (trace==null) && !_measurements.isMeasuringPayload() )
+		{
+			return 0;
+		}
+		return OperationTrace.size(records);
+	}
+
 	/**
 	 * Read a record from the database. Each field/value pair from the result will be stored in a HashMap.
 	 *
@@ -86,11 +147,17 @@ public class DBWrapper extends DB
 	 */
 	public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.read(table,key,fields,result);
 		long en=System.nanoTime();
-		_measurements.measure("READ",(int)((en-st)/1000));
-		_measurements.reportReturnCode("READ",res);
+		OperationTrace trace=OperationTrace.getTrace();
+		long payload=size(result,trace);
+		measurePayload("READ",res,ist,_measurements.getExpectedIntervalNs(),st,en,payload);
+		if (trace!=null)
+		{
+			trace.record("READ",key,res,st,en,payload);
+		}
 		return res;
 	}
 
@@ -106,11 +173,17 @@ public class DBWrapper extends DB
 	 */
 	public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.scan(table,startkey,recordcount,fields,result);
 		long en=System.nanoTime();
-		_measurements.measure("SCAN",(int)((en-st)/1000));
-		_measurements.reportReturnCode("SCAN",res);
+		OperationTrace trace=OperationTrace.getTrace();
+		long payload=size(result,trace);
+		measurePayload("SCAN",res,ist,_measurements.getExpectedIntervalNs(),st,en,payload);
+		if (trace!=null)
+		{
+			trace.record("SCAN",startkey,res,st,en,payload);
+		}
 		return res;
 	}
 	
@@ -125,11 +198,18 @@ public class DBWrapper extends DB
 	 */
 	public int update(String table, String key, HashMap<String,ByteIterator> values)
 	{
+		OperationTrace trace=OperationTrace.getTrace();
+		//the values are counted before the DB consumes them
+		long payload=size(values,trace);
+		long ist=_measurements.getIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.update(table,key,values);
 		long en=System.nanoTime();
-		_measurements.measure("UPDATE",(int)((en-st)/1000));
-		_measurements.reportReturnCode("UPDATE",res);
+		measurePayload("UPDATE",res,ist,_measurements.getExpectedIntervalNs(),st,en,payload);
+		if (trace!=null)
+		{
+			trace.record("UPDATE",key,res,st,en,payload);
+		}
 		return res;
 	}
 
@@ -144,11 +224,18 @@ public class DBWrapper extends DB
 	 */
 	public int insert(String table, String key, HashMap<String,ByteIterator> values)
 	{
+		OperationTrace trace=OperationTrace.getTrace();
+		//the values are counted before the DB consumes them
+		long payload=size(values,trace);
+		long ist=_measurements.getIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.insert(table,key,values);
 		long en=System.nanoTime();
-		_measurements.measure("INSERT",(int)((en-st)/1000));
-		_measurements.reportReturnCode("INSERT",res);
+		measurePayload("INSERT",res,ist,_measurements.getExpectedIntervalNs(),st,en,payload);
+		if (trace!=null)
+		{
+			trace.record("INSERT",key,res,st,en,payload);
+		}
 		return res;
 	}
 
@@ -161,11 +248,132 @@ public class DBWrapper extends DB
 	 */
 	public int delete(String table, String key)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
 		long st=System.nanoTime();
 		int res=_db.delete(table,key);
 		long en=System.nanoTime();
-		_measurements.measure("DELETE",(int)((en-st)/1000));
-		_measurements.reportReturnCode("DELETE",res);
+		measure("DELETE",res,ist,st,en);
+		OperationTrace trace=OperationTrace.getTrace();
+		if (trace!=null)
+		{
+			trace.record("DELETE",key,res,st,en,0);
+		}
 		return res;
 	}
+
+	/**
+	 * Times an asynchronous operation from the moment it was issued until its completion is reported.
+	 */
+	class TimedCallback implements DBCallback
+	{
+		String _op;
+		String _key;
+		long _ist;
+		long _st;
+
+		/**
+		 * The interval expected between operations by the thread that issued this one, and the number of that
+		 * thread if operations are being traced.
+		 */
+		long _ei=_measurements.getExpectedIntervalNs();
+		int _clientthread=OperationTrace.getTrace()!=null ? OperationTrace.getClientThread() : -1;
+		DBCallback _callback;
+
+		/**
+		 * The bytes written, or the results to count the bytes read from, or -1 and null if the operation
+		 * carries no payload.
+		 */
+		long _payload=-1;
+		HashMap<String,ByteIterator> _result;
+		Vector<HashMap<String,ByteIterator>> _results;
+
+		TimedCallback(String op, String key, long ist, long st, DBCallback callback)
+		{
+			_op=op;
+			_key=key;
+			_ist=ist;
+			_st=st;
+			_callback=callback;
+		}
+
+		public void completed(int returncode)
+		{
+			long en=System.nanoTime();
+			OperationTrace trace=OperationTrace.getTrace();
+			long payload=Math.max(_payload,0)+size(_result,trace)+size(_results,trace);
+			if ( (_payload<0) && (_result==null) && (_results==null) )
+			{
+				measure(_op,returncode,_ist,_ei,_st,en);
+			}
+			else
+			{
+				measurePayload(_op,returncode,_ist,_ei,_st,en,payload);
+			}
+			if (trace!=null)
+			{
+				trace.record(_clientthread,_op,_key,returncode,_st,en,payload);
+			}
+			_callback.completed(returncode);
+		}
+	}
+
+	/**
+	 * Asynchronously read a record from the database, measuring the time until it completes.
+	 */
+	public void readAsync(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result, DBCallback callback)
+	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		long st=System.nanoTime();
+		TimedCallback timed=new TimedCallback("READ",key,ist,st,callback);
+		timed._result=result;
+		_db.readAsync(table,key,fields,result,timed);
+	}
+
+	/**
+	 * Asynchronously perform a range scan, measuring the time until it completes.
+	 */
+	public void scanAsync(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result, DBCallback callback)
+	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		long st=System.nanoTime();
+		TimedCallback timed=new TimedCallback("SCAN",startkey,ist,st,callback);
+		timed._results=result;
+		_db.scanAsync(table,startkey,recordcount,fields,result,timed);
+	}
+
+	/**
+	 * Asynchronously update a record in the database, measuring the time until it completes.
+	 */
+	public void updateAsync(String table, String key, HashMap<String,ByteIterator> values, DBCallback callback)
+	{
+		long payload=size(values,OperationTrace.getTrace());
+		long ist=_measurements.getIntendedStartTimeNs();
+		long st=System.nanoTime();
+		TimedCallback timed=new TimedCallback("UPDATE",key,ist,st,callback);
+		timed._payload=payload;
+		_db.updateAsync(table,key,values,timed);
+	}
+
+	/**
+	 * Asynchronously insert a record in the database, measuring the time until it completes.
+	 */
+	public void insertAsync(String table, String key, HashMap<String,ByteIterator> values, DBCallback callback)
+	{
+		long payload=size(values,OperationTrace.getTrace());
+		long ist=_measurements.getIntendedStartTimeNs();
+		long st=System.nanoTime();
+		TimedCallback timed=new TimedCallback("INSERT",key,ist,st,callback);
+		timed._payload=payload;
+		_db.insertAsync(table,key,values,timed);
+	}
+
+	/**
+	 * Asynchronously delete a record from the database, measuring the time until it completes.
+	 */
+	public void deleteAsync(String table, String key, DBCallback callback)
+	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		long st=System.nanoTime();
+		_db.deleteAsync(table,key,new TimedCallback("DELETE",key,ist,st,callback));
+	}
 }
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.Random;
+
+/**
+ * A random number generator for the use of a single thread, using the xoshiro256** algorithm of Blackman and
+ * Vigna. It is a drop-in replacement for java.util.Random, but keeps its 256 bits of state in plain fields
+ * rather than updating an atomic seed with compare-and-set on every draw, and gives 64 random bits per step,
+ * so it is several times faster. It is not thread safe.
+ *
+ * The state is filled from the seed with SplitMix64, so that seeds that differ in a single bit give unrelated
+ * sequences.
+ */
+public class FastRandom extends Random
+{
+	private static final long serialVersionUID = 6412703964182753571L;
+
+	//set by setSeed(), which java.util.Random calls from its constructor, so they must not have initializers
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	public FastRandom(long seed)
+	{
+		super(seed);
+	}
+
+	/**
+	 * Return the next value of the SplitMix64 sequence after x, a well mixed 64 bit hash of x.
+	 */
+	public static long splitmix64(long x)
+	{
+		long z=x+0x9E3779B97F4A7C15L;
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+		return z^(z>>>31);
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		s0=splitmix64(seed);
+		s1=splitmix64(seed+0x9E3779B97F4A7C15L);
+		s2=splitmix64(seed+2*0x9E3779B97F4A7C15L);
+		s3=splitmix64(seed+3*0x9E3779B97F4A7C15L);
+	}
+
+	@Override
+	public long nextLong()
+	{
+		long result=Long.rotateLeft(s1*5,7)*9;
+		long t=s1<<17;
+		s2^=s0;
+		s3^=s1;
+		s1^=s2;
+		s0^=s3;
+		s2^=t;
+		s3=Long.rotateLeft(s3,45);
+		return result;
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		return (int)(nextLong()>>>(64-bits));
+	}
+
+	@Override
+	public int nextInt()
+	{
+		return (int)(nextLong()>>>32);
+	}
+
+	@Override
+	public double nextDouble()
+	{
+		return (nextLong()>>>11)*0x1.0p-53;
+	}
+
+	@Override
+	public boolean nextBoolean()
+	{
+		return nextLong()<0;
+	}
+}
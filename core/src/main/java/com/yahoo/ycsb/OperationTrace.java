@@ -0,0 +1,353 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A trace of individual operations, so that latency outliers can be matched up with the keys, threads and
+ * operations that caused them and with events on the server. Every operation slower than "trace.threshold"
+ * microseconds is traced, along with a random sample of all operations given by "trace.samplerate".
+ *
+ * DBWrapper adds the operations to a ring buffer without taking any locks, and a background thread writes
+ * them to the file named by "trace.file" as comma separated values. If the buffer fills up faster than it is
+ * written out, the oldest operations are overwritten, and the number lost is noted in the file. The thread of
+ * an operation is the number of the client thread that issued it, which unlike the name of a Java thread is
+ * also known for virtual threads, or -1 if it was not issued by a client thread.
+ */
+public class OperationTrace
+{
+	/**
+	 * The file to write the trace to. There is no trace unless it is given.
+	 */
+	public static final String TRACE_FILE_PROPERTY="trace.file";
+
+	/**
+	 * The latency, in microseconds, above which every operation is traced.
+	 */
+	public static final String TRACE_THRESHOLD_PROPERTY="trace.threshold";
+
+	public static final String TRACE_THRESHOLD_PROPERTY_DEFAULT="10000";
+
+	/**
+	 * The fraction of all operations that is traced whatever their latency, e.g. 0.001 for one in a thousand.
+	 */
+	public static final String TRACE_SAMPLE_RATE_PROPERTY="trace.samplerate";
+
+	public static final String TRACE_SAMPLE_RATE_PROPERTY_DEFAULT="0";
+
+	/**
+	 * The number of operations the ring buffer holds, rounded up to a power of two.
+	 */
+	public static final String TRACE_BUFFER_SIZE_PROPERTY="trace.buffersize";
+
+	public static final String TRACE_BUFFER_SIZE_PROPERTY_DEFAULT="65536";
+
+	/**
+	 * How often the buffer is written out, in milliseconds.
+	 */
+	static final long FLUSH_INTERVAL=100;
+
+	/**
+	 * One traced operation.
+	 */
+	static class Entry
+	{
+		long _seq;
+		long _timestamp;
+		int _clientthread;
+		String _op;
+		String _key;
+		int _latency;
+		int _returncode;
+		long _payload;
+		boolean _slow;
+	}
+
+	/**
+	 * The trace being taken, or null if there is none.
+	 */
+	static volatile OperationTrace current=null;
+
+	/**
+	 * Return the trace being taken, or null if there is none.
+	 */
+	public static OperationTrace getTrace()
+	{
+		return current;
+	}
+
+	/**
+	 * The number of the client thread each thread issues operations for.
+	 */
+	static final ThreadLocal<int[]> clientthread=new ThreadLocal<int[]>()
+	{
+		protected int[] initialValue()
+		{
+			return new int[] {-1};
+		}
+	};
+
+	/**
+	 * Set the number of the client thread the calling thread issues operations for.
+	 */
+	public static void setClientThread(int threadid)
+	{
+		clientthread.get()[0]=threadid;
+	}
+
+	/**
+	 * Return the number of the client thread the calling thread issues operations for, or -1 if it is not a
+	 * client thread.
+	 */
+	public static int getClientThread()
+	{
+		return clientthread.get()[0];
+	}
+
+	int _threshold;
+	double _samplerate;
+	AtomicReferenceArray<Entry> _ring;
+	int _mask;
+	AtomicLong _head=new AtomicLong();
+
+	/**
+	 * The sequence number of the next entry to write out; only used by the writer thread.
+	 */
+	long _tail=0;
+	long _dropped=0;
+
+	BufferedWriter _out;
+	Thread _writer;
+
+	/**
+	 * Open the trace file. Nothing is traced until start() is called.
+	 *
+	 * @throws IOException if the trace file cannot be created.
+	 */
+	public OperationTrace(Properties props) throws IOException
+	{
+		_threshold=Integer.parseInt(props.getProperty(TRACE_THRESHOLD_PROPERTY,TRACE_THRESHOLD_PROPERTY_DEFAULT));
+		_samplerate=Double.parseDouble(props.getProperty(TRACE_SAMPLE_RATE_PROPERTY,TRACE_SAMPLE_RATE_PROPERTY_DEFAULT));
+		int size=Integer.parseInt(props.getProperty(TRACE_BUFFER_SIZE_PROPERTY,TRACE_BUFFER_SIZE_PROPERTY_DEFAULT));
+		int capacity=1;
+		while (capacity<size)
+		{
+			capacity<<=1;
+		}
+		_ring=new AtomicReferenceArray<Entry>(capacity);
+		_mask=capacity-1;
+
+		_out=new BufferedWriter(new FileWriter(props.getProperty(TRACE_FILE_PROPERTY)));
+		_out.write("Timestamp(ms),Thread,Operation,Key,Latency(us),Return,Payload(bytes),Reason");
+		_out.newLine();
+	}
+
+	/**
+	 * Start tracing the operations of all DBWrappers, and writing them out in the background.
+	 */
+	public void start()
+	{
+		_writer=new Thread("OperationTraceWriter")
+		{
+			public void run()
+			{
+				boolean done=false;
+				while (!done)
+				{
+					try
+					{
+						sleep(FLUSH_INTERVAL);
+					}
+					catch (InterruptedException e)
+					{
+						done=true;
+					}
+					try
+					{
+						flush();
+					}
+					catch (IOException e)
+					{
+						System.err.println("Could not write the operation trace, error: "+e.getMessage());
+						e.printStackTrace();
+						current=null;
+						return;
+					}
+				}
+			}
+		};
+		current=this;
+		_writer.start();
+	}
+
+	/**
+	 * Stop tracing, write out the operations traced so far and close the trace file.
+	 */
+	public void stop()
+	{
+		if (current==this)
+		{
+			current=null;
+		}
+		if (_writer!=null)
+		{
+			_writer.interrupt();
+			try
+			{
+				_writer.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+		try
+		{
+			_out.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Trace an operation issued by the calling thread if it was slow or is picked for the sample.
+	 *
+	 * @param op The operation, e.g. "READ".
+	 * @param key The key of the record, or the first key of a scan.
+	 * @param returncode The return code of the operation.
+	 * @param startTimeNanos When the operation was issued, from System.nanoTime().
+	 * @param endTimeNanos When the operation completed, from System.nanoTime().
+	 * @param payload The number of bytes read or written.
+	 */
+	public void record(String op, String key, int returncode, long startTimeNanos, long endTimeNanos, long payload)
+	{
+		record(getClientThread(),op,key,returncode,startTimeNanos,endTimeNanos,payload);
+	}
+
+	/**
+	 * Trace an operation if it was slow or is picked for the sample, such as one that completed on a thread other
+	 * than the one that issued it.
+	 *
+	 * @param clientthread The number of the client thread that issued the operation.
+	 */
+	public void record(int clientthread, String op, String key, int returncode, long startTimeNanos, long endTimeNanos, long payload)
+	{
+		int latency=(int)((endTimeNanos-startTimeNanos)/1000);
+		boolean slow=latency>_threshold;
+		if ( !slow && ((_samplerate<=0) || (Utils.random().nextDouble()>=_samplerate)) )
+		{
+			return;
+		}
+
+		Entry e=new Entry();
+		e._timestamp=System.currentTimeMillis();
+		e._clientthread=clientthread;
+		e._op=op;
+		e._key=key;
+		e._latency=latency;
+		e._returncode=returncode;
+		e._payload=payload;
+		e._slow=slow;
+		e._seq=_head.getAndIncrement();
+		_ring.lazySet((int)(e._seq&_mask),e);
+	}
+
+	/**
+	 * Write out the operations traced since the last flush. Operations whose slots have been claimed but not
+	 * yet filled are left for the next flush.
+	 */
+	synchronized void flush() throws IOException
+	{
+		long head=_head.get();
+		if (head-_tail>_ring.length())
+		{
+			_dropped+=head-_ring.length()-_tail;
+			_tail=head-_ring.length();
+		}
+
+		long dropped=0;
+		for ( ; _tail<head; _tail++)
+		{
+			Entry e=_ring.get((int)(_tail&_mask));
+			if ( (e==null) || (e._seq<_tail) )
+			{
+				break;
+			}
+			if (e._seq>_tail)
+			{
+				//overwritten by an operation traced since
+				dropped++;
+				continue;
+			}
+			_out.write(e._timestamp+","+e._clientthread+","+e._op+","+e._key+","+e._latency+","+e._returncode+","+
+					e._payload+","+(e._slow ? "slow" : "sample"));
+			_out.newLine();
+		}
+		_dropped+=dropped;
+
+		if (_dropped>0)
+		{
+			_out.write("# "+_dropped+" operations were traced faster than they could be written out, and lost");
+			_out.newLine();
+			_dropped=0;
+		}
+		_out.flush();
+	}
+
+	/**
+	 * Return the number of bytes held by the values of a record.
+	 */
+	public static long size(Map<String,ByteIterator> values)
+	{
+		long size=0;
+		if (values!=null)
+		{
+			for (ByteIterator v : values.values())
+			{
+				size+=v.bytesLeft();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Return the number of bytes held by the values of several records.
+	 */
+	public static long size(Vector<HashMap<String,ByteIterator>> records)
+	{
+		long size=0;
+		if (records!=null)
+		{
+			for (HashMap<String,ByteIterator> values : records)
+			{
+				size+=size(values);
+			}
+		}
+		return size;
+	}
+}
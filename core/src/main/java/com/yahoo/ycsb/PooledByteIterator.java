@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ByteIterator over a value sliced out of a RandomDataPool. The bytes are read from the pool as they are
+ * consumed, so the value is never copied unless the DB asks for a copy.
+ */
+public class PooledByteIterator extends ByteIterator {
+	final RandomDataPool pool;
+	final int start;
+	final int len;
+	int off;
+
+	PooledByteIterator(RandomDataPool pool, int start, int len) {
+		this.pool = pool;
+		this.start = start;
+		this.len = len;
+		this.off = 0;
+	}
+
+	/**
+	 * Return the index in the pool of the next byte, wrapping around to the start of the pool.
+	 */
+	private int index() {
+		return (int)((start + (long)off) % pool.size);
+	}
+
+	@Override
+	public boolean hasNext() {
+		return off < len;
+	}
+
+	@Override
+	public byte nextByte() {
+		byte ret = pool.get(index());
+		off++;
+		return ret;
+	}
+
+	@Override
+	public int nextBuf(byte[] buf, int buf_off) {
+		int n = Math.min(len - off, buf.length - buf_off);
+		int end = buf_off + n;
+		while (buf_off < end) {
+			int index = index();
+			int chunk = Math.min(end - buf_off, pool.size - index);
+			pool.get(index, buf, buf_off, chunk);
+			buf_off += chunk;
+			off += chunk;
+		}
+		return buf_off;
+	}
+
+	/**
+	 * Returns a view of the pool rather than a copy, unless the value wraps around the end of the pool.
+	 */
+	@Override
+	public ByteBuffer toByteBuffer() {
+		int index = index();
+		int left = len - off;
+		if (index + left > pool.size) {
+			return super.toByteBuffer();
+		}
+		off = len;
+		return pool.slice(index, left);
+	}
+
+	@Override
+	public long bytesLeft() {
+		return len - off;
+	}
+}
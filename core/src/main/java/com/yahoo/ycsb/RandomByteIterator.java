@@ -16,6 +16,8 @@
  */
 package com.yahoo.ycsb;
 
+import java.util.Random;
+
 /**
  *  A ByteIterator that generates a random sequence of bytes.
  */
@@ -30,8 +32,8 @@ public class RandomByteIterator extends ByteIterator {
     return (off + bufOff) < len;
   }
 
-  private void fillBytesImpl(byte[] buffer, int base) {
-    int bytes = Utils.random().nextInt();
+  private void fillBytesImpl(Random random, byte[] buffer, int base) {
+    int bytes = random.nextInt();
     try {
       buffer[base+0] = (byte)(((bytes) & 31) + ' ');
       buffer[base+1] = (byte)(((bytes >> 5) & 31) + ' ');
@@ -44,7 +46,7 @@ public class RandomByteIterator extends ByteIterator {
 
   private void fillBytes() {
     if(bufOff ==  buf.length) {
-      fillBytesImpl(buf, 0);
+      fillBytesImpl(Utils.random(), buf, 0);
       bufOff = 0;
       off += buf.length;
     }
@@ -72,9 +74,10 @@ public class RandomByteIterator extends ByteIterator {
     } else {
       ret = buffer.length - bufferOffset;
     }
+    Random random = Utils.random();
     int i;
     for(i = 0; i < ret; i+=6) {
-      fillBytesImpl(buffer, i + bufferOffset);
+      fillBytesImpl(random, buffer, i + bufferOffset);
     }
     off+=ret;
     return ret + bufferOffset;
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * A large block of random bytes, generated once, from which field values are sliced at random offsets. A value
+ * costs a random draw and a small iterator rather than a random draw for every six bytes, and its bytes can be
+ * copied out in bulk, or handed to the DB as a view without copying them at all.
+ *
+ * The bytes are the same printable characters as those of RandomByteIterator. The pool may be kept off the
+ * heap, so that a large one costs the garbage collector nothing. Values longer than the pool, or that run
+ * past its end, wrap around to its start.
+ *
+ * A pool may be shared by any number of threads.
+ */
+public class RandomDataPool
+{
+	/**
+	 * The bytes, on the heap, or null if they are kept off it.
+	 */
+	final byte[] heap;
+
+	/**
+	 * The bytes, off the heap, or null if they are kept on it.
+	 */
+	final ByteBuffer direct;
+
+	final int size;
+
+	/**
+	 * A view of the off heap bytes for each thread, as bulk reads move the position of the buffer read.
+	 */
+	private final ThreadLocal<ByteBuffer> views=new ThreadLocal<ByteBuffer>();
+
+	/**
+	 * Create a pool of random bytes, drawn from the random number generator of the calling thread.
+	 *
+	 * @param size the number of bytes in the pool
+	 * @param offheap keep the bytes in a direct buffer rather than on the heap
+	 */
+	public RandomDataPool(int size, boolean offheap)
+	{
+		if (size<=0)
+		{
+			throw new IllegalArgumentException("A random data pool must hold at least one byte, not "+size);
+		}
+		this.size=size;
+
+		byte[] bytes=new byte[size];
+		Random random=Utils.random();
+		for (int i=0; i<size; i+=12)
+		{
+			//12 characters of 5 bits each from one draw
+			long bits=random.nextLong();
+			for (int j=i; (j<i+12) && (j<size); j++)
+			{
+				bytes[j]=(byte)((bits&31)+' ');
+				bits>>>=5;
+			}
+		}
+
+		if (offheap)
+		{
+			direct=ByteBuffer.allocateDirect(size);
+			direct.put(bytes);
+			direct.clear();
+			heap=null;
+		}
+		else
+		{
+			heap=bytes;
+			direct=null;
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Return a value of the given length, starting at a random offset in the pool.
+	 */
+	public ByteIterator next(int length)
+	{
+		return new PooledByteIterator(this,Utils.random().nextInt(size),length);
+	}
+
+	byte get(int index)
+	{
+		return (heap!=null) ? heap[index] : direct.get(index);
+	}
+
+	/**
+	 * Copy len bytes starting at index, which must not run past the end of the pool.
+	 */
+	void get(int index, byte[] buf, int off, int len)
+	{
+		if (heap!=null)
+		{
+			System.arraycopy(heap,index,buf,off,len);
+		}
+		else
+		{
+			ByteBuffer view=views.get();
+			if (view==null)
+			{
+				view=direct.duplicate();
+				views.set(view);
+			}
+			view.position(index);
+			view.get(buf,off,len);
+		}
+	}
+
+	/**
+	 * Return a read only view of len bytes starting at index, which must not run past the end of the pool.
+	 */
+	ByteBuffer slice(int index, int len)
+	{
+		ByteBuffer view=(heap!=null) ? ByteBuffer.wrap(heap) : direct.duplicate();
+		view.limit(index+len);
+		view.position(index);
+		return view.slice().asReadOnlyBuffer();
+	}
+}
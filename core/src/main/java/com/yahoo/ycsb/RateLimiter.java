@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces operations issued by any number of threads to a single overall rate. Each call to acquire() reserves
+ * the next free start time, a fixed interval after the one before, and waits until it arrives; a thread that
+ * is held up by a slow operation therefore leaves its share of the rate to the other threads instead of
+ * losing it. Reservations are made with a single compare-and-set, and times are kept in fractions of a
+ * nanosecond so that rates which are not a whole number of operations per millisecond do not drift.
+ * 
+ * If the threads fall behind (or are idle), the reserved start times lag behind the clock and operations are
+ * issued back to back until they catch up. The burst allowance caps how many operations this may be: any
+ * backlog beyond it is forgiven. With no cap the schedule is followed exactly from the start, which is what
+ * open-loop latency measurement needs.
+ */
+public class RateLimiter
+{
+	/**
+	 * Times are kept in units of 1/2^SHIFT nanoseconds.
+	 */
+	static final int SHIFT=10;
+
+	/**
+	 * The System.nanoTime() from which reserved times are counted.
+	 */
+	final long _origin;
+
+	/**
+	 * The next free start time.
+	 */
+	final AtomicLong _next;
+
+	/**
+	 * The time between consecutive start times.
+	 */
+	volatile long _interval;
+
+	/**
+	 * The number of operations that may be issued back to back to catch up, or Long.MAX_VALUE for no limit.
+	 */
+	volatile long _burst;
+
+	/**
+	 * Create a rate limiter with no burst limit.
+	 * 
+	 * @param opspersec The overall rate, in operations per second.
+	 */
+	public RateLimiter(double opspersec)
+	{
+		this(opspersec,Long.MAX_VALUE);
+	}
+
+	/**
+	 * Create a rate limiter.
+	 * 
+	 * @param opspersec The overall rate, in operations per second.
+	 * @param burst The number of operations that may be issued back to back to catch up after falling behind.
+	 */
+	public RateLimiter(double opspersec, long burst)
+	{
+		_origin=System.nanoTime();
+		_next=new AtomicLong(0);
+		_burst=burst;
+		setRate(opspersec);
+	}
+
+	/**
+	 * Change the rate. Start times already reserved are not affected.
+	 * 
+	 * @param opspersec The overall rate, in operations per second.
+	 */
+	public void setRate(double opspersec)
+	{
+		_interval=Math.round((1000000000.0/opspersec)*(1<<SHIFT));
+	}
+
+	/**
+	 * Return the overall rate, in operations per second.
+	 */
+	public double getRate()
+	{
+		return 1000000000.0*(1<<SHIFT)/_interval;
+	}
+
+	/**
+	 * Forgive any backlog, so that the next start time is no earlier than now. Start times already reserved are
+	 * not affected.
+	 */
+	public void skipBacklog()
+	{
+		long now=(System.nanoTime()-_origin)<<SHIFT;
+		long next;
+		while ( ((next=_next.get())<now) && !_next.compareAndSet(next,now) )
+		{
+		}
+	}
+
+	/**
+	 * Reserve the next start time without waiting for it.
+	 * 
+	 * @return The reserved start time, on the System.nanoTime() scale. It may be in the past.
+	 */
+	public long reserve()
+	{
+		long now=(System.nanoTime()-_origin)<<SHIFT;
+		while (true)
+		{
+			long interval=_interval;
+			long next=_next.get();
+			long slot=next;
+
+			long burst=_burst;
+			if ( (burst!=Long.MAX_VALUE) && (burst<Long.MAX_VALUE/interval) && (slot<now-burst*interval) )
+			{
+				slot=now-burst*interval;
+			}
+
+			if (_next.compareAndSet(next,slot+interval))
+			{
+				return _origin+(slot>>SHIFT);
+			}
+		}
+	}
+
+	/**
+	 * Reserve the next start time and wait for it to arrive.
+	 * 
+	 * @return The reserved start time, on the System.nanoTime() scale.
+	 */
+	public long acquire()
+	{
+		long deadline=reserve();
+		sleepUntil(deadline);
+		return deadline;
+	}
+
+	/**
+	 * Wait until System.nanoTime() reaches the deadline.
+	 */
+	public static void sleepUntil(long deadline)
+	{
+		long now;
+		while ((now=System.nanoTime())<deadline)
+		{
+			LockSupport.parkNanos(deadline-now);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * A thread that varies the target throughput over the course of a run, following the schedule given by the
+ * "target.schedule" property, so that the knee of the latency curve can be found in a single run. The
+ * measurements of each step of the schedule are exported on their own as soon as the step is over, and the
+ * run is stopped when the schedule is finished.
+ * 
+ * The schedule is a comma separated list of steps, each of which is one of:
+ * <UL>
+ * <LI><b>rate@seconds</b>: run at the given rate (in operations per second) for the given time
+ * <LI><b>from-to@seconds</b>: ramp the rate linearly from one value to the other over the given time
+ * <LI><b>from-to/by@seconds</b>: shorthand for a series of steps from one rate to the other, each by more
+ * than the last and each lasting the given time; e.g. 1000-50000/5000@60 steps from 1000 to 46000 ops/sec
+ * in steps of 5000 every minute, and then runs at 50000 ops/sec for the last minute
+ * </UL>
+ * 
+ * The measurements of each step go to the file named by the "exportfile" property, with ".step" and the number
+ * of the step appended, or to standard output if there is no export file.
+ */
+public class TargetScheduleThread extends Thread
+{
+	public static final String TARGET_SCHEDULE_PROPERTY="target.schedule";
+
+	/**
+	 * How often the rate is adjusted during a linear ramp, in milliseconds.
+	 */
+	static final long RAMP_UPDATE_INTERVAL=100;
+
+	/**
+	 * One step of the schedule.
+	 */
+	static class Step
+	{
+		double _startrate;
+		double _endrate;
+		long _duration;
+
+		Step(double startrate, double endrate, long duration)
+		{
+			_startrate=startrate;
+			_endrate=endrate;
+			_duration=duration;
+		}
+	}
+
+	/**
+	 * Parse a schedule.
+	 * 
+	 * @throws IllegalArgumentException if the schedule is malformed.
+	 */
+	static Vector<Step> parse(String schedule)
+	{
+		Vector<Step> steps=new Vector<Step>();
+		for (String s : schedule.split(","))
+		{
+			s=s.trim();
+			int at=s.indexOf('@');
+			if (at<0)
+			{
+				throw new IllegalArgumentException("Step \""+s+"\" of "+TARGET_SCHEDULE_PROPERTY+" has no duration");
+			}
+			long duration=(long)(Double.parseDouble(s.substring(at+1))*1000);
+			String rates=s.substring(0,at);
+
+			int dash=rates.indexOf('-');
+			if (dash<0)
+			{
+				double rate=Double.parseDouble(rates);
+				steps.add(new Step(rate,rate,duration));
+				continue;
+			}
+
+			double from=Double.parseDouble(rates.substring(0,dash));
+			int slash=rates.indexOf('/');
+			if (slash<0)
+			{
+				double to=Double.parseDouble(rates.substring(dash+1));
+				steps.add(new Step(from,to,duration));
+				continue;
+			}
+
+			double to=Double.parseDouble(rates.substring(dash+1,slash));
+			double by=Double.parseDouble(rates.substring(slash+1));
+			if ( (by<=0) || (to<from) )
+			{
+				throw new IllegalArgumentException("Step \""+s+"\" of "+TARGET_SCHEDULE_PROPERTY+" does not go up");
+			}
+			for (double rate=from; rate<to; rate+=by)
+			{
+				steps.add(new Step(rate,rate,duration));
+			}
+			steps.add(new Step(to,to,duration));
+		}
+
+		for (Step step : steps)
+		{
+			if ( (step._startrate<=0) || (step._endrate<=0) || (step._duration<=0) )
+			{
+				throw new IllegalArgumentException("Rates and durations in "+TARGET_SCHEDULE_PROPERTY+" must be positive");
+			}
+		}
+		return steps;
+	}
+
+	Vector<Step> _steps;
+	RateLimiter _limiter;
+	Map<Thread,ClientThread> _threads;
+	Workload _workload;
+	Properties _props;
+
+	/**
+	 * @param steps The schedule to follow.
+	 * @param limiter The rate limiter shared by the client threads; its rate is set as the schedule requires.
+	 * @param threads The client threads, whose progress is used to compute the throughput of each step.
+	 * @param workload The workload, which is asked to stop when the schedule is finished.
+	 * @param props The properties of the run, which determine how step measurements are exported.
+	 */
+	public TargetScheduleThread(Vector<Step> steps, RateLimiter limiter, Map<Thread,ClientThread> threads, Workload workload, Properties props)
+	{
+		_steps=steps;
+		_limiter=limiter;
+		_threads=threads;
+		_workload=workload;
+		_props=props;
+	}
+
+	long totalOpsDone()
+	{
+		long totalops=0;
+		for (ClientThread ct : _threads.values())
+		{
+			totalops+=ct.getOpsDone();
+		}
+		return totalops;
+	}
+
+	/**
+	 * Follow the schedule. If interrupted because the client threads have finished, export the step in progress
+	 * and stop.
+	 */
+	public void run()
+	{
+		Measurements measurements=Measurements.getMeasurements();
+		int stepnumber=0;
+
+		for (Step step : _steps)
+		{
+			stepnumber++;
+			measurements.startSegment();
+			long lastops=totalOpsDone();
+			long st=System.currentTimeMillis();
+			long en=st+step._duration;
+
+			System.err.println("Step "+stepnumber+" of "+_steps.size()+": target "+step._startrate+
+					(step._endrate!=step._startrate ? " to "+step._endrate : "")+" ops/sec for "+(step._duration/1000.0)+" sec");
+
+			boolean interrupted=false;
+			long now;
+			while ( ((now=System.currentTimeMillis())<en) && !interrupted )
+			{
+				_limiter.setRate(step._startrate+(step._endrate-step._startrate)*(now-st)/step._duration);
+				try
+				{
+					sleep(step._endrate==step._startrate ? en-now : Math.min(RAMP_UPDATE_INTERVAL,en-now));
+				}
+				catch (InterruptedException e)
+				{
+					interrupted=true;
+				}
+			}
+
+			exportStep(stepnumber,step,measurements.endSegment(),totalOpsDone()-lastops,System.currentTimeMillis()-st);
+			if (interrupted)
+			{
+				return;
+			}
+		}
+
+		System.err.println("Throughput schedule finished. Requesting stop for the workload.");
+		_workload.requestStop();
+	}
+
+	void exportStep(int stepnumber, Step step, Measurements stepmeasurements, long opsdone, long runtime)
+	{
+		MeasurementsExporter exporter=null;
+		try
+		{
+			exporter=Client.newSegmentExporter(_props,".step"+stepnumber);
+			exporter.write("STEP", "Number", stepnumber);
+			exporter.write("STEP", "TargetThroughput(ops/sec)", step._endrate);
+			exporter.write("STEP", "RunTime(ms)", (double)runtime);
+			exporter.write("STEP", "Throughput(ops/sec)", 1000.0*((double)opsdone)/((double)runtime));
+			stepmeasurements.exportMeasurements(exporter);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not export measurements of step "+stepnumber+", error: "+e.getMessage());
+			e.printStackTrace();
+		}
+		finally
+		{
+			if (exporter!=null)
+			{
+				try
+				{
+					exporter.close();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * A thread that searches for the highest target throughput at which latency objectives are still met. It runs a
+ * series of probes at different targets against the same client threads and DB connections, doubling the target
+ * until a probe fails and then bisecting between the highest passing and lowest failing targets. A probe fails if
+ * any objective is violated or its operation was not measured at all, or if the achieved throughput falls short of
+ * the target by more than the precision of the search. Before each probe any backlog left by the one before is
+ * forgiven, so that probes are independent.
+ * 
+ * Properties:
+ * <UL>
+ * <LI><b>search.slo</b>: comma separated objectives, each of the form operation:percentile:milliseconds; for
+ * example READ:99:10 requires 99% of reads to complete in under 10ms. With measurement.interval=intended, give
+ * objectives for the Intended- operations instead, e.g. Intended-READ:99:10. An objective for an operation the
+ * workload does not issue is rejected. Setting this enables the search.
+ * <LI><b>search.start</b>: the target of the first probe (default: 1000 ops/sec)
+ * <LI><b>search.max</b>: the highest target to probe (default: no limit)
+ * <LI><b>search.probetime</b>: how long each probe lasts, in seconds (default: 60)
+ * <LI><b>search.precision</b>: the search ends when the gap between the highest passing and the lowest failing
+ * target is within this fraction of the latter (default: 0.05)
+ * </UL>
+ * 
+ * The highest passing target and the measurements of that probe go to the file named by the "exportfile"
+ * property with ".search" appended, or to standard output if there is no export file, and the run is stopped.
+ */
+public class ThroughputSearchThread extends Thread
+{
+	public static final String SLO_PROPERTY="search.slo";
+
+	public static final String START_PROPERTY="search.start";
+	public static final String START_PROPERTY_DEFAULT="1000";
+
+	public static final String MAX_PROPERTY="search.max";
+
+	public static final String PROBE_TIME_PROPERTY="search.probetime";
+	public static final String PROBE_TIME_PROPERTY_DEFAULT="60";
+
+	public static final String PRECISION_PROPERTY="search.precision";
+	public static final String PRECISION_PROPERTY_DEFAULT="0.05";
+
+	/**
+	 * The lowest target worth probing; if probes keep failing the search gives up below this.
+	 */
+	static final double MIN_TARGET=1;
+
+	/**
+	 * A latency objective: the given percentile of an operation must be below a latency.
+	 */
+	static class Objective
+	{
+		String _operation;
+		double _percentile;
+		long _latencyus;
+
+		Objective(String operation, double percentile, long latencyus)
+		{
+			_operation=operation;
+			_percentile=percentile;
+			_latencyus=latencyus;
+		}
+
+		public String toString()
+		{
+			return "p"+_percentile+" "+_operation+" < "+(_latencyus/1000.0)+"ms";
+		}
+	}
+
+	/**
+	 * Parse a list of objectives.
+	 * 
+	 * @throws IllegalArgumentException if the list is malformed.
+	 */
+	static Vector<Objective> parse(String slo)
+	{
+		Vector<Objective> objectives=new Vector<Objective>();
+		for (String s : slo.split(","))
+		{
+			String[] parts=s.trim().split(":");
+			if (parts.length!=3)
+			{
+				throw new IllegalArgumentException("Objective \""+s+"\" of "+SLO_PROPERTY+" is not operation:percentile:milliseconds");
+			}
+			double percentile=Double.parseDouble(parts[1]);
+			double latency=Double.parseDouble(parts[2]);
+			if ( (percentile<=0) || (percentile>100) || (latency<=0) )
+			{
+				throw new IllegalArgumentException("Objective \""+s+"\" of "+SLO_PROPERTY+" is out of range");
+			}
+			objectives.add(new Objective(parts[0].trim(),percentile,(long)(latency*1000)));
+		}
+		return objectives;
+	}
+
+	/**
+	 * Check that every objective is for an operation the workload issues, under its own name or with the
+	 * Intended- or Corrected- prefix.
+	 * 
+	 * @param operations The names under which the workload's operations are measured.
+	 * @throws IllegalArgumentException if an objective is for an operation that will never be measured.
+	 */
+	static void check(Vector<Objective> objectives, Set<String> operations)
+	{
+		for (Objective o : objectives)
+		{
+			String operation=o._operation;
+			for (String prefix : new String[]{"Intended-","Corrected-"})
+			{
+				if (operation.startsWith(prefix))
+				{
+					operation=operation.substring(prefix.length());
+					break;
+				}
+			}
+			if (!operations.contains(operation))
+			{
+				throw new IllegalArgumentException("Objective "+o+" is for an operation the workload does not issue; it issues "+operations);
+			}
+		}
+	}
+
+	Vector<Objective> _objectives;
+	RateLimiter _limiter;
+	Map<Thread,ClientThread> _threads;
+	Workload _workload;
+	Properties _props;
+
+	double _start;
+	double _max;
+	long _probetime;
+	double _precision;
+
+	/**
+	 * @param objectives The objectives each probe must meet.
+	 * @param limiter The rate limiter shared by the client threads; its rate is set to the target of each probe.
+	 * @param threads The client threads, whose progress is used to compute the throughput of each probe.
+	 * @param workload The workload, which is asked to stop when the search is finished.
+	 * @param props The properties of the run, which configure the search and the export of its result.
+	 */
+	public ThroughputSearchThread(Vector<Objective> objectives, RateLimiter limiter, Map<Thread,ClientThread> threads, Workload workload, Properties props)
+	{
+		_objectives=objectives;
+		_limiter=limiter;
+		_threads=threads;
+		_workload=workload;
+		_props=props;
+
+		_start=Double.parseDouble(props.getProperty(START_PROPERTY,START_PROPERTY_DEFAULT));
+		_max=props.getProperty(MAX_PROPERTY)==null ? Double.POSITIVE_INFINITY : Double.parseDouble(props.getProperty(MAX_PROPERTY));
+		_probetime=(long)(Double.parseDouble(props.getProperty(PROBE_TIME_PROPERTY,PROBE_TIME_PROPERTY_DEFAULT))*1000);
+		_precision=Double.parseDouble(props.getProperty(PRECISION_PROPERTY,PRECISION_PROPERTY_DEFAULT));
+		_start=Math.min(_start,_max);
+	}
+
+	long totalOpsDone()
+	{
+		long totalops=0;
+		for (ClientThread ct : _threads.values())
+		{
+			totalops+=ct.getOpsDone();
+		}
+		return totalops;
+	}
+
+	/**
+	 * Check a probe against the objectives, reporting any violation.
+	 */
+	boolean passes(Measurements probe, double target, double throughput)
+	{
+		boolean pass=true;
+		if (throughput<target*(1-_precision))
+		{
+			System.err.println("  throughput "+throughput+" ops/sec is short of the target");
+			pass=false;
+		}
+		for (Objective o : _objectives)
+		{
+			long latency=probe.getPercentileLatency(o._operation,o._percentile);
+			if (latency<0)
+			{
+				//an objective that cannot be checked must not let the search climb unchecked
+				System.err.println("  no "+o._operation+" operations were measured");
+				pass=false;
+			}
+			else if (latency>=o._latencyus)
+			{
+				System.err.println("  "+o+" violated: "+(latency/1000.0)+"ms");
+				pass=false;
+			}
+		}
+		return pass;
+	}
+
+	/**
+	 * Run probes until the search converges. If interrupted because the client threads have finished, report the
+	 * best probe so far.
+	 */
+	public void run()
+	{
+		Measurements measurements=Measurements.getMeasurements();
+		double passing=0;
+		double failing=Double.POSITIVE_INFINITY;
+		Measurements best=null;
+		double bestthroughput=0;
+		int probes=0;
+		double target=_start;
+
+		//whatever goes wrong, the client threads must still be stopped, or they would run until operationcount
+		try
+		{
+			while (true)
+			{
+				probes++;
+				//a backlog left by an overloaded probe would count against this one
+				_limiter.setRate(target);
+				_limiter.skipBacklog();
+				measurements.startSegment();
+				long lastops=totalOpsDone();
+				long st=System.currentTimeMillis();
+
+				System.err.println("Probe "+probes+": target "+target+" ops/sec for "+(_probetime/1000.0)+" sec");
+				boolean interrupted=false;
+				try
+				{
+					sleep(_probetime);
+				}
+				catch (InterruptedException e)
+				{
+					interrupted=true;
+				}
+
+				Measurements probe=measurements.endSegment();
+				long runtime=System.currentTimeMillis()-st;
+				double throughput=1000.0*((double)(totalOpsDone()-lastops))/((double)runtime);
+				if (interrupted)
+				{
+					break;
+				}
+
+				if (passes(probe,target,throughput))
+				{
+					passing=target;
+					best=probe;
+					bestthroughput=throughput;
+					if (passing>=_max)
+					{
+						break;
+					}
+					target=failing==Double.POSITIVE_INFINITY ? Math.min(target*2,_max) : (passing+failing)/2;
+				}
+				else
+				{
+					failing=target;
+					target=(passing+failing)/2;
+				}
+
+				if ( (failing!=Double.POSITIVE_INFINITY) && ((failing-passing<=_precision*failing) || (failing<MIN_TARGET)) )
+				{
+					break;
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println("Throughput search failed: "+e);
+			e.printStackTrace();
+		}
+
+		exportResult(passing,bestthroughput,probes,best);
+		System.err.println("Throughput search finished. Requesting stop for the workload.");
+		_workload.requestStop();
+	}
+
+	void exportResult(double target, double throughput, int probes, Measurements probe)
+	{
+		MeasurementsExporter exporter=null;
+		try
+		{
+			exporter=Client.newSegmentExporter(_props,".search");
+			exporter.write("SEARCH", "Probes", probes);
+			exporter.write("SEARCH", "MaxTargetThroughput(ops/sec)", target);
+			exporter.write("SEARCH", "Throughput(ops/sec)", throughput);
+			if (probe!=null)
+			{
+				probe.exportMeasurements(exporter);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not export the result of the throughput search, error: "+e.getMessage());
+			e.printStackTrace();
+		}
+		finally
+		{
+			if (exporter!=null)
+			{
+				try
+				{
+					exporter.close();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
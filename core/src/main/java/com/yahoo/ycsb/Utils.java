@@ -17,24 +17,101 @@
 
 package com.yahoo.ycsb;
 
+import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility functions.
  */
 public class Utils
 {
-  private static final Random rand = new Random();
+  /**
+   * The seed from which every thread's random number generator is derived. If it is not given, a seed is
+   * chosen at random, so that no two runs are alike.
+   */
+  public static final String SEED_PROPERTY = "seed";
+
+  /**
+   * The random number generator to use: "fast" for a xoshiro256** generator (see FastRandom), or "java" for
+   * java.util.Random.
+   */
+  public static final String RANDOM_PROPERTY = "random";
+  public static final String RANDOM_PROPERTY_DEFAULT = "fast";
+
+  private static volatile long seed = new Random().nextLong();
+  private static volatile boolean javarandom = false;
+
+  /**
+   * Numbers the threads that did not ask for a stream of their own, in the order they first draw.
+   */
+  private static final AtomicInteger unnumbered = new AtomicInteger();
+
   private static final ThreadLocal<Random> rng = new ThreadLocal<Random>();
 
+  /**
+   * Set up the random number generators for a run from its properties. Every stream handed out afterwards
+   * is derived from the seed and the number of the stream, so a run with the same seed and the same
+   * properties draws the same numbers on each of its threads.
+   *
+   * The calling thread is given a fresh stream of its own.
+   */
+  public static synchronized void setRandomProperties(Properties props)
+  {
+    String s = props.getProperty(SEED_PROPERTY);
+    seed = (s != null) ? Long.parseLong(s.trim()) : new Random().nextLong();
+    javarandom = props.getProperty(RANDOM_PROPERTY, RANDOM_PROPERTY_DEFAULT).compareTo("java") == 0;
+    unnumbered.set(0);
+    rng.set(newRandom(-1));
+  }
+
+  /**
+   * Give the calling thread the stream with the given number, such as the number of a client thread. Threads
+   * that never call this are numbered in the order they first call random(), which is reproducible only if
+   * they start in a fixed order.
+   */
+  public static void setThreadRandom(int stream)
+  {
+    rng.set(newRandom(stream));
+  }
+
+  private static Random newRandom(long stream)
+  {
+    long streamseed = FastRandom.splitmix64(seed ^ FastRandom.splitmix64(stream));
+    return javarandom ? new Random(streamseed) : new FastRandom(streamseed);
+  }
+
+  /**
+   * Return the random number generator of the calling thread, which must not be shared with other threads.
+   */
   public static Random random() {
     Random ret = rng.get();
     if(ret == null) {
-      ret = new Random(rand.nextLong());
+      ret = newRandom(-2 - unnumbered.getAndIncrement());
       rng.set(ret);
     }
     return ret;
   }
+      /**
+       * Return a random long uniformly distributed in [0,n), for n that may exceed the range of Random.nextInt(int).
+       */
+      public static long nextLong(Random random, long n)
+      {
+	 if (n<=Integer.MAX_VALUE)
+	 {
+	    return random.nextInt((int)n);
+	 }
+	 //reject the values in the incomplete last block of n, as Random.nextInt(int) does
+	 long bits, val;
+	 do
+	 {
+	    bits=random.nextLong()>>>1;
+	    val=bits%n;
+	 }
+	 while (bits-val+(n-1)<0);
+	 return val;
+      }
+
       /**
        * Generate a random ASCII string of a given length.
        */
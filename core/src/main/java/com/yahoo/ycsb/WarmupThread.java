@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+
+package com.yahoo.ycsb;
+
+import java.util.Map;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * A thread that ends the warmup period at the start of a run, while JIT compilation, connection setup and cold
+ * caches on the store would distort the results. Operations issued during warmup are executed as usual, and count
+ * towards the operation or record count, but their measurements are discarded when it ends, so that the final
+ * report covers only the steady state that follows.
+ * 
+ * Warmup lasts for "warmup.time" seconds or until "warmup.operationcount" operations have been done by all the
+ * client threads together, whichever comes first.
+ */
+public class WarmupThread extends Thread
+{
+	public static final String WARMUP_TIME_PROPERTY="warmup.time";
+
+	public static final String WARMUP_OPERATION_COUNT_PROPERTY="warmup.operationcount";
+
+	/**
+	 * How often the operation count is checked, in milliseconds.
+	 */
+	static final long POLL_INTERVAL=10;
+
+	Map<Thread,ClientThread> _threads;
+	long _warmupops;
+	long _warmuptime;
+
+	volatile boolean _finished=false;
+	long _opsdone;
+	long _endtime;
+
+	/**
+	 * @param threads The client threads, whose progress is checked against the operation count.
+	 * @param warmupops The number of operations to warm up for, or 0 for no limit.
+	 * @param warmuptime The time to warm up for, in milliseconds, or 0 for no limit.
+	 */
+	public WarmupThread(Map<Thread,ClientThread> threads, long warmupops, long warmuptime)
+	{
+		_threads=threads;
+		_warmupops=warmupops;
+		_warmuptime=warmuptime;
+	}
+
+	long totalOpsDone()
+	{
+		long totalops=0;
+		for (ClientThread ct : _threads.values())
+		{
+			totalops+=ct.getOpsDone();
+		}
+		return totalops;
+	}
+
+	/**
+	 * Wait for warmup to end, then discard the measurements taken so far. If interrupted because the client threads
+	 * have finished, warmup never ends.
+	 */
+	public void run()
+	{
+		long st=System.currentTimeMillis();
+		try
+		{
+			while ( ((_warmuptime==0) || (System.currentTimeMillis()-st<_warmuptime)) && ((_warmupops==0) || (totalOpsDone()<_warmupops)) )
+			{
+				sleep(_warmupops==0 ? _warmuptime-(System.currentTimeMillis()-st) : POLL_INTERVAL);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("The run ended during warmup; its measurements include the warmup.");
+			return;
+		}
+
+		Measurements.getMeasurements().reset();
+		_endtime=System.currentTimeMillis();
+		_opsdone=totalOpsDone();
+		_finished=true;
+		System.err.println("Warmup finished after "+_opsdone+" operations and "+(_endtime-st)+" ms; discarding its measurements.");
+	}
+
+	/**
+	 * Return true if warmup has ended.
+	 */
+	public boolean isFinished()
+	{
+		return _finished;
+	}
+
+	/**
+	 * Return the number of operations done when warmup ended.
+	 */
+	public long getOpsDone()
+	{
+		return _opsdone;
+	}
+
+	/**
+	 * Return the time warmup ended, from System.currentTimeMillis().
+	 */
+	public long getEndTime()
+	{
+		return _endtime;
+	}
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+
+package com.yahoo.ycsb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurementHdrHistogram;
+
+/**
+ * A client process that runs workloads on behalf of a Coordinator. It listens for a coordinator to connect, receives
+ * the properties of its share of the run, reports when it is ready, starts the run when told to, streams the
+ * latency histograms of each interval back while it runs, and sends all of its measurements when it is done. If the
+ * run cannot be set up or a client thread fails, it tells the coordinator why instead. It then waits for the next
+ * run.
+ * 
+ * Properties and measurements are sent in a plain format of their own, never as serialized Java objects, so a
+ * peer cannot make the worker construct arbitrary classes. The protocol is not authenticated, however, and
+ * anyone who can connect can make the worker run a workload; so by default the worker listens on the loopback
+ * interface only, and -bind should name an interface that only trusted hosts can reach.
+ * 
+ * Usage: java com.yahoo.ycsb.Worker [-port n] [-bind address]
+ */
+public class Worker
+{
+	public static final int DEFAULT_PORT=6543;
+
+	/**
+	 * Messages sent between the coordinator and its workers.
+	 */
+	static final String READY="READY";
+	static final String START="START";
+	static final String INTERVAL="INTERVAL";
+	static final String DONE="DONE";
+	static final String FAILED="FAILED";
+
+	/**
+	 * The largest property set a worker accepts, in bytes.
+	 */
+	static final int MAX_PROPERTIES_SIZE=16*1024*1024;
+
+	/**
+	 * Controls one run on behalf of a connected coordinator.
+	 */
+	static class CoordinatedRun implements Client.RunControl
+	{
+		DataInputStream _in;
+		DataOutputStream _out;
+		long _interval;
+		Thread _reporter;
+
+		CoordinatedRun(DataInputStream in, DataOutputStream out, long interval)
+		{
+			_in=in;
+			_out=out;
+			_interval=interval;
+		}
+
+		public boolean awaitStart(final Map<Thread,ClientThread> clients)
+		{
+			try
+			{
+				_out.writeUTF(READY);
+				_out.flush();
+				String msg=_in.readUTF();
+				if (msg.compareTo(START)!=0)
+				{
+					System.err.println("Expected "+START+" from the coordinator but got "+msg);
+					return false;
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Lost the coordinator before the start: "+e.getMessage());
+				return false;
+			}
+
+			System.err.println("Started by the coordinator.");
+			final Measurements measurements=Measurements.getMeasurements();
+			final int series=measurements.addIntervals();
+			_reporter=new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						while (true)
+						{
+							sleep(_interval);
+							long opsdone=0;
+							for (ClientThread ct : clients.values())
+							{
+								opsdone+=ct.getOpsDone();
+							}
+							HashMap<String,OneMeasurementHdrHistogram> interval=measurements.nextInterval(series);
+							synchronized (_out)
+							{
+								_out.writeUTF(INTERVAL);
+								_out.writeLong(opsdone);
+								Measurements.writeInterval(_out,interval);
+								_out.flush();
+							}
+						}
+					}
+					catch (InterruptedException e)
+					{
+					}
+					catch (IOException e)
+					{
+						System.err.println("Could not send interval measurements to the coordinator: "+e.getMessage());
+					}
+				}
+			};
+			_reporter.start();
+			return true;
+		}
+
+		void stopReporting()
+		{
+			_reporter.interrupt();
+			try
+			{
+				_reporter.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		public void finished(long opsdone, long runtime)
+		{
+			stopReporting();
+			try
+			{
+				synchronized (_out)
+				{
+					_out.writeUTF(DONE);
+					_out.writeLong(opsdone);
+					_out.writeLong(runtime);
+					Measurements.getMeasurements().write(_out);
+					_out.flush();
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not send measurements to the coordinator: "+e.getMessage());
+			}
+		}
+
+		public void failed()
+		{
+			//the run reports FAILED to the coordinator once it returns
+			stopReporting();
+		}
+	}
+
+	/**
+	 * Write properties as Properties.store() does, preceded by their length.
+	 */
+	static void writeProperties(DataOutputStream out, Properties props) throws IOException
+	{
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		props.store(bytes,null);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	/**
+	 * Read properties written by writeProperties().
+	 */
+	static Properties readProperties(DataInputStream in) throws IOException
+	{
+		int size=in.readInt();
+		if ( (size<0) || (size>MAX_PROPERTIES_SIZE) )
+		{
+			throw new IOException("Bad size of properties: "+size);
+		}
+		byte[] bytes=new byte[size];
+		in.readFully(bytes);
+		Properties props=new Properties();
+		props.load(new ByteArrayInputStream(bytes));
+		return props;
+	}
+
+	/**
+	 * Tell the coordinator that the run failed, and why.
+	 */
+	static void fail(DataOutputStream out, String reason) throws IOException
+	{
+		System.err.println("Run failed: "+reason);
+		synchronized (out)
+		{
+			out.writeUTF(FAILED);
+			out.writeUTF(String.valueOf(reason));
+			out.flush();
+		}
+	}
+
+	/**
+	 * Run the share of a run sent by a coordinator that has connected.
+	 */
+	static void serve(Socket socket)
+	{
+		try
+		{
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in=new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+			Properties props=readProperties(in);
+			boolean dotransactions=in.readBoolean();
+			try
+			{
+				long interval=(long)(Double.parseDouble(props.getProperty(Coordinator.INTERVAL_PROPERTY,Coordinator.INTERVAL_PROPERTY_DEFAULT))*1000);
+				Client.run(props,dotransactions,false,"",new CoordinatedRun(in,out,interval),null);
+			}
+			catch (ClientException e)
+			{
+				fail(out,e.getMessage());
+			}
+			catch (RuntimeException e)
+			{
+				//such as a malformed property
+				fail(out,e.toString());
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Lost the coordinator: "+e.getMessage());
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (IOException e)
+			{
+			}
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		int port=DEFAULT_PORT;
+		String bind=null;
+		boolean usage=(args.length%2)!=0;
+		for (int i=0; (i+1<args.length) && !usage; i+=2)
+		{
+			if (args[i].compareTo("-port")==0)
+			{
+				port=Integer.parseInt(args[i+1]);
+			}
+			else if (args[i].compareTo("-bind")==0)
+			{
+				bind=args[i+1];
+			}
+			else
+			{
+				usage=true;
+			}
+		}
+		if (usage)
+		{
+			System.out.println("Usage: java com.yahoo.ycsb.Worker [-port n] [-bind address]");
+			System.out.println("  -port n: listen for the coordinator on port n (default: "+DEFAULT_PORT+")");
+			System.out.println("  -bind address: listen on the interface with this address (default: loopback only)");
+			System.exit(0);
+		}
+
+		ServerSocket server=null;
+		try
+		{
+			server=new ServerSocket(port,50,InetAddress.getByName(bind));
+		}
+		catch (IOException e)
+		{
+			System.out.println("Could not listen on "+(bind==null ? "loopback" : bind)+" port "+port+": "+e.getMessage());
+			System.exit(0);
+		}
+
+		while (true)
+		{
+			System.err.println("Waiting for a coordinator on "+server.getLocalSocketAddress()+"...");
+			try
+			{
+				Socket socket=server.accept();
+				System.err.println("Coordinator connected from "+socket.getRemoteSocketAddress());
+				serve(socket);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not accept a coordinator: "+e.getMessage());
+			}
+		}
+	}
+}
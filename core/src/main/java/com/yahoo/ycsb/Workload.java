@@ -18,6 +18,7 @@
 package com.yahoo.ycsb;
 
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -94,6 +95,47 @@ public abstract class Workload
        */
       public abstract boolean doTransaction(DB db, Object threadstate);
       
+      /**
+       * Do one insert operation without waiting for it to complete, so that a client thread can keep several
+       * operations in flight. The callback must be invoked exactly once for every call, when the insert has
+       * completed, with its return code; a non-zero code stops the client thread, just as doInsert() returning
+       * false would. The same thread safety rules as for doInsert() apply, and the callback may be invoked
+       * from any thread. The default implementation performs a blocking doInsert().
+       * 
+       * @return false if the workload knows it is done for this thread, true otherwise.
+       */
+      public boolean doInsertAsync(DB db, Object threadstate, DBCallback callback)
+      {
+	 boolean ret=doInsert(db,threadstate);
+	 callback.completed(0);
+	 return ret;
+      }
+
+      /**
+       * Do one transaction operation without waiting for it to complete, so that a client thread can keep several
+       * operations in flight. The callback must be invoked exactly once for every call, when the transaction has
+       * completed. The same thread safety rules as for doTransaction() apply, and the callback may be invoked
+       * from any thread. The default implementation performs a blocking doTransaction().
+       * 
+       * @return false if the workload knows it is done for this thread, true otherwise.
+       */
+      public boolean doTransactionAsync(DB db, Object threadstate, DBCallback callback)
+      {
+	 boolean ret=doTransaction(db,threadstate);
+	 callback.completed(0);
+	 return ret;
+      }
+      
+      /**
+       * Return the names under which the operations of a transaction run are measured, or null if they are not
+       * known in advance. Called after init(); Client uses it to reject latency objectives for operations the
+       * workload never issues. The default implementation returns null.
+       */
+      public Set<String> getTransactionOperations()
+      {
+	 return null;
+      }
+
       /**
        * Allows scheduling a request to stop the workload.
        */
@@ -25,6 +25,11 @@ import com.yahoo.ycsb.WorkloadException;
 
 /**
  * Generates a distribution by choosing from a discrete set of values.
+ *
+ * Values are chosen with Walker's alias method: the weights are spread over one slot per value, each slot holding
+ * a share of its own value and a share of at most one other, its alias. A choice picks a slot and one of its two
+ * values with a single random number, so it takes the same constant time however many values there are. The
+ * table is rebuilt as values are added, so values should be added before the generator is shared by threads.
  */
 public class DiscreteGenerator extends Generator
 {
@@ -43,6 +48,13 @@ public class DiscreteGenerator extends Generator
 	Vector<Pair> _values;
 	String _lastvalue;
 
+	/**
+	 * For each slot, the probability of choosing its own value rather than its alias, and the index of the alias.
+	 * Null if there are no values of positive weight.
+	 */
+	double[] _prob;
+	int[] _alias;
+
 	public DiscreteGenerator()
 	{
 		_values=new Vector<Pair>();
@@ -50,35 +62,97 @@ public class DiscreteGenerator extends Generator
 	}
 
 	/**
-	 * Generate the next string in the distribution.
+	 * Build the alias table for the values added so far, with Vose's method: each value's weight is scaled so
+	 * that the average is 1, and a slot of a value below 1 is filled up with part of the weight of a value
+	 * above 1, which becomes its alias, until every slot is full.
 	 */
-	public String nextString()
+	void buildTable()
 	{
+		int n=_values.size();
 		double sum=0;
-
 		for (Pair p : _values)
 		{
 			sum+=p._weight;
 		}
+		if (sum<=0)
+		{
+			_prob=null;
+			_alias=null;
+			return;
+		}
 
-		double val=Utils.random().nextDouble();
-
-		for (Pair p : _values)
+		double[] prob=new double[n];
+		int[] alias=new int[n];
+		double[] scaled=new double[n];
+		int[] small=new int[n];
+		int[] large=new int[n];
+		int smallcount=0;
+		int largecount=0;
+		for (int i=0; i<n; i++)
 		{
-			if (val<p._weight/sum)
+			scaled[i]=_values.get(i)._weight*n/sum;
+			if (scaled[i]<1)
 			{
-				return p._value;
+				small[smallcount++]=i;
 			}
-
-			val-=p._weight/sum;
+			else
+			{
+				large[largecount++]=i;
+			}
+		}
+		while ( (smallcount>0) && (largecount>0) )
+		{
+			int s=small[--smallcount];
+			int l=large[--largecount];
+			prob[s]=scaled[s];
+			alias[s]=l;
+			scaled[l]=(scaled[l]+scaled[s])-1;
+			if (scaled[l]<1)
+			{
+				small[smallcount++]=l;
+			}
+			else
+			{
+				large[largecount++]=l;
+			}
+		}
+		//whatever is left is full, but for rounding error
+		while (largecount>0)
+		{
+			prob[large[--largecount]]=1;
+		}
+		while (smallcount>0)
+		{
+			prob[small[--smallcount]]=1;
 		}
 
-		//should never get here.
-		System.out.println("oops. should not get here.");
+		_prob=prob;
+		_alias=alias;
+	}
 
-		System.exit(0);
+	/**
+	 * Choose the next value, returning its index in the order the values were added.
+	 * 
+	 * @throws IllegalStateException if no value has a positive weight.
+	 */
+	public int nextIndex()
+	{
+		double[] prob=_prob;
+		if (prob==null)
+		{
+			throw new IllegalStateException("DiscreteGenerator has no values of positive weight");
+		}
+		double u=Utils.random().nextDouble()*prob.length;
+		int slot=Math.min((int)u,prob.length-1);
+		return (u-slot<prob[slot]) ? slot : _alias[slot];
+	}
 
-		return null;
+	/**
+	 * Generate the next string in the distribution.
+	 */
+	public String nextString()
+	{
+		return _values.get(nextIndex())._value;
 	}
 
 	/**
@@ -109,6 +183,7 @@ public class DiscreteGenerator extends Generator
 	public void addValue(double weight, String value)
 	{
 		_values.add(new Pair(weight,value));
+		buildTable();
 	}
 
 }
@@ -18,35 +18,54 @@
 package com.yahoo.ycsb.generator;
 
 /**
- * A generator that is capable of generating ints as well as strings
+ * A generator that is capable of generating integers as well as strings. Values are 64 bit, so that generators
+ * can range over more than 2^31 items; generators that may produce such values override nextLong(), and their
+ * nextInt() truncates it.
  * 
  * @author cooperb
  *
  */
 public abstract class IntegerGenerator extends Generator 
 {
-	int lastint;
+	long lastlong;
 	
 	/**
-	 * Set the last value generated. IntegerGenerator subclasses must use this call
+	 * Set the last value generated. IntegerGenerator subclasses must use this call (or setLastLong())
 	 * to properly set the last string value, or the lastString() and lastInt() calls won't work.
 	 */
 	protected void setLastInt(int last)
 	{
-		lastint=last;
+		lastlong=last;
+	}
+
+	/**
+	 * Set the last value generated, as a long.
+	 */
+	protected void setLastLong(long last)
+	{
+		lastlong=last;
 	}
 	
 	/**
 	 * Return the next value as an int. When overriding this method, be sure to call setLastString() properly, or the lastString() call won't work.
 	 */
 	public abstract int nextInt();
+
+	/**
+	 * Return the next value as a long. By default this is the next int; generators whose values may not fit in an
+	 * int override it.
+	 */
+	public long nextLong()
+	{
+		return nextInt();
+	}
 	
 	/**
 	 * Generate the next string in the distribution.
 	 */
 	public String nextString()
 	{
-		return ""+nextInt();
+		return ""+nextLong();
 	}
 	
 	/**
@@ -57,7 +76,7 @@ public abstract class IntegerGenerator extends Generator
 	@Override
 	public String lastString()
 	{
-		return ""+lastInt();
+		return ""+lastLong();
 	}
 	
 	/**
@@ -66,7 +85,15 @@ public abstract class IntegerGenerator extends Generator
 	 */
 	public int lastInt()
 	{
-		return lastint;
+		return (int)lastLong();
+	}
+
+	/**
+	 * Return the previous value generated by the distribution, as a long.
+	 */
+	public long lastLong()
+	{
+		return lastlong;
 	}
 	/**
 	 * Return the expected value (mean) of the values this generator will return.
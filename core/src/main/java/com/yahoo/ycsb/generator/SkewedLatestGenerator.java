@@ -28,8 +28,8 @@ public class SkewedLatestGenerator extends IntegerGenerator
 	public SkewedLatestGenerator(CounterGenerator basis)
 	{
 		_basis=basis;
-		_zipfian=new ZipfianGenerator(_basis.lastInt());
-		nextInt();
+		_zipfian=new ZipfianGenerator(_basis.lastLong());
+		nextLong();
 	}
 
 	/**
@@ -37,10 +37,16 @@ public class SkewedLatestGenerator extends IntegerGenerator
 	 */
 	public int nextInt()
 	{
-		int max=_basis.lastInt();
-		int nextint=max-_zipfian.nextInt(max);
-		setLastInt(nextint);
-		return nextint;
+		return (int)nextLong();
+	}
+
+	@Override
+	public long nextLong()
+	{
+		long max=_basis.lastLong();
+		long next=max-_zipfian.nextLong(max);
+		setLastLong(next);
+		return next;
 	}
 
 	public static void main(String[] args)
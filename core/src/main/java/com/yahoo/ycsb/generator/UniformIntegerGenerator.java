@@ -26,7 +26,7 @@ import com.yahoo.ycsb.Utils;
  */
 public class UniformIntegerGenerator extends IntegerGenerator 
 {
-	int _lb,_ub,_interval;
+	long _lb,_ub,_interval;
 	
 	/**
 	 * Creates a generator that will return integers uniformly randomly from the interval [lb,ub] inclusive (that is, lb and ub are possible values)
@@ -34,7 +34,7 @@ public class UniformIntegerGenerator extends IntegerGenerator
 	 * @param lb the lower bound (inclusive) of generated values
 	 * @param ub the upper bound (inclusive) of generated values
 	 */
-	public UniformIntegerGenerator(int lb, int ub)
+	public UniformIntegerGenerator(long lb, long ub)
 	{
 		_lb=lb;
 		_ub=ub;
@@ -44,14 +44,20 @@ public class UniformIntegerGenerator extends IntegerGenerator
 	@Override
 	public int nextInt() 
 	{
-		int ret=Utils.random().nextInt(_interval)+_lb;
-		setLastInt(ret);
+		return (int)nextLong();
+	}
+
+	@Override
+	public long nextLong()
+	{
+		long ret=Utils.nextLong(Utils.random(),_interval)+_lb;
+		setLastLong(ret);
 		
 		return ret;
 	}
 
 	@Override
 	public double mean() {
-		return ((double)((long)(_lb + (long)_ub))) / 2.0;
+		return ((double)_lb + (double)_ub) / 2.0;
 	}
 }
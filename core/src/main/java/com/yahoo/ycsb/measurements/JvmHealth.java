@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * Samples the health of the client's own JVM, so that a latency spike caused by the client, such as by a
+ * garbage collection pause, can be told apart from one caused by the store. Each call to next() returns what
+ * happened since the last one: the time spent in garbage collection and at safepoints, the CPU time used and
+ * the bytes allocated. An interval is flagged as paused if the client was stopped for longer than
+ * "jvm.pausethreshold" milliseconds during it, so that its measurements can be discounted.
+ *
+ * Garbage collection times come from the standard management beans. CPU time, allocation and safepoint time
+ * come from HotSpot's extensions to them, and are reported as -1 on JVMs that do not have them.
+ */
+public class JvmHealth
+{
+	/**
+	 * The time, in milliseconds, the client may be paused in one interval before the interval is flagged.
+	 */
+	public static final String PAUSE_THRESHOLD_PROPERTY="jvm.pausethreshold";
+
+	public static final String PAUSE_THRESHOLD_PROPERTY_DEFAULT="100";
+
+	/**
+	 * What happened in the client's JVM over one interval.
+	 */
+	public static class Sample
+	{
+		/**
+		 * The length of the interval, in milliseconds.
+		 */
+		public long _length;
+
+		/**
+		 * The time spent in garbage collection, in milliseconds, and the number of collections.
+		 */
+		public long _gctime;
+		public long _gccount;
+
+		/**
+		 * The time the application was stopped at safepoints, in milliseconds, or -1 if unknown.
+		 */
+		public long _safepointtime;
+
+		/**
+		 * The CPU time used by the client, in nanoseconds, or -1 if unknown.
+		 */
+		public long _cputime;
+
+		/**
+		 * The number of bytes allocated by the client, or -1 if unknown.
+		 */
+		public long _allocated;
+
+		/**
+		 * True if the client was paused for longer than the threshold.
+		 */
+		public boolean _paused;
+
+		/**
+		 * Return the time the client was paused, in milliseconds: the time at safepoints, which includes
+		 * garbage collection pauses, if known, or else the time spent in garbage collection.
+		 */
+		public long getPauseTime()
+		{
+			return _safepointtime>=0 ? _safepointtime : _gctime;
+		}
+
+		/**
+		 * Return a one line summary, for status lines.
+		 */
+		public String toString()
+		{
+			DecimalFormat d=new DecimalFormat("#.##");
+			String ret="[JVM GC(ms)="+_gctime+" GCs="+_gccount;
+			if (_safepointtime>=0)
+			{
+				ret+=" Safepoints(ms)="+_safepointtime;
+			}
+			if ( (_cputime>=0) && (_length>0) )
+			{
+				ret+=" CPU(%)="+d.format(_cputime/10000.0/_length);
+			}
+			if ( (_allocated>=0) && (_length>0) )
+			{
+				ret+=" Alloc(MB/s)="+d.format(_allocated/1048576.0*1000/_length);
+			}
+			return ret+(_paused ? " CLIENT-PAUSED]" : "]");
+		}
+	}
+
+	long _threshold;
+
+	long _last;
+	long _lastgctime;
+	long _lastgccount;
+	long _lastsafepointtime;
+	long _lastcputime;
+
+	/**
+	 * The bytes allocated by each thread as of the last sample, by thread id, so that threads that have ended
+	 * since do not make the total go backwards.
+	 */
+	HashMap<Long,Long> _lastallocated=new HashMap<Long,Long>();
+
+	static Object hotspotruntime;
+	static Method safepointtime;
+	static Method cputime;
+	static Method allocatedbytes;
+
+	static
+	{
+		//HotSpot's extensions, found by reflection so that the client still runs on other JVMs
+		try
+		{
+			hotspotruntime=Class.forName("sun.management.ManagementFactoryHelper").getMethod("getHotspotRuntimeMBean").invoke(null);
+			safepointtime=Class.forName("sun.management.HotspotRuntimeMBean").getMethod("getTotalSafepointTime");
+			safepointtime.invoke(hotspotruntime);
+		}
+		catch (Throwable t)
+		{
+			safepointtime=null;
+		}
+		try
+		{
+			cputime=Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getProcessCpuTime");
+			cputime.invoke(ManagementFactory.getOperatingSystemMXBean());
+		}
+		catch (Throwable t)
+		{
+			cputime=null;
+		}
+		try
+		{
+			allocatedbytes=Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes",long[].class);
+			allocatedbytes.invoke(ManagementFactory.getThreadMXBean(),new long[0]);
+		}
+		catch (Throwable t)
+		{
+			allocatedbytes=null;
+		}
+	}
+
+	/**
+	 * Start sampling from now.
+	 */
+	public JvmHealth(Properties props)
+	{
+		_threshold=Long.parseLong(props.getProperty(PAUSE_THRESHOLD_PROPERTY,PAUSE_THRESHOLD_PROPERTY_DEFAULT));
+		next();
+	}
+
+	/**
+	 * Return what happened since the last sample.
+	 */
+	public synchronized Sample next()
+	{
+		Sample s=new Sample();
+		long now=System.currentTimeMillis();
+		s._length=now-_last;
+		_last=now;
+
+		long gctime=0;
+		long gccount=0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			gctime+=Math.max(gc.getCollectionTime(),0);
+			gccount+=Math.max(gc.getCollectionCount(),0);
+		}
+		s._gctime=gctime-_lastgctime;
+		s._gccount=gccount-_lastgccount;
+		_lastgctime=gctime;
+		_lastgccount=gccount;
+
+		s._safepointtime=-1;
+		if (safepointtime!=null)
+		{
+			try
+			{
+				long t=(Long)safepointtime.invoke(hotspotruntime);
+				s._safepointtime=t-_lastsafepointtime;
+				_lastsafepointtime=t;
+			}
+			catch (Exception e)
+			{
+			}
+		}
+
+		s._cputime=-1;
+		if (cputime!=null)
+		{
+			try
+			{
+				long t=(Long)cputime.invoke(ManagementFactory.getOperatingSystemMXBean());
+				s._cputime=t-_lastcputime;
+				_lastcputime=t;
+			}
+			catch (Exception e)
+			{
+			}
+		}
+
+		s._allocated=-1;
+		if (allocatedbytes!=null)
+		{
+			try
+			{
+				ThreadMXBean threads=ManagementFactory.getThreadMXBean();
+				long[] ids=threads.getAllThreadIds();
+				long[] bytes=(long[])allocatedbytes.invoke(threads,ids);
+				HashMap<Long,Long> allocated=new HashMap<Long,Long>();
+				long total=0;
+				for (int i=0; i<ids.length; i++)
+				{
+					if (bytes[i]<0)
+					{
+						continue;
+					}
+					Long last=_lastallocated.get(ids[i]);
+					total+=bytes[i]-(last==null ? 0 : last);
+					allocated.put(ids[i],bytes[i]);
+				}
+				_lastallocated=allocated;
+				s._allocated=total;
+			}
+			catch (Exception e)
+			{
+			}
+		}
+
+		s._paused=s.getPauseTime()>_threshold;
+		return s;
+	}
+}
@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a latency log written by LatencyLogThread, and prints the latency percentiles of each operation over
+ * any window of the run, or over each slice of that window, as comma separated values.
+ */
+public class LatencyLogReader
+{
+	/**
+	 * The histograms of one interval of the log.
+	 */
+	public static class Interval
+	{
+		/**
+		 * The start and end of the interval, in milliseconds since the epoch.
+		 */
+		public long _start;
+		public long _end;
+
+		/**
+		 * The health of the client's JVM over the interval, or null if the log does not record it.
+		 */
+		public JvmHealth.Sample _health;
+
+		public TreeMap<String,OneMeasurementHdrHistogram> _histograms=new TreeMap<String,OneMeasurementHdrHistogram>();
+	}
+
+	DataInputStream _in;
+	long _logstart;
+	long _interval;
+	int _version;
+	Inflater _inflater=new Inflater();
+
+	/**
+	 * Open a log and read its header.
+	 *
+	 * @throws IOException if the log cannot be read or is not a latency log.
+	 */
+	public LatencyLogReader(String file) throws IOException
+	{
+		_in=new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if (_in.readUTF().compareTo(LatencyLogThread.MAGIC)!=0)
+			{
+				throw new IOException(file+" is not a latency log");
+			}
+		}
+		catch (EOFException e)
+		{
+			throw new IOException(file+" is not a latency log");
+		}
+		_version=_in.readInt();
+		if ( (_version<1) || (_version>LatencyLogThread.VERSION) )
+		{
+			throw new IOException(file+" is a latency log of unknown version "+_version);
+		}
+		_logstart=_in.readLong();
+		_interval=_in.readLong();
+	}
+
+	/**
+	 * Return the time the log was started, in milliseconds since the epoch.
+	 */
+	public long getStart()
+	{
+		return _logstart;
+	}
+
+	/**
+	 * Return the length of the intervals of the log, in milliseconds.
+	 */
+	public long getInterval()
+	{
+		return _interval;
+	}
+
+	/**
+	 * Read the next interval of the log.
+	 *
+	 * @return The interval, or null if there are no more complete intervals, such as at the end of a log cut
+	 *         short by a crash.
+	 * @throws IOException if the log cannot be read or is malformed.
+	 */
+	public Interval next() throws IOException
+	{
+		byte[] compressed;
+		int length;
+		try
+		{
+			compressed=new byte[_in.readInt()];
+			length=_in.readInt();
+			_in.readFully(compressed);
+		}
+		catch (EOFException e)
+		{
+			return null;
+		}
+
+		byte[] raw=new byte[length];
+		_inflater.reset();
+		_inflater.setInput(compressed);
+		try
+		{
+			int n=0;
+			while (n<length)
+			{
+				int read=_inflater.inflate(raw,n,length-n);
+				if ( (read==0) && (_inflater.finished() || _inflater.needsInput()) )
+				{
+					throw new IOException("Truncated interval in latency log");
+				}
+				n+=read;
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Corrupt interval in latency log: "+e.getMessage());
+		}
+
+		DataInputStream in=new DataInputStream(new ByteArrayInputStream(raw));
+		Interval interval=new Interval();
+		interval._start=in.readLong();
+		interval._end=in.readLong();
+		if (_version>=2)
+		{
+			JvmHealth.Sample health=new JvmHealth.Sample();
+			health._length=interval._end-interval._start;
+			health._gctime=in.readLong();
+			health._safepointtime=in.readLong();
+			health._cputime=in.readLong();
+			health._allocated=in.readLong();
+			health._paused=in.readBoolean();
+			interval._health=health;
+		}
+		int count=in.readInt();
+		for (int i=0; i<count; i++)
+		{
+			String name=in.readUTF();
+			interval._histograms.put(name,OneMeasurementHdrHistogram.decode(name,in));
+		}
+		return interval;
+	}
+
+	public void close() throws IOException
+	{
+		_in.close();
+		_inflater.end();
+	}
+
+	public static void usageMessage()
+	{
+		System.out.println("Usage: java com.yahoo.ycsb.measurements.LatencyLogReader [options] logfile");
+		System.out.println("Options:");
+		System.out.println("  -start n: ignore the first n seconds of the log (default: 0)");
+		System.out.println("  -end n: ignore the log after the first n seconds (default: read it all)");
+		System.out.println("  -slice n: report each n seconds separately (default: report the whole window at once)");
+		System.out.println("  -op name: report only the given operation, e.g. READ (default: all operations)");
+		System.out.println("  -percentiles list: the comma separated percentiles to report (default: 50,90,99,99.9,99.99)");
+		System.out.println("  -skippaused: leave out the intervals in which the client's own JVM was paused");
+		System.out.println("Intervals of the log are counted in the slice in which they start. The time the client's own");
+		System.out.println("JVM was paused in each slice is reported, so that slices distorted by the client can be discounted.");
+	}
+
+	public static void main(String[] args)
+	{
+		double start=0;
+		double end=Double.MAX_VALUE;
+		double slice=0;
+		String op=null;
+		String percentiles="50,90,99,99.9,99.99";
+		boolean skippaused=false;
+
+		int argindex=0;
+		try
+		{
+			while ( (argindex<args.length-1) && args[argindex].startsWith("-") )
+			{
+				if (args[argindex].compareTo("-start")==0)
+				{
+					start=Double.parseDouble(args[++argindex]);
+				}
+				else if (args[argindex].compareTo("-end")==0)
+				{
+					end=Double.parseDouble(args[++argindex]);
+				}
+				else if (args[argindex].compareTo("-slice")==0)
+				{
+					slice=Double.parseDouble(args[++argindex]);
+				}
+				else if (args[argindex].compareTo("-op")==0)
+				{
+					op=args[++argindex];
+				}
+				else if (args[argindex].compareTo("-percentiles")==0)
+				{
+					percentiles=args[++argindex];
+				}
+				else if (args[argindex].compareTo("-skippaused")==0)
+				{
+					skippaused=true;
+				}
+				else
+				{
+					System.out.println("Unknown option "+args[argindex]);
+					usageMessage();
+					System.exit(0);
+				}
+				argindex++;
+			}
+		}
+		catch (Exception e)
+		{
+			usageMessage();
+			System.exit(0);
+		}
+		if (argindex!=args.length-1)
+		{
+			usageMessage();
+			System.exit(0);
+		}
+
+		String[] names=percentiles.split(",");
+		double[] pcts=new double[names.length];
+		for (int i=0; i<names.length; i++)
+		{
+			pcts[i]=Double.parseDouble(names[i].trim());
+		}
+
+		//the histograms of each slice by operation, by the start of the slice
+		TreeMap<Long,TreeMap<String,OneMeasurementHdrHistogram>> slices=new TreeMap<Long,TreeMap<String,OneMeasurementHdrHistogram>>();
+		//the time the client was paused in each slice, in milliseconds, by the start of the slice
+		TreeMap<Long,long[]> paused=new TreeMap<Long,long[]>();
+		long skipped=0;
+		try
+		{
+			LatencyLogReader reader=new LatencyLogReader(args[argindex]);
+			Interval interval;
+			while ((interval=reader.next())!=null)
+			{
+				double at=(interval._start-reader.getStart())/1000.0;
+				if ( (at<start) || (at>=end) )
+				{
+					continue;
+				}
+				if ( skippaused && (interval._health!=null) && interval._health._paused )
+				{
+					skipped++;
+					continue;
+				}
+				long slicestart=slice>0 ? (long)(Math.floor((at-start)/slice)*slice*1000+start*1000) : (long)(start*1000);
+				long[] pause=paused.get(slicestart);
+				if (pause==null)
+				{
+					pause=new long[1];
+					paused.put(slicestart,pause);
+				}
+				if (interval._health!=null)
+				{
+					pause[0]+=interval._health.getPauseTime();
+				}
+				TreeMap<String,OneMeasurementHdrHistogram> histograms=slices.get(slicestart);
+				if (histograms==null)
+				{
+					histograms=new TreeMap<String,OneMeasurementHdrHistogram>();
+					slices.put(slicestart,histograms);
+				}
+				for (OneMeasurementHdrHistogram h : interval._histograms.values())
+				{
+					if ( (op!=null) && (h.getName().compareTo(op)!=0) )
+					{
+						continue;
+					}
+					OneMeasurementHdrHistogram merged=histograms.get(h.getName());
+					if (merged==null)
+					{
+						histograms.put(h.getName(),h);
+					}
+					else
+					{
+						merged.merge(h);
+					}
+				}
+			}
+			reader.close();
+			if (skipped>0)
+			{
+				System.err.println("Left out "+skipped+" intervals in which the client was paused");
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+
+		DecimalFormat d=new DecimalFormat("#.##");
+		String header="Start(sec),Operation,Operations,AverageLatency(us),MinLatency(us)";
+		for (String name : names)
+		{
+			header+=","+name.trim()+"th(us)";
+		}
+		System.out.println(header+",MaxLatency(us),ClientPaused(ms)");
+		for (Map.Entry<Long,TreeMap<String,OneMeasurementHdrHistogram>> s : slices.entrySet())
+		{
+			for (OneMeasurementHdrHistogram h : s.getValue().values())
+			{
+				String line=d.format(s.getKey()/1000.0)+","+h.getName()+","+h.operations+","+
+					d.format(((double)h.totallatency)/((double)h.operations))+","+h.min;
+				for (double pct : pcts)
+				{
+					line+=","+h.getPercentileLatency(pct);
+				}
+				System.out.println(line+","+h.max+","+paused.get(s.getKey())[0]);
+			}
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+/**
+ * A thread that writes the latencies of every operation to a binary log file as the run goes on, as one high
+ * dynamic range histogram per operation per interval, so that nothing is lost if the client dies and the run
+ * can be sliced into any time window afterwards with LatencyLogReader.
+ *
+ * The log starts with a header: the string "YCSB-LATENCY-LOG", the version of the format, the start of the log
+ * and the length of each interval in milliseconds. Then comes one record per interval, each compressed on its
+ * own so that a log cut short by a crash can be read up to its last complete record. A record is its
+ * compressed length, its uncompressed length and the compressed bytes, which hold the start and end of the
+ * interval in milliseconds since the epoch, the health of the client's JVM over the interval (the time spent
+ * in garbage collection and at safepoints in milliseconds, the CPU time used in nanoseconds, the bytes
+ * allocated, and whether the client was paused, as sampled by JvmHealth), the number of operations measured,
+ * and for each operation its name followed by its histogram as written by OneMeasurementHdrHistogram.encode().
+ * Version 1 logs have no JVM health.
+ */
+public class LatencyLogThread extends Thread
+{
+	/**
+	 * The file to write the latency log to. There is no log unless it is given.
+	 */
+	public static final String LATENCY_LOG_PROPERTY="latencylog";
+
+	/**
+	 * The length of each interval of the latency log, in seconds.
+	 */
+	public static final String LATENCY_LOG_INTERVAL_PROPERTY="latencylog.interval";
+
+	public static final String LATENCY_LOG_INTERVAL_PROPERTY_DEFAULT="1";
+
+	static final String MAGIC="YCSB-LATENCY-LOG";
+
+	static final int VERSION=2;
+
+	DataOutputStream _out;
+	long _interval;
+	long _start;
+	Measurements _measurements;
+	int _series;
+	JvmHealth _health;
+	Deflater _deflater=new Deflater();
+
+	/**
+	 * Open the log and start recording intervals. Intervals are written once the thread is started, and until
+	 * it is interrupted.
+	 *
+	 * @throws IOException if the log cannot be created.
+	 */
+	public LatencyLogThread(Properties props) throws IOException
+	{
+		super("LatencyLogThread");
+		_interval=(long)(Double.parseDouble(props.getProperty(LATENCY_LOG_INTERVAL_PROPERTY,LATENCY_LOG_INTERVAL_PROPERTY_DEFAULT))*1000);
+		if (_interval<=0)
+		{
+			throw new IOException(LATENCY_LOG_INTERVAL_PROPERTY+" must be positive");
+		}
+		_out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(props.getProperty(LATENCY_LOG_PROPERTY))));
+		_out.writeUTF(MAGIC);
+		_out.writeInt(VERSION);
+		_start=System.currentTimeMillis();
+		_out.writeLong(_start);
+		_out.writeLong(_interval);
+		_out.flush();
+
+		_measurements=Measurements.getMeasurements();
+		_series=_measurements.addIntervals();
+		_health=new JvmHealth(props);
+	}
+
+	/**
+	 * Write an interval every interval until interrupted, then write the interval in progress and close the log.
+	 */
+	public void run()
+	{
+		long st=_start;
+		long next=st+_interval;
+		boolean done=false;
+
+		while (!done)
+		{
+			long now=System.currentTimeMillis();
+			if (now<next)
+			{
+				try
+				{
+					sleep(next-now);
+				}
+				catch (InterruptedException e)
+				{
+					done=true;
+				}
+			}
+
+			long en=System.currentTimeMillis();
+			try
+			{
+				writeInterval(st,en,_measurements.nextInterval(_series));
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not write the latency log, error: "+e.getMessage());
+				e.printStackTrace();
+				break;
+			}
+			st=en;
+			//skip any intervals missed, rather than writing a burst of empty ones
+			while (next<=en)
+			{
+				next+=_interval;
+			}
+		}
+
+		try
+		{
+			_out.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		_deflater.end();
+	}
+
+	/**
+	 * Close the log of a run abandoned before the thread was started.
+	 */
+	public void abandon()
+	{
+		try
+		{
+			_out.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		_deflater.end();
+	}
+
+	void writeInterval(long st, long en, HashMap<String,OneMeasurementHdrHistogram> interval) throws IOException
+	{
+		ByteArrayOutputStream raw=new ByteArrayOutputStream();
+		DataOutputStream rawout=new DataOutputStream(raw);
+		rawout.writeLong(st);
+		rawout.writeLong(en);
+		JvmHealth.Sample health=_health.next();
+		rawout.writeLong(health._gctime);
+		rawout.writeLong(health._safepointtime);
+		rawout.writeLong(health._cputime);
+		rawout.writeLong(health._allocated);
+		rawout.writeBoolean(health._paused);
+		int measured=0;
+		for (OneMeasurementHdrHistogram m : interval.values())
+		{
+			if (m.operations>0)
+			{
+				measured++;
+			}
+		}
+		rawout.writeInt(measured);
+		for (OneMeasurementHdrHistogram m : interval.values())
+		{
+			if (m.operations>0)
+			{
+				rawout.writeUTF(m.getName());
+				m.encode(rawout);
+			}
+		}
+		rawout.close();
+		byte[] bytes=raw.toByteArray();
+
+		_deflater.reset();
+		_deflater.setInput(bytes);
+		_deflater.finish();
+		ByteArrayOutputStream compressed=new ByteArrayOutputStream();
+		byte[] buf=new byte[4096];
+		while (!_deflater.finished())
+		{
+			int n=_deflater.deflate(buf);
+			compressed.write(buf,0,n);
+		}
+
+		_out.writeInt(compressed.size());
+		_out.writeInt(bytes.length);
+		compressed.writeTo(_out);
+		_out.flush();
+	}
+}
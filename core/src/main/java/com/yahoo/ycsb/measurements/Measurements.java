@@ -17,9 +17,19 @@
 
 package com.yahoo.ycsb.measurements;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
@@ -31,17 +41,88 @@ import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
  */
 public class Measurements
 {
+	/**
+	 * How latencies are kept: "histogram" in 1ms buckets, "hdrhistogram" in buckets that keep a fixed number
+	 * of significant digits from 1us up, or "timeseries" as a summary of each unit of time.
+	 */
 	private static final String MEASUREMENT_TYPE = "measurementtype";
 
 	private static final String MEASUREMENT_TYPE_DEFAULT = "histogram";
 
+	/**
+	 * Which latency to record for each operation: "op" records the service time, measured from the moment
+	 * the operation is actually issued; "intended" records the response time, measured from the moment the
+	 * operation was scheduled to start according to the target throughput, and so includes any time the
+	 * operation spent queued behind a slow predecessor; "both" records the two side by side, the latter
+	 * under the name "Intended-" followed by the operation name.
+	 */
+	public static final String MEASUREMENT_INTERVAL = "measurement.interval";
+
+	private static final String MEASUREMENT_INTERVAL_DEFAULT = "op";
+
+	/**
+	 * The number of stripes measurements are recorded into, by default the number of processors. Each client
+	 * thread records into one stripe, chosen round robin, so a thread only contends for the lock of its stripe
+	 * with the few other threads sharing it, rather than with every other thread. The stripes are merged when
+	 * the measurements are reported.
+	 */
+	public static final String MEASUREMENT_STRIPES = "measurement.stripes";
+
+	/**
+	 * If true, the bytes carried by each operation are counted under "Payload-" followed by the operation name.
+	 * Counting them walks the values of every record written or read, so it is off unless asked for, or unless
+	 * size classes are given.
+	 */
+	public static final String MEASUREMENT_PAYLOAD = "measurement.payload";
+
+	/**
+	 * The bytes carried by each operation are counted under this prefix followed by the operation name.
+	 */
+	public static final String PAYLOAD_PREFIX = "Payload-";
+
+	/**
+	 * A comma separated list of payload sizes, in bytes, dividing operations into size classes, e.g.
+	 * "4096,65536,1048576". If given, the service time of each operation that carries a payload is also
+	 * recorded under its size class, named for the operation and the size the class is below, such as
+	 * "READ-Payload<64KB", or for the largest class the size it is at or above, such as "READ-Payload>=1MB".
+	 */
+	public static final String MEASUREMENT_PAYLOAD_CLASSES = "measurement.payloadclasses";
+
+	/**
+	 * If true, the service time of each operation is also recorded corrected for coordinated omission, under
+	 * "Corrected-" followed by the operation name. A client thread that waits for each operation before issuing
+	 * the next fails to issue the operations it should have issued while a slow one was outstanding, and so
+	 * never measures their latencies. Given the interval between operations the target throughput implies for
+	 * each thread, every operation that takes longer than the interval is recorded along with the latencies
+	 * the operations that should have been issued meanwhile would have seen: its latency less one interval,
+	 * less two intervals, and so on. Nothing is corrected without a target throughput.
+	 */
+	public static final String MEASUREMENT_CORRECTION = "measurement.correction";
+
+	/**
+	 * The number of significant digits kept by the histograms of the series of intervals, such as those between
+	 * status reports, in the latency log or served as metrics (default: 2). Each stripe keeps two interval
+	 * histograms per operation, shared by all the series, and each series two per operation of its own. A
+	 * histogram takes about 25KB at 2 digits, 3KB at 1 and 176KB at 3, so a 64 processor client measuring 9
+	 * operations, such as READ, Intended-READ and Corrected-READ for three kinds of operation, keeps about
+	 * 30MB of interval histograms at the default.
+	 */
+	public static final String MEASUREMENT_INTERVAL_SIGNIFICANT_DIGITS = "measurement.intervalsignificantdigits";
+
+	private static final String MEASUREMENT_INTERVAL_SIGNIFICANT_DIGITS_DEFAULT = "2";
+
 	static Measurements singleton=null;
 	
 	static Properties measurementproperties=null;
 	
-	public static void setProperties(Properties props)
+	/**
+	 * Set the properties the singleton Measurements object is created with. Any measurements taken so far are
+	 * discarded, so that a process can make several runs, as a worker of a distributed run does.
+	 */
+	public synchronized static void setProperties(Properties props)
 	{
 		measurementproperties=props;
+		singleton=null;
 	}
 
       /**
@@ -56,67 +137,503 @@ public class Measurements
 		return singleton;
 	}
 
-	HashMap<String,OneMeasurement> data;
-	boolean histogram=true;
+	/**
+	 * The measurements taken by the client threads assigned to one stripe. Its lock guards both maps.
+	 */
+	static class Stripe
+	{
+		HashMap<String,OneMeasurement> data=new HashMap<String,OneMeasurement>();
+
+		/**
+		 * Measurements taken since the start of the current segment of the run, or null if no segment is in progress.
+		 */
+		HashMap<String,OneMeasurement> segment=null;
+
+		/**
+		 * The measurements taken since any series of intervals last ended an interval, kept in high dynamic range
+		 * histograms whatever the measurement type, or null if no series is being recorded, and a cleared set of
+		 * histograms swapped in for them then. The one set serves every series, so an operation updates a single
+		 * interval histogram however many series there are, and histograms are only created for operations not
+		 * seen before.
+		 */
+		HashMap<String,OneMeasurementHdrHistogram> interval=null;
+		HashMap<String,OneMeasurementHdrHistogram> spareinterval=null;
+	}
+
+	Stripe[] stripes;
+
+	/**
+	 * For each series of intervals, the measurements gathered from the stripes since the start of its current
+	 * interval, and the histograms of the interval last ended, which are reused for the next.
+	 */
+	Vector<HashMap<String,OneMeasurementHdrHistogram>> currentintervals=new Vector<HashMap<String,OneMeasurementHdrHistogram>>();
+	Vector<HashMap<String,OneMeasurementHdrHistogram>> endedintervals=new Vector<HashMap<String,OneMeasurementHdrHistogram>>();
+
+	AtomicInteger nextstripe=new AtomicInteger();
+
+	/**
+	 * The stripe each client thread records into.
+	 */
+	private ThreadLocal<Stripe> stripe=new ThreadLocal<Stripe>()
+	{
+		protected Stripe initialValue()
+		{
+			return stripes[(nextstripe.getAndIncrement()&Integer.MAX_VALUE)%stripes.length];
+		}
+	};
+
+	/**
+	 * True while a segment of the run is in progress.
+	 */
+	boolean insegment=false;
+
+	/**
+	 * The names response times are recorded under, by operation, so they are not built for every operation.
+	 */
+	ConcurrentHashMap<String,String> intendedNames=new ConcurrentHashMap<String,String>();
+
+	/**
+	 * True if latencies corrected for coordinated omission are recorded too, and the names they are recorded
+	 * under, by operation.
+	 */
+	boolean correction=false;
+	ConcurrentHashMap<String,String> correctedNames=new ConcurrentHashMap<String,String>();
+
+	/**
+	 * The payload sizes dividing the size classes, in increasing order, and for each operation the names the
+	 * latencies of each class are recorded under, so they are not built for every operation.
+	 */
+	long[] payloadClasses=new long[0];
+	ConcurrentHashMap<String,String[]> payloadClassNames=new ConcurrentHashMap<String,String[]>();
+
+	/**
+	 * True if the bytes carried by operations are counted, and the names they are counted under, by operation.
+	 */
+	boolean payload=false;
+	ConcurrentHashMap<String,String> payloadNames=new ConcurrentHashMap<String,String>();
+
+	/**
+	 * 0: histogram, 1: high dynamic range histogram, 2: time series.
+	 */
+	int measurementType=0;
+
+	/**
+	 * 0: measure service time only, 1: measure response time only, 2: measure both.
+	 */
+	int measurementInterval=0;
+
+	/**
+	 * The time each client thread intended its current operation to start, or 0 if it has no schedule, and
+	 * the interval it is expected to leave between operations, in nanoseconds, or 0 if it has no target.
+	 */
+	private ThreadLocal<long[]> intendedStartTime=new ThreadLocal<long[]>()
+	{
+		protected long[] initialValue()
+		{
+			return new long[2];
+		}
+	};
 
 	private Properties _props;
+
+	/**
+	 * The properties interval histograms are created with, which give them their own precision.
+	 */
+	private Properties _intervalprops;
 	
       /**
        * Create a new object with the specified properties.
        */
 	public Measurements(Properties props)
 	{
-		data=new HashMap<String,OneMeasurement>();
-		
 		_props=props;
+
+		int stripecount=Integer.parseInt(_props.getProperty(MEASUREMENT_STRIPES, Integer.toString(Runtime.getRuntime().availableProcessors())));
+		stripes=new Stripe[Math.max(stripecount,1)];
+		for (int i=0; i<stripes.length; i++)
+		{
+			stripes[i]=new Stripe();
+		}
 		
-		if (_props.getProperty(MEASUREMENT_TYPE, MEASUREMENT_TYPE_DEFAULT).compareTo("histogram")==0)
+		String type=_props.getProperty(MEASUREMENT_TYPE, MEASUREMENT_TYPE_DEFAULT);
+		if (type.compareTo("histogram")==0)
 		{
-			histogram=true;
+			measurementType=0;
+		}
+		else if (type.compareTo("hdrhistogram")==0)
+		{
+			measurementType=1;
+		}
+		else
+		{
+			measurementType=2;
+		}
+
+		String interval=_props.getProperty(MEASUREMENT_INTERVAL, MEASUREMENT_INTERVAL_DEFAULT);
+		if (interval.compareTo("op")==0)
+		{
+			measurementInterval=0;
+		}
+		else if (interval.compareTo("intended")==0)
+		{
+			measurementInterval=1;
+		}
+		else if (interval.compareTo("both")==0)
+		{
+			measurementInterval=2;
 		}
 		else
 		{
-			histogram=false;
+			System.err.println("Unknown "+MEASUREMENT_INTERVAL+" \""+interval+"\", measuring service time only");
+			measurementInterval=0;
+		}
+
+		correction=Boolean.parseBoolean(_props.getProperty(MEASUREMENT_CORRECTION, "false"));
+
+		String classes=_props.getProperty(MEASUREMENT_PAYLOAD_CLASSES, "").trim();
+		if (classes.length()>0)
+		{
+			String[] sizes=classes.split(",");
+			payloadClasses=new long[sizes.length];
+			for (int i=0; i<sizes.length; i++)
+			{
+				payloadClasses[i]=Long.parseLong(sizes[i].trim());
+			}
+			Arrays.sort(payloadClasses);
+		}
+		payload=Boolean.parseBoolean(_props.getProperty(MEASUREMENT_PAYLOAD, "false")) || (payloadClasses.length>0);
+
+		int digits=Integer.parseInt(_props.getProperty(MEASUREMENT_INTERVAL_SIGNIFICANT_DIGITS, MEASUREMENT_INTERVAL_SIGNIFICANT_DIGITS_DEFAULT));
+		if ( (digits<1) || (digits>5) )
+		{
+			throw new IllegalArgumentException(MEASUREMENT_INTERVAL_SIGNIFICANT_DIGITS+" must be between 1 and 5");
 		}
+		_intervalprops=new Properties(_props);
+		_intervalprops.setProperty(OneMeasurementHdrHistogram.SIGNIFICANT_DIGITS,Integer.toString(digits));
 	}
 	
+	/**
+	 * Create an object holding a fixed set of measurements, such as those of one segment of the run.
+	 */
+	Measurements(Properties props, HashMap<String,OneMeasurement> measurements)
+	{
+		this(props);
+		stripes=new Stripe[1];
+		stripes[0]=new Stripe();
+		stripes[0].data=measurements;
+	}
+
 	OneMeasurement constructOneMeasurement(String name)
 	{
-		if (histogram)
+		if (name.startsWith(PAYLOAD_PREFIX))
 		{
-			return new OneMeasurementHistogram(name,_props);
+			return new OneMeasurementPayload(name);
 		}
-		else
+		switch (measurementType)
 		{
+		case 0:
+			return new OneMeasurementHistogram(name,_props);
+		case 1:
+			return new OneMeasurementHdrHistogram(name,_props);
+		default:
 			return new OneMeasurementTimeSeries(name,_props);
 		}
 	}
 
+	/**
+	 * Set the time the calling thread intended to start its next operation. Operations measured by this thread
+	 * report their response time relative to it until it is changed or cleared with 0.
+	 */
+	public void setIntendedStartTimeNs(long time)
+	{
+		if (measurementInterval==0)
+		{
+			return;
+		}
+		intendedStartTime.get()[0]=time;
+	}
+
+	/**
+	 * Return the time the calling thread intended to start its current operation, or the current time if the
+	 * thread is not following a schedule.
+	 */
+	public long getIntendedStartTimeNs()
+	{
+		if (measurementInterval==0)
+		{
+			return 0;
+		}
+		long time=intendedStartTime.get()[0];
+		if (time==0)
+		{
+			return System.nanoTime();
+		}
+		return time;
+	}
+
+	/**
+	 * Set the interval the calling thread is expected to leave between the starts of its operations, given the
+	 * target throughput, for correcting for coordinated omission.
+	 */
+	public void setExpectedIntervalNs(long interval)
+	{
+		if (!correction)
+		{
+			return;
+		}
+		intendedStartTime.get()[1]=interval;
+	}
+
+	/**
+	 * Return the interval the calling thread is expected to leave between the starts of its operations, or 0
+	 * if there is none or latencies are not being corrected.
+	 */
+	public long getExpectedIntervalNs()
+	{
+		if (!correction)
+		{
+			return 0;
+		}
+		return intendedStartTime.get()[1];
+	}
+
       /**
        * Report a single value of a single metric. E.g. for read latency, operation="READ" and latency is the measured value.
+       * This is the service time of the operation; it is ignored if only response times are being measured.
+       */
+	public void measure(String operation, int latency)
+	{
+		if (measurementInterval==1)
+		{
+			return;
+		}
+		record(operation,latency);
+	}
+
+      /**
+       * Report the response time of a single operation, measured from its intended start time. It is recorded under
+       * "Intended-" followed by the operation name, or ignored if only service times are being measured.
        */
-	public synchronized void measure(String operation, int latency)
+	public void measureIntended(String operation, int latency)
 	{
-		if (!data.containsKey(operation))
+		if (measurementInterval==0)
 		{
-			synchronized(this)
+			return;
+		}
+		String name=intendedNames.get(operation);
+		if (name==null)
+		{
+			name="Intended-"+operation;
+			intendedNames.put(operation,name);
+		}
+		record(name,latency);
+	}
+
+      /**
+       * Report the bytes carried by a single operation, the bytes written for an insert or update and the bytes
+       * read for a read or scan. They are counted under "Payload-" followed by the operation name. If size
+       * classes are configured, the service time of the operation is also recorded under its size class.
+       * Nothing is recorded unless payloads are being measured.
+       */
+	public void measurePayload(String operation, long bytes, int latency)
+	{
+		if (!payload)
+		{
+			return;
+		}
+		String name=payloadNames.get(operation);
+		if (name==null)
+		{
+			name=PAYLOAD_PREFIX+operation;
+			payloadNames.put(operation,name);
+		}
+		Stripe s=stripe.get();
+		synchronized (s)
+		{
+			((OneMeasurementPayload)get(s.data,name)).measureBytes(bytes);
+			if (s.segment!=null)
 			{
-				if (!data.containsKey(operation))
+				((OneMeasurementPayload)get(s.segment,name)).measureBytes(bytes);
+			}
+		}
+
+		if (payloadClasses.length>0)
+		{
+			record(getPayloadClassName(operation,bytes),latency);
+		}
+	}
+
+	/**
+	 * Return true if the bytes carried by operations are counted, so that they need to be found.
+	 */
+	public boolean isMeasuringPayload()
+	{
+		return payload;
+	}
+
+	/**
+	 * Return the name the latencies of operations of the given kind and size are recorded under.
+	 */
+	String getPayloadClassName(String operation, long bytes)
+	{
+		String[] names=payloadClassNames.get(operation);
+		if (names==null)
+		{
+			names=new String[payloadClasses.length+1];
+			for (int i=0; i<payloadClasses.length; i++)
+			{
+				names[i]=operation+"-Payload<"+formatSize(payloadClasses[i]);
+			}
+			names[payloadClasses.length]=operation+"-Payload>="+formatSize(payloadClasses[payloadClasses.length-1]);
+			payloadClassNames.put(operation,names);
+		}
+		int c=0;
+		while ( (c<payloadClasses.length) && (bytes>=payloadClasses[c]) )
+		{
+			c++;
+		}
+		return names[c];
+	}
+
+	/**
+	 * Return a size in bytes in the largest binary unit that divides it, e.g. "64KB".
+	 */
+	static String formatSize(long bytes)
+	{
+		String[] units={"B","KB","MB","GB","TB"};
+		int u=0;
+		while ( (u<units.length-1) && (bytes>0) && (bytes%1024==0) )
+		{
+			bytes/=1024;
+			u++;
+		}
+		return bytes+units[u];
+	}
+
+      /**
+       * Report the service time of a single operation corrected for coordinated omission. It is recorded under
+       * "Corrected-" followed by the operation name, with the latencies of the operations that should have been
+       * issued while it was outstanding, or ignored if latencies are not being corrected.
+       * 
+       * @param expectedInterval The interval expected between the starts of operations, in nanoseconds, as
+       *        returned by getExpectedIntervalNs() on the thread that issued the operation. Nothing is recorded
+       *        if it is 0.
+       */
+	public void measureCorrected(String operation, int latency, long expectedInterval)
+	{
+		if ( (!correction) || (expectedInterval<=0) )
+		{
+			return;
+		}
+		String name=correctedNames.get(operation);
+		if (name==null)
+		{
+			name="Corrected-"+operation;
+			correctedNames.put(operation,name);
+		}
+		record(name,latency,Math.max(expectedInterval/1000,1));
+	}
+
+	void record(String operation, int latency)
+	{
+		record(operation,latency,0);
+	}
+
+	/**
+	 * Record a latency, and if an interval is given, the latencies of the operations that should have been
+	 * issued at that interval while it was outstanding.
+	 */
+	static void measure(OneMeasurement m, int latency, long expected)
+	{
+		m.measure(latency);
+		if (expected>0)
+		{
+			for (long missing=latency-expected; missing>=expected; missing-=expected)
+			{
+				m.measure((int)missing);
+			}
+		}
+	}
+
+	/**
+	 * Record a latency in the stripe of the calling thread. Under the lock of the stripe, which no other thread
+	 * holds unless there are more client threads than stripes, it updates at most three histograms: that of the
+	 * run as a whole, that of the segment in progress, if any, and the interval histogram shared by every series
+	 * of intervals, if any.
+	 */
+	void record(String operation, int latency, long expected)
+	{
+		Stripe s=stripe.get();
+		synchronized (s)
+		{
+			try
+			{
+				measure(get(s.data,operation),latency,expected);
+				if (s.segment!=null)
 				{
-					data.put(operation,constructOneMeasurement(operation));
+					measure(get(s.segment,operation),latency,expected);
+				}
+				if (s.interval!=null)
+				{
+					measure(getInterval(s.interval,operation),latency,expected);
 				}
 			}
+			catch (java.lang.ArrayIndexOutOfBoundsException e)
+			{
+				System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
+				e.printStackTrace();
+				e.printStackTrace(System.out);
+			}
 		}
-		try
+	}
+
+	OneMeasurementHdrHistogram getInterval(HashMap<String,OneMeasurementHdrHistogram> interval, String operation)
+	{
+		OneMeasurementHdrHistogram m=interval.get(operation);
+		if (m==null)
 		{
-			data.get(operation).measure(latency);
+			m=new OneMeasurementHdrHistogram(operation,_intervalprops);
+			interval.put(operation,m);
 		}
-		catch (java.lang.ArrayIndexOutOfBoundsException e)
+		return m;
+	}
+
+	OneMeasurement get(HashMap<String,OneMeasurement> measurements, String operation)
+	{
+		OneMeasurement m=measurements.get(operation);
+		if (m==null)
 		{
-			System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
-			e.printStackTrace();
-			e.printStackTrace(System.out);
+			m=constructOneMeasurement(operation);
+			measurements.put(operation,m);
 		}
+		return m;
+	}
+
+	/**
+	 * Merge the given measurements into those of the same name in the given map.
+	 */
+	void mergeInto(HashMap<String,OneMeasurement> measurements, Collection<OneMeasurement> others)
+	{
+		for (OneMeasurement m : others)
+		{
+			get(measurements,m.getName()).merge(m);
+		}
+	}
+
+	/**
+	 * Return the measurements of all the stripes merged together.
+	 */
+	HashMap<String,OneMeasurement> merged()
+	{
+		HashMap<String,OneMeasurement> ret=new HashMap<String,OneMeasurement>();
+		for (Stripe s : stripes)
+		{
+			synchronized (s)
+			{
+				mergeInto(ret,s.data.values());
+			}
+		}
+		return ret;
 	}
 
       /**
@@ -124,19 +641,316 @@ public class Measurements
        */
 	public void reportReturnCode(String operation, int code)
 	{
-		if (!data.containsKey(operation))
+		Stripe s=stripe.get();
+		synchronized (s)
+		{
+			get(s.data,operation).reportReturnCode(code);
+			if (s.segment!=null)
+			{
+				get(s.segment,operation).reportReturnCode(code);
+			}
+			if (s.interval!=null)
+			{
+				getInterval(s.interval,operation).reportReturnCode(code);
+			}
+		}
+	}
+
+	/**
+	 * Discard the measurements taken so far, such as those of a warmup period, so that only what follows is
+	 * reported. A segment in progress is not affected.
+	 * 
+	 * @return The measurements discarded.
+	 */
+	public synchronized Measurements reset()
+	{
+		HashMap<String,OneMeasurement> discarded=new HashMap<String,OneMeasurement>();
+		for (Stripe s : stripes)
 		{
-			synchronized(this)
+			HashMap<String,OneMeasurement> old;
+			synchronized (s)
 			{
-				if (!data.containsKey(operation))
+				old=s.data;
+				s.data=new HashMap<String,OneMeasurement>();
+			}
+			mergeInto(discarded,old.values());
+		}
+		return new Measurements(_props,discarded);
+	}
+
+	/**
+	 * Replace the segment of every stripe, and return the segments replaced merged together, or null if no
+	 * segment was in progress.
+	 */
+	Measurements swapSegments(boolean start)
+	{
+		HashMap<String,OneMeasurement> ended=insegment ? new HashMap<String,OneMeasurement>() : null;
+		for (Stripe s : stripes)
+		{
+			HashMap<String,OneMeasurement> old;
+			synchronized (s)
+			{
+				old=s.segment;
+				s.segment=start ? new HashMap<String,OneMeasurement>() : null;
+			}
+			if (old!=null)
+			{
+				mergeInto(ended,old.values());
+			}
+		}
+		insegment=start;
+		return ended==null ? null : new Measurements(_props,ended);
+	}
+
+	/**
+	 * Start a new segment of the run, such as one step of a throughput schedule. Until the segment is ended,
+	 * every measurement is also recorded in a separate set belonging to the segment. Measurements for the run
+	 * as a whole are not affected.
+	 * 
+	 * @return The measurements of the segment that was in progress, or null if there was none.
+	 */
+	public synchronized Measurements startSegment()
+	{
+		return swapSegments(true);
+	}
+
+	/**
+	 * Start recording a series of intervals of the run, such as those between status reports. From now on,
+	 * every latency and return code is also recorded in a high dynamic range histogram belonging to the current
+	 * interval of the series, so that the percentiles of each interval can be reported without disturbing the
+	 * measurements of the run as a whole. Each series is independent of any others being recorded. The
+	 * histograms keep the precision given by measurement.intervalsignificantdigits.
+	 * 
+	 * @return The number identifying the series, to be passed to nextInterval().
+	 */
+	public synchronized int addIntervals()
+	{
+		int series=currentintervals.size();
+		if (series==0)
+		{
+			for (Stripe s : stripes)
+			{
+				synchronized (s)
 				{
-					data.put(operation,constructOneMeasurement(operation));
+					s.interval=new HashMap<String,OneMeasurementHdrHistogram>();
+					s.spareinterval=new HashMap<String,OneMeasurementHdrHistogram>();
 				}
 			}
 		}
-		data.get(operation).reportReturnCode(code);
+		currentintervals.add(new HashMap<String,OneMeasurementHdrHistogram>());
+		endedintervals.add(new HashMap<String,OneMeasurementHdrHistogram>());
+		return series;
+	}
+
+	/**
+	 * End the current interval of a series and start the next. Only one thread may call this for a series.
+	 * 
+	 * The interval histograms of each stripe are swapped for cleared ones, and what they held is merged into the
+	 * current interval of every series, outside the lock of the stripe, so the client threads only wait for the
+	 * swap.
+	 * 
+	 * @param series The number of the series, as returned by addIntervals().
+	 * @return The histograms of the interval ended, by operation, which are reused by the next call for the
+	 *         same series.
+	 */
+	public synchronized HashMap<String,OneMeasurementHdrHistogram> nextInterval(int series)
+	{
+		for (Stripe s : stripes)
+		{
+			HashMap<String,OneMeasurementHdrHistogram> next;
+			ArrayList<String> missing=null;
+			synchronized (s)
+			{
+				next=s.spareinterval;
+				for (String name : s.interval.keySet())
+				{
+					if (!next.containsKey(name))
+					{
+						if (missing==null)
+						{
+							missing=new ArrayList<String>();
+						}
+						missing.add(name);
+					}
+				}
+			}
+			//create the histograms of operations new to the stripe here, so the client threads do not have to
+			if (missing!=null)
+			{
+				for (String name : missing)
+				{
+					next.put(name,new OneMeasurementHdrHistogram(name,_intervalprops));
+				}
+			}
+
+			HashMap<String,OneMeasurementHdrHistogram> old;
+			synchronized (s)
+			{
+				old=s.interval;
+				s.interval=next;
+				s.spareinterval=old;
+			}
+			//the client threads no longer record into the old histograms, so they are cleared for reuse here
+			for (OneMeasurementHdrHistogram m : old.values())
+			{
+				boolean measured=(m.operations>0) || !m.returncodes.isEmpty();
+				for (HashMap<String,OneMeasurementHdrHistogram> current : currentintervals)
+				{
+					OneMeasurementHdrHistogram c=getInterval(current,m.getName());
+					if (measured)
+					{
+						c.merge(m);
+					}
+				}
+				if (measured)
+				{
+					m.clear();
+				}
+			}
+		}
+
+		HashMap<String,OneMeasurementHdrHistogram> current=currentintervals.get(series);
+		HashMap<String,OneMeasurementHdrHistogram> ended=endedintervals.get(series);
+		for (OneMeasurementHdrHistogram c : current.values())
+		{
+			OneMeasurementHdrHistogram e=getInterval(ended,c.getName());
+			e.clear();
+			if ( (c.operations>0) || !c.returncodes.isEmpty() )
+			{
+				e.merge(c);
+				c.clear();
+			}
+		}
+		return ended;
+	}
+
+	/**
+	 * Return a one line summary of an interval, giving the number of operations, the average latency, the 50th,
+	 * 99th and 99.9th percentile latencies and the maximum latency of each operation.
+	 * 
+	 * @param interval The histograms of the interval, as returned by nextInterval().
+	 */
+	public static String getIntervalSummary(HashMap<String,OneMeasurementHdrHistogram> interval)
+	{
+		String ret="";
+		for (OneMeasurementHdrHistogram m : interval.values())
+		{
+			ret+=m.getPercentileSummary()+" ";
+		}
+		return ret;
+	}
+
+	/**
+	 * Write the histograms of an interval, as returned by nextInterval(), to a stream.
+	 */
+	public static void writeInterval(DataOutputStream out, HashMap<String,OneMeasurementHdrHistogram> interval) throws IOException
+	{
+		out.writeInt(interval.size());
+		for (OneMeasurementHdrHistogram m : interval.values())
+		{
+			m.write(out);
+		}
+	}
+
+	/**
+	 * Read the histograms of an interval written by writeInterval() and add them to those given, by operation.
+	 * Nothing is added if they cannot all be read.
+	 * 
+	 * @throws IOException if the histograms cannot be read or are malformed.
+	 * @throws IllegalArgumentException if the histograms read keep a different precision from those given.
+	 */
+	public static void mergeInterval(DataInputStream in, HashMap<String,OneMeasurementHdrHistogram> interval) throws IOException
+	{
+		int count=in.readInt();
+		ArrayList<OneMeasurementHdrHistogram> other=new ArrayList<OneMeasurementHdrHistogram>();
+		for (int i=0; i<count; i++)
+		{
+			OneMeasurement m=OneMeasurement.read(in);
+			if (!(m instanceof OneMeasurementHdrHistogram))
+			{
+				throw new IOException("Expected an interval histogram for "+m.getName());
+			}
+			OneMeasurementHdrHistogram mine=interval.get(m.getName());
+			if ( (mine!=null) && (mine._significantdigits!=((OneMeasurementHdrHistogram)m)._significantdigits) )
+			{
+				throw new IllegalArgumentException("Cannot merge an interval histogram of "+m.getName()+" kept to a different precision");
+			}
+			other.add((OneMeasurementHdrHistogram)m);
+		}
+		for (OneMeasurementHdrHistogram m : other)
+		{
+			OneMeasurementHdrHistogram mine=interval.get(m.getName());
+			if (mine==null)
+			{
+				interval.put(m.getName(),m);
+			}
+			else
+			{
+				mine.merge(m);
+			}
+		}
+	}
+
+	/**
+	 * End the current segment of the run.
+	 * 
+	 * @return The measurements of the segment, or null if there was none in progress.
+	 */
+	public synchronized Measurements endSegment()
+	{
+		return swapSegments(false);
 	}
 	
+	/**
+	 * Return the latency below which the given percentage of the measurements of an operation fall.
+	 * 
+	 * @param operation The operation, e.g. "READ".
+	 * @param percentile The percentage, e.g. 99.
+	 * @return The latency in microseconds, or -1 if the operation has not been measured.
+	 */
+	public long getPercentileLatency(String operation, double percentile)
+	{
+		OneMeasurement m=merged().get(operation);
+		if (m==null)
+		{
+			return -1;
+		}
+		return m.getPercentileLatency(percentile);
+	}
+
+	/**
+	 * Write the measurements to a stream, from which they can be merged into another Measurements object.
+	 */
+	public void write(DataOutputStream out) throws IOException
+	{
+		HashMap<String,OneMeasurement> m=merged();
+		out.writeInt(m.size());
+		for (OneMeasurement one : m.values())
+		{
+			one.write(out);
+		}
+	}
+
+	/**
+	 * Read measurements written by write() and add them to these. Nothing is added if they cannot all be read.
+	 * 
+	 * @throws IOException if the measurements cannot be read or are malformed.
+	 * @throws IllegalArgumentException if the measurements read were taken differently from these.
+	 */
+	public void merge(DataInputStream in) throws IOException
+	{
+		int count=in.readInt();
+		ArrayList<OneMeasurement> other=new ArrayList<OneMeasurement>();
+		for (int i=0; i<count; i++)
+		{
+			other.add(OneMeasurement.read(in));
+		}
+		synchronized (stripes[0])
+		{
+			mergeInto(stripes[0].data,other);
+		}
+	}
+
   /**
    * Export the current measurements to a suitable format.
    * 
@@ -145,19 +959,67 @@ public class Measurements
    */
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException
   {
-    for (OneMeasurement measurement : data.values())
+    //list the measurements of each operation together, the operation itself first, e.g. READ, Corrected-READ, Intended-READ
+    TreeMap<String,OneMeasurement> sorted=new TreeMap<String,OneMeasurement>(new Comparator<String>()
+    {
+      public int compare(String a, String b)
+      {
+        String op=operationOf(a);
+        int c=op.compareTo(operationOf(b));
+        if (c!=0)
+        {
+          return c;
+        }
+        if (a.equals(op)!=b.equals(op))
+        {
+          return a.equals(op) ? -1 : 1;
+        }
+        return a.compareTo(b);
+      }
+    });
+    sorted.putAll(merged());
+    for (OneMeasurement measurement : sorted.values())
     {
       measurement.exportMeasurements(exporter);
     }
   }
+
+	/**
+	 * Return the operation a measurement is of, given its name, e.g. READ for Intended-READ.
+	 */
+	static String operationOf(String name)
+	{
+		for (String prefix : new String[]{"Corrected-","Intended-",PAYLOAD_PREFIX})
+		{
+			if (name.startsWith(prefix))
+			{
+				return name.substring(prefix.length());
+			}
+		}
+		return name;
+	}
 	
       /**
        * Return a one line summary of the measurements.
        */
 	public String getSummary()
 	{
+		//merge the windows of the stripes, which are reset as they are read
+		HashMap<String,OneMeasurement> window=new HashMap<String,OneMeasurement>();
+		for (Stripe s : stripes)
+		{
+			synchronized (s)
+			{
+				for (OneMeasurement m : s.data.values())
+				{
+					get(window,m.getName()).merge(m);
+					m.getSummary();
+				}
+			}
+		}
+
 		String ret="";
-		for (OneMeasurement m : data.values())
+		for (OneMeasurement m : window.values())
 		{
 			ret+=m.getSummary()+" ";
 		}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metrics of a running client over HTTP in the OpenMetrics text format, so that it can be scraped
+ * by monitoring systems like any other service. The metrics are served at /metrics on the port given by the
+ * "metrics.port" property, and are brought up to date every "metrics.interval" seconds. They are:
+ * <UL>
+ * <LI><b>ycsb_operations_total</b>: the number of operations done, by operation
+ * <LI><b>ycsb_returns_total</b>: the number of operations done, by operation and return code
+ * <LI><b>ycsb_latency_seconds</b>: the latency quantiles of each operation over the last interval, along with
+ * the total latency and number of operations over the whole run
+ * <LI><b>ycsb_throughput_operations_per_second</b>: the throughput of each operation over the last interval
+ * </UL>
+ *
+ * The metrics are taken from their own series of intervals of the measurements, so serving them neither
+ * resets nor holds up the measurements of the run.
+ */
+public class MetricsServer extends Thread
+{
+	/**
+	 * The port to serve metrics on. There is no metrics server unless it is given.
+	 */
+	public static final String METRICS_PORT_PROPERTY="metrics.port";
+
+	/**
+	 * How often the metrics are brought up to date, in seconds.
+	 */
+	public static final String METRICS_INTERVAL_PROPERTY="metrics.interval";
+
+	public static final String METRICS_INTERVAL_PROPERTY_DEFAULT="10";
+
+	static final String CONTENT_TYPE="application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	static final double[] QUANTILES={0.5,0.9,0.99,0.999,0.9999};
+
+	HttpServer _server;
+	long _interval;
+	Measurements _measurements;
+	int _series;
+
+	/**
+	 * The totals over the run, by operation: the number of operations and their total latency in microseconds.
+	 */
+	TreeMap<String,long[]> _totals=new TreeMap<String,long[]>();
+
+	/**
+	 * The number of operations over the run by return code, by operation.
+	 */
+	TreeMap<String,TreeMap<Integer,long[]>> _returns=new TreeMap<String,TreeMap<Integer,long[]>>();
+
+	/**
+	 * The page served, rebuilt every interval.
+	 */
+	volatile byte[] _page;
+
+	/**
+	 * Open the port and start recording intervals. Metrics are served once the thread is started, and until it
+	 * is interrupted.
+	 *
+	 * @throws IOException if the port cannot be opened.
+	 */
+	public MetricsServer(Properties props) throws IOException
+	{
+		super("MetricsServer");
+		_interval=(long)(Double.parseDouble(props.getProperty(METRICS_INTERVAL_PROPERTY,METRICS_INTERVAL_PROPERTY_DEFAULT))*1000);
+		if (_interval<=0)
+		{
+			throw new IOException(METRICS_INTERVAL_PROPERTY+" must be positive");
+		}
+		_measurements=Measurements.getMeasurements();
+		_page=format(new HashMap<String,OneMeasurementHdrHistogram>(),_interval);
+
+		_server=HttpServer.create(new InetSocketAddress(Integer.parseInt(props.getProperty(METRICS_PORT_PROPERTY))),0);
+		_server.createContext("/metrics",new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				byte[] page=_page;
+				exchange.getResponseHeaders().set("Content-Type",CONTENT_TYPE);
+				exchange.sendResponseHeaders(200,page.length);
+				OutputStream out=exchange.getResponseBody();
+				out.write(page);
+				out.close();
+			}
+		});
+
+		_series=_measurements.addIntervals();
+	}
+
+	/**
+	 * Serve metrics, bringing them up to date every interval, until interrupted.
+	 */
+	public void run()
+	{
+		_server.start();
+		long st=System.currentTimeMillis();
+		boolean done=false;
+		while (!done)
+		{
+			try
+			{
+				sleep(_interval);
+			}
+			catch (InterruptedException e)
+			{
+				done=true;
+			}
+			long en=System.currentTimeMillis();
+			_page=format(_measurements.nextInterval(_series),en-st);
+			st=en;
+		}
+		_server.stop(0);
+	}
+
+	/**
+	 * Stop serving metrics for a run abandoned before the thread was started.
+	 */
+	public void abandon()
+	{
+		_server.stop(0);
+	}
+
+	/**
+	 * Add an interval to the totals, and format the metrics.
+	 *
+	 * @param interval The histograms of the interval, by operation.
+	 * @param length The length of the interval, in milliseconds.
+	 */
+	byte[] format(HashMap<String,OneMeasurementHdrHistogram> interval, long length)
+	{
+		for (OneMeasurementHdrHistogram h : interval.values())
+		{
+			long[] totals=_totals.get(h.getName());
+			if (totals==null)
+			{
+				totals=new long[2];
+				_totals.put(h.getName(),totals);
+			}
+			totals[0]+=h.operations;
+			totals[1]+=h.totallatency;
+
+			TreeMap<Integer,long[]> returns=_returns.get(h.getName());
+			if (returns==null)
+			{
+				returns=new TreeMap<Integer,long[]>();
+				_returns.put(h.getName(),returns);
+			}
+			for (Map.Entry<Integer,long[]> r : h.returncodes.entrySet())
+			{
+				long[] count=returns.get(r.getKey());
+				if (count==null)
+				{
+					count=new long[1];
+					returns.put(r.getKey(),count);
+				}
+				count[0]+=r.getValue()[0];
+			}
+		}
+
+		StringBuilder page=new StringBuilder();
+		page.append("# TYPE ycsb_operations counter\n");
+		page.append("# HELP ycsb_operations The number of operations done.\n");
+		for (Map.Entry<String,long[]> t : _totals.entrySet())
+		{
+			page.append("ycsb_operations_total{operation=\"").append(t.getKey()).append("\"} ").append(t.getValue()[0]).append('\n');
+		}
+
+		page.append("# TYPE ycsb_returns counter\n");
+		page.append("# HELP ycsb_returns The number of operations done, by return code.\n");
+		for (Map.Entry<String,TreeMap<Integer,long[]>> op : _returns.entrySet())
+		{
+			for (Map.Entry<Integer,long[]> r : op.getValue().entrySet())
+			{
+				page.append("ycsb_returns_total{operation=\"").append(op.getKey()).append("\",return=\"").append(r.getKey()).append("\"} ").append(r.getValue()[0]).append('\n');
+			}
+		}
+
+		page.append("# TYPE ycsb_latency_seconds summary\n");
+		page.append("# UNIT ycsb_latency_seconds seconds\n");
+		page.append("# HELP ycsb_latency_seconds The latency of operations; the quantiles are over the last interval.\n");
+		for (Map.Entry<String,long[]> t : _totals.entrySet())
+		{
+			OneMeasurementHdrHistogram h=interval.get(t.getKey());
+			if ( (h!=null) && (h.operations>0) )
+			{
+				for (double q : QUANTILES)
+				{
+					page.append("ycsb_latency_seconds{operation=\"").append(t.getKey()).append("\",quantile=\"").append(q).append("\"} ").append(h.getPercentileLatency(q*100)/1e6).append('\n');
+				}
+			}
+			page.append("ycsb_latency_seconds_sum{operation=\"").append(t.getKey()).append("\"} ").append(t.getValue()[1]/1e6).append('\n');
+			page.append("ycsb_latency_seconds_count{operation=\"").append(t.getKey()).append("\"} ").append(t.getValue()[0]).append('\n');
+		}
+
+		page.append("# TYPE ycsb_throughput_operations_per_second gauge\n");
+		page.append("# UNIT ycsb_throughput_operations_per_second operations_per_second\n");
+		page.append("# HELP ycsb_throughput_operations_per_second The throughput over the last interval.\n");
+		for (String op : _totals.keySet())
+		{
+			OneMeasurementHdrHistogram h=interval.get(op);
+			long ops=h!=null ? h.operations : 0;
+			page.append("ycsb_throughput_operations_per_second{operation=\"").append(op).append("\"} ").append(1000.0*ops/length).append('\n');
+		}
+		page.append("# EOF\n");
+
+		try
+		{
+			return page.toString().getBytes("UTF-8");
+		}
+		catch (java.io.UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -17,15 +17,29 @@
 
 package com.yahoo.ycsb.measurements;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
 /**
- * A single measured metric (such as READ LATENCY)
+ * A single measured metric (such as READ LATENCY). Measurements can be written to a stream and read back, so
+ * that they can be sent from the workers of a distributed run to the coordinator, which merges them. The format
+ * is plain data, read only into the kinds of measurement known to read(), rather than Java serialization, so a
+ * peer cannot make the reader construct objects of its choosing.
  */
 public abstract class OneMeasurement {
 
+	/**
+	 * The tags that identify each kind of measurement in a stream.
+	 */
+	static final byte HISTOGRAM=1;
+	static final byte HDRHISTOGRAM=2;
+	static final byte TIMESERIES=3;
+	static final byte PAYLOAD=4;
+
 	String _name;
 	
 	public String getName() {
@@ -45,6 +59,93 @@ public abstract class OneMeasurement {
 
 	public abstract String getSummary();
 
+	/**
+	 * Add the measurements of another metric of the same kind, such as the same metric taken by another client.
+	 * 
+	 * @throws IllegalArgumentException if the other metric is of a different kind or was taken differently.
+	 */
+	public abstract void merge(OneMeasurement other);
+
+	/**
+	 * Return the latency below which the given percentage of the measurements fall, to the resolution of
+	 * this kind of measurement.
+	 * 
+	 * @param percentile The percentage, e.g. 99.
+	 * @return The latency in microseconds, or -1 if there are no measurements or this kind of measurement does
+	 *         not keep a distribution of latencies.
+	 */
+	public long getPercentileLatency(double percentile)
+	{
+		return -1;
+	}
+
+	/**
+	 * Write everything measured to a stream, preceded by the tag of this kind of measurement and its name, to be
+	 * read back by read().
+	 */
+	public abstract void write(DataOutputStream out) throws IOException;
+
+	/**
+	 * Read a measurement written by write().
+	 * 
+	 * @throws IOException if the stream does not hold a measurement of a known kind, or it is malformed.
+	 */
+	public static OneMeasurement read(DataInputStream in) throws IOException
+	{
+		byte tag=in.readByte();
+		String name=in.readUTF();
+		switch (tag)
+		{
+		case HISTOGRAM:
+			return OneMeasurementHistogram.read(name,in);
+		case HDRHISTOGRAM:
+			return OneMeasurementHdrHistogram.read(name,in);
+		case TIMESERIES:
+			return OneMeasurementTimeSeries.read(name,in);
+		case PAYLOAD:
+			return OneMeasurementPayload.read(name,in);
+		default:
+			throw new IOException("Unknown kind of measurement "+tag+" for "+name);
+		}
+	}
+
+	static void writeReturnCodes(DataOutputStream out, HashMap<Integer,long[]> returncodes) throws IOException
+	{
+		out.writeInt(returncodes.size());
+		for (Integer I : returncodes.keySet())
+		{
+			out.writeInt(I);
+			out.writeLong(returncodes.get(I)[0]);
+		}
+	}
+
+	static void readReturnCodes(DataInputStream in, HashMap<Integer,long[]> returncodes) throws IOException
+	{
+		int n=in.readInt();
+		for (int i=0; i<n; i++)
+		{
+			int code=in.readInt();
+			returncodes.put(code,new long[] {in.readLong()});
+		}
+	}
+
+	/**
+	 * Write a count or latency to an exporter as an int, as exporters have always been given them, or as a double
+	 * if it is too large for an int. MeasurementsExporter has no method for longs, so that exporters written
+	 * before counts became 64 bit still compile and load.
+	 */
+	static void write(MeasurementsExporter exporter, String metric, String measurement, long l) throws IOException
+	{
+		if ( (l>=Integer.MIN_VALUE) && (l<=Integer.MAX_VALUE) )
+		{
+			exporter.write(metric,measurement,(int)l);
+		}
+		else
+		{
+			exporter.write(metric,measurement,(double)l);
+		}
+	}
+
   /**
    * Export the current measurements to a suitable format.
    * 
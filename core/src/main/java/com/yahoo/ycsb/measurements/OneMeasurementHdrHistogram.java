@@ -0,0 +1,438 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Take measurements and maintain a high dynamic range histogram of a given metric, such as READ LATENCY.
+ *
+ * Unlike OneMeasurementHistogram, whose buckets are all 1ms wide, the buckets of this histogram grow with the
+ * latency, so that every latency from 1us up to the longest that can be measured (about 35 minutes) is kept to
+ * the number of significant digits given by the "hdrhistogram.significantdigits" property. Latencies are
+ * grouped into ranges each twice as wide as the last, and each range is divided into the same number of
+ * linear buckets, as in Gil Tene's HdrHistogram.
+ *
+ * The export lists the count of every non-empty bucket under the lowest latency it holds, in microseconds.
+ * Histograms taken with the same number of significant digits have the same buckets, so exports of several
+ * runs can be merged by adding the counts.
+ */
+public class OneMeasurementHdrHistogram extends OneMeasurement
+{
+	public static final String SIGNIFICANT_DIGITS="hdrhistogram.significantdigits";
+	public static final String SIGNIFICANT_DIGITS_DEFAULT="3";
+
+	/**
+	 * The percentiles exported, along with the name each is exported under.
+	 */
+	static final double[] PERCENTILES={50,90,99,99.9,99.99};
+	static final String[] PERCENTILE_NAMES={"50th","90th","99th","99.9th","99.99th"};
+
+	int _significantdigits;
+
+	/**
+	 * log2 of half the number of buckets in each range.
+	 */
+	int subbuckethalfcountmagnitude;
+	int subbuckethalfcount;
+	long subbucketmask;
+	long[] counts;
+
+	long operations;
+	long totallatency;
+
+	//keep a windowed version of these stats for printing status
+	long windowoperations;
+	long windowtotallatency;
+
+	int min;
+	int max;
+	HashMap<Integer,long[]> returncodes;
+
+	public OneMeasurementHdrHistogram(String name, Properties props)
+	{
+		super(name);
+		_significantdigits=Integer.parseInt(props.getProperty(SIGNIFICANT_DIGITS,SIGNIFICANT_DIGITS_DEFAULT));
+		if ( (_significantdigits<1) || (_significantdigits>5) )
+		{
+			throw new IllegalArgumentException(SIGNIFICANT_DIGITS+" must be between 1 and 5");
+		}
+
+		//enough buckets in each range to tell apart values that differ in the last significant digit
+		long largestsinglebucket=2*(long)Math.pow(10,_significantdigits);
+		int subbucketcountmagnitude=(int)Math.ceil(Math.log(largestsinglebucket)/Math.log(2));
+		subbuckethalfcountmagnitude=subbucketcountmagnitude-1;
+		subbuckethalfcount=1<<subbuckethalfcountmagnitude;
+		subbucketmask=(1L<<subbucketcountmagnitude)-1;
+
+		//enough ranges to hold the largest latency that can be measured
+		counts=new long[countsIndex(Integer.MAX_VALUE)+1];
+
+		operations=0;
+		totallatency=0;
+		windowoperations=0;
+		windowtotallatency=0;
+		min=-1;
+		max=-1;
+		returncodes=new HashMap<Integer,long[]>();
+	}
+
+	/**
+	 * Discard every latency and return code measured, so that the histogram can be reused.
+	 */
+	synchronized void clear()
+	{
+		if (operations>0)
+		{
+			Arrays.fill(counts,0);
+		}
+		operations=0;
+		totallatency=0;
+		windowoperations=0;
+		windowtotallatency=0;
+		min=-1;
+		max=-1;
+		returncodes.clear();
+	}
+
+	/**
+	 * Return the index of the bucket holding the given latency.
+	 */
+	int countsIndex(long value)
+	{
+		int bucketindex=(63-subbuckethalfcountmagnitude)-Long.numberOfLeadingZeros(value|subbucketmask);
+		int subbucketindex=(int)(value>>>bucketindex);
+		return ((bucketindex+1)<<subbuckethalfcountmagnitude)+(subbucketindex-subbuckethalfcount);
+	}
+
+	/**
+	 * Return the lowest latency held by the bucket with the given index.
+	 */
+	long lowestValue(int index)
+	{
+		int bucketindex=(index>>subbuckethalfcountmagnitude)-1;
+		int subbucketindex=(index&(subbuckethalfcount-1))+subbuckethalfcount;
+		if (bucketindex<0)
+		{
+			subbucketindex-=subbuckethalfcount;
+			bucketindex=0;
+		}
+		return ((long)subbucketindex)<<bucketindex;
+	}
+
+	/**
+	 * Return the highest latency held by the bucket with the given index.
+	 */
+	long highestValue(int index)
+	{
+		int bucketindex=Math.max((index>>subbuckethalfcountmagnitude)-1,0);
+		return lowestValue(index)+(1L<<bucketindex)-1;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.yahoo.ycsb.OneMeasurement#reportReturnCode(int)
+	 */
+	public synchronized void reportReturnCode(int code)
+	{
+		Integer Icode=code;
+		if (!returncodes.containsKey(Icode))
+		{
+			returncodes.put(Icode,new long[1]);
+		}
+		returncodes.get(Icode)[0]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.yahoo.ycsb.OneMeasurement#measure(int)
+	 */
+	public synchronized void measure(int latency)
+	{
+		//a clock that steps backwards can give a negative latency
+		if (latency<0)
+		{
+			latency=0;
+		}
+		counts[countsIndex(latency)]++;
+		operations++;
+		totallatency+=latency;
+		windowoperations++;
+		windowtotallatency+=latency;
+
+		if ( (min<0) || (latency<min) )
+		{
+			min=latency;
+		}
+
+		if ( (max<0) || (latency>max) )
+		{
+			max=latency;
+		}
+	}
+
+	/**
+	 * Return the highest latency of the bucket holding the given percentile, which is within the precision of
+	 * the histogram of the exact value, and never more than the maximum latency measured.
+	 */
+	@Override
+	public synchronized long getPercentileLatency(double percentile)
+	{
+		if (operations==0)
+		{
+			return -1;
+		}
+		long target=Math.max((long)Math.ceil(percentile/100.0*operations),1);
+		long opcounter=0;
+		for (int i=0; i<counts.length; i++)
+		{
+			opcounter+=counts[i];
+			if (opcounter>=target)
+			{
+				return Math.min(highestValue(i),max);
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public synchronized void merge(OneMeasurement other)
+	{
+		if ( !(other instanceof OneMeasurementHdrHistogram) || (((OneMeasurementHdrHistogram)other)._significantdigits!=_significantdigits) )
+		{
+			throw new IllegalArgumentException("Cannot merge "+other.getClass().getSimpleName()+" "+other.getName()+" into a histogram of "+_significantdigits+" significant digits");
+		}
+		OneMeasurementHdrHistogram h=(OneMeasurementHdrHistogram)other;
+		synchronized (h)
+		{
+			for (int i=0; i<counts.length; i++)
+			{
+				counts[i]+=h.counts[i];
+			}
+			operations+=h.operations;
+			totallatency+=h.totallatency;
+			windowoperations+=h.windowoperations;
+			windowtotallatency+=h.windowtotallatency;
+
+			if ( (h.min>=0) && ((min<0) || (h.min<min)) )
+			{
+				min=h.min;
+			}
+			if (h.max>max)
+			{
+				max=h.max;
+			}
+
+			for (Integer I : h.returncodes.keySet())
+			{
+				if (!returncodes.containsKey(I))
+				{
+					returncodes.put(I,new long[1]);
+				}
+				returncodes.get(I)[0]+=h.returncodes.get(I)[0];
+			}
+		}
+	}
+
+	/**
+	 * Write the histogram compactly, for LatencyLogThread: its precision, its totals, and the counts of its
+	 * non-empty buckets, each preceded by the number of empty buckets before it, as variable length integers.
+	 * Its return codes are not written.
+	 */
+	public synchronized void encode(DataOutputStream out) throws IOException
+	{
+		out.writeByte(_significantdigits);
+		writeVarLong(out,operations);
+		writeVarLong(out,totallatency);
+		writeVarLong(out,min+1);
+		writeVarLong(out,max+1);
+
+		int buckets=0;
+		for (int i=0; i<counts.length; i++)
+		{
+			if (counts[i]>0)
+			{
+				buckets++;
+			}
+		}
+		writeVarLong(out,buckets);
+		int last=-1;
+		for (int i=0; i<counts.length; i++)
+		{
+			if (counts[i]>0)
+			{
+				writeVarLong(out,i-last-1);
+				writeVarLong(out,counts[i]);
+				last=i;
+			}
+		}
+	}
+
+	/**
+	 * Read a histogram written by encode().
+	 * 
+	 * @throws IOException if the histogram cannot be read or is malformed.
+	 */
+	public static OneMeasurementHdrHistogram decode(String name, DataInputStream in) throws IOException
+	{
+		Properties props=new Properties();
+		props.setProperty(SIGNIFICANT_DIGITS,Integer.toString(in.readByte()));
+		OneMeasurementHdrHistogram h;
+		try
+		{
+			h=new OneMeasurementHdrHistogram(name,props);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Bad histogram of "+name+": "+e.getMessage());
+		}
+		h.operations=readVarLong(in);
+		h.totallatency=readVarLong(in);
+		h.min=(int)readVarLong(in)-1;
+		h.max=(int)readVarLong(in)-1;
+
+		long buckets=readVarLong(in);
+		int index=-1;
+		for (long b=0; b<buckets; b++)
+		{
+			index+=(int)readVarLong(in)+1;
+			if ( (index<0) || (index>=h.counts.length) )
+			{
+				throw new IOException("Bad histogram of "+name+": bucket "+index+" out of range");
+			}
+			h.counts[index]=readVarLong(in);
+		}
+		return h;
+	}
+
+	/**
+	 * Write the histogram as encode() does, followed by what encode() leaves out: the window of the status
+	 * thread and the counts of the return codes.
+	 */
+	@Override
+	public synchronized void write(DataOutputStream out) throws IOException
+	{
+		out.writeByte(HDRHISTOGRAM);
+		out.writeUTF(getName());
+		encode(out);
+		out.writeLong(windowoperations);
+		out.writeLong(windowtotallatency);
+		writeReturnCodes(out,returncodes);
+	}
+
+	/**
+	 * Read the rest of a histogram written by write(), after its tag and name.
+	 */
+	static OneMeasurementHdrHistogram read(String name, DataInputStream in) throws IOException
+	{
+		OneMeasurementHdrHistogram h=decode(name,in);
+		h.windowoperations=in.readLong();
+		h.windowtotallatency=in.readLong();
+		readReturnCodes(in,h.returncodes);
+		return h;
+	}
+
+	static void writeVarLong(DataOutputStream out, long value) throws IOException
+	{
+		while ((value&~0x7FL)!=0)
+		{
+			out.writeByte((int)((value&0x7F)|0x80));
+			value>>>=7;
+		}
+		out.writeByte((int)value);
+	}
+
+	static long readVarLong(DataInputStream in) throws IOException
+	{
+		long value=0;
+		for (int shift=0; shift<64; shift+=7)
+		{
+			int b=in.readUnsignedByte();
+			value|=((long)(b&0x7F))<<shift;
+			if ((b&0x80)==0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	@Override
+	public synchronized void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		write(exporter, getName(), "Operations", operations);
+		exporter.write(getName(), "AverageLatency(us)", (((double)totallatency)/((double)operations)));
+		exporter.write(getName(), "MinLatency(us)", min);
+		exporter.write(getName(), "MaxLatency(us)", max);
+
+		for (int p=0; p<PERCENTILES.length; p++)
+		{
+			write(exporter, getName(), PERCENTILE_NAMES[p]+"PercentileLatency(us)", getPercentileLatency(PERCENTILES[p]));
+		}
+
+		for (Integer I : returncodes.keySet())
+		{
+			long[] val=returncodes.get(I);
+			write(exporter, getName(), "Return="+I, val[0]);
+		}
+
+		for (int i=0; i<counts.length; i++)
+		{
+			if (counts[i]>0)
+			{
+				write(exporter, getName(), Long.toString(lowestValue(i)), counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Return a summary of all the latencies measured, giving their number, their average, some percentiles and
+	 * their maximum, or an empty string if none have been.
+	 */
+	public synchronized String getPercentileSummary()
+	{
+		if (operations==0)
+		{
+			return "";
+		}
+		DecimalFormat d = new DecimalFormat("#.##");
+		return "["+getName()+" Operations="+operations+" AverageLatency(us)="+d.format(((double)totallatency)/((double)operations))+
+			" 50th(us)="+getPercentileLatency(50)+" 99th(us)="+getPercentileLatency(99)+" 99.9th(us)="+getPercentileLatency(99.9)+
+			" Max(us)="+max+"]";
+	}
+
+	@Override
+	public synchronized String getSummary()
+	{
+		if (windowoperations==0)
+		{
+			return "";
+		}
+		DecimalFormat d = new DecimalFormat("#.##");
+		double report=((double)windowtotallatency)/((double)windowoperations);
+		windowtotallatency=0;
+		windowoperations=0;
+		return "["+getName()+" AverageLatency(us)="+d.format(report)+"]";
+	}
+}
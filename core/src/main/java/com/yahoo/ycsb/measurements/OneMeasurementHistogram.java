@@ -17,6 +17,8 @@
 
 package com.yahoo.ycsb.measurements;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.HashMap;
@@ -36,25 +38,30 @@ public class OneMeasurementHistogram extends OneMeasurement
 	public static final String BUCKETS="histogram.buckets";
 	public static final String BUCKETS_DEFAULT="1000";
 
+	/**
+	 * The most buckets a histogram read from a stream may have.
+	 */
+	static final int MAX_BUCKETS=1<<24;
+
 	int _buckets;
-	int[] histogram;
-	int histogramoverflow;
-	int operations;
+	long[] histogram;
+	long histogramoverflow;
+	long operations;
 	long totallatency;
 	
 	//keep a windowed version of these stats for printing status
-	int windowoperations;
+	long windowoperations;
 	long windowtotallatency;
 	
 	int min;
 	int max;
-	HashMap<Integer,int[]> returncodes;
+	HashMap<Integer,long[]> returncodes;
 
 	public OneMeasurementHistogram(String name, Properties props)
 	{
 		super(name);
 		_buckets=Integer.parseInt(props.getProperty(BUCKETS, BUCKETS_DEFAULT));
-		histogram=new int[_buckets];
+		histogram=new long[_buckets];
 		histogramoverflow=0;
 		operations=0;
 		totallatency=0;
@@ -62,7 +69,7 @@ public class OneMeasurementHistogram extends OneMeasurement
 		windowtotallatency=0;
 		min=-1;
 		max=-1;
-		returncodes=new HashMap<Integer,int[]>();
+		returncodes=new HashMap<Integer,long[]>();
 	}
 
 	/* (non-Javadoc)
@@ -73,7 +80,7 @@ public class OneMeasurementHistogram extends OneMeasurement
 		Integer Icode=code;
 		if (!returncodes.containsKey(Icode))
 		{
-			int[] val=new int[1];
+			long[] val=new long[1];
 			val[0]=0;
 			returncodes.put(Icode,val);
 		}
@@ -114,12 +121,12 @@ public class OneMeasurementHistogram extends OneMeasurement
   @Override
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException
   {
-    exporter.write(getName(), "Operations", operations);
+    write(exporter, getName(), "Operations", operations);
     exporter.write(getName(), "AverageLatency(us)", (((double)totallatency)/((double)operations)));
     exporter.write(getName(), "MinLatency(us)", min);
     exporter.write(getName(), "MaxLatency(us)", max);
     
-    int opcounter=0;
+    long opcounter=0;
     boolean done95th=false;
     for (int i=0; i<_buckets; i++)
     {
@@ -138,17 +145,154 @@ public class OneMeasurementHistogram extends OneMeasurement
 
     for (Integer I : returncodes.keySet())
     {
-      int[] val=returncodes.get(I);
-      exporter.write(getName(), "Return="+I, val[0]);
+      long[] val=returncodes.get(I);
+      write(exporter, getName(), "Return="+I, val[0]);
     }     
 
     for (int i=0; i<_buckets; i++)
     {
-      exporter.write(getName(), Integer.toString(i), histogram[i]);
+      write(exporter, getName(), Integer.toString(i), histogram[i]);
     }
-    exporter.write(getName(), ">"+_buckets, histogramoverflow);
+    write(exporter, getName(), ">"+_buckets, histogramoverflow);
   }
 
+	/**
+	 * Return the end of the 1ms bucket holding the given percentile, so that a latency objective is never passed
+	 * by rounding down, or the maximum latency if that is lower or the percentile is beyond the last bucket.
+	 */
+	@Override
+	public synchronized long getPercentileLatency(double percentile)
+	{
+		if (operations==0)
+		{
+			return -1;
+		}
+		long opcounter=0;
+		for (int i=0; i<_buckets; i++)
+		{
+			opcounter+=histogram[i];
+			if (((double)opcounter)/((double)operations)*100.0>=percentile)
+			{
+				return Math.min((i+1)*1000L,max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Write the histogram with the counts of its non-empty buckets only, each preceded by the number of empty
+	 * buckets before it.
+	 */
+	@Override
+	public synchronized void write(DataOutputStream out) throws IOException
+	{
+		out.writeByte(HISTOGRAM);
+		out.writeUTF(getName());
+		out.writeInt(_buckets);
+		int nonempty=0;
+		for (int i=0; i<_buckets; i++)
+		{
+			if (histogram[i]>0)
+			{
+				nonempty++;
+			}
+		}
+		out.writeInt(nonempty);
+		int last=-1;
+		for (int i=0; i<_buckets; i++)
+		{
+			if (histogram[i]>0)
+			{
+				OneMeasurementHdrHistogram.writeVarLong(out,i-last-1);
+				OneMeasurementHdrHistogram.writeVarLong(out,histogram[i]);
+				last=i;
+			}
+		}
+		out.writeLong(histogramoverflow);
+		out.writeLong(operations);
+		out.writeLong(totallatency);
+		out.writeLong(windowoperations);
+		out.writeLong(windowtotallatency);
+		out.writeInt(min);
+		out.writeInt(max);
+		writeReturnCodes(out,returncodes);
+	}
+
+	/**
+	 * Read the rest of a histogram written by write(), after its tag and name.
+	 */
+	static OneMeasurementHistogram read(String name, DataInputStream in) throws IOException
+	{
+		int buckets=in.readInt();
+		if ( (buckets<1) || (buckets>MAX_BUCKETS) )
+		{
+			throw new IOException("Bad histogram of "+name+": "+buckets+" buckets");
+		}
+		Properties props=new Properties();
+		props.setProperty(BUCKETS,Integer.toString(buckets));
+		OneMeasurementHistogram h=new OneMeasurementHistogram(name,props);
+		int nonempty=in.readInt();
+		int index=-1;
+		for (int b=0; b<nonempty; b++)
+		{
+			index+=(int)OneMeasurementHdrHistogram.readVarLong(in)+1;
+			if ( (index<0) || (index>=buckets) )
+			{
+				throw new IOException("Bad histogram of "+name+": bucket "+index+" out of range");
+			}
+			h.histogram[index]=OneMeasurementHdrHistogram.readVarLong(in);
+		}
+		h.histogramoverflow=in.readLong();
+		h.operations=in.readLong();
+		h.totallatency=in.readLong();
+		h.windowoperations=in.readLong();
+		h.windowtotallatency=in.readLong();
+		h.min=in.readInt();
+		h.max=in.readInt();
+		readReturnCodes(in,h.returncodes);
+		return h;
+	}
+
+	@Override
+	public synchronized void merge(OneMeasurement other)
+	{
+		if ( !(other instanceof OneMeasurementHistogram) || (((OneMeasurementHistogram)other)._buckets!=_buckets) )
+		{
+			throw new IllegalArgumentException("Cannot merge "+other.getClass().getSimpleName()+" "+other.getName()+" into a histogram of "+_buckets+" buckets");
+		}
+		OneMeasurementHistogram h=(OneMeasurementHistogram)other;
+		synchronized (h)
+		{
+			for (int i=0; i<_buckets; i++)
+			{
+				histogram[i]+=h.histogram[i];
+			}
+			histogramoverflow+=h.histogramoverflow;
+			operations+=h.operations;
+			totallatency+=h.totallatency;
+			windowoperations+=h.windowoperations;
+			windowtotallatency+=h.windowtotallatency;
+
+			if ( (h.min>=0) && ((min<0) || (h.min<min)) )
+			{
+				min=h.min;
+			}
+			if (h.max>max)
+			{
+				max=h.max;
+			}
+
+			for (Integer I : h.returncodes.keySet())
+			{
+				if (!returncodes.containsKey(I))
+				{
+					returncodes.put(I,new long[1]);
+				}
+				returncodes.get(I)[0]+=h.returncodes.get(I)[0];
+			}
+		}
+	}
+
 	@Override
 	public String getSummary() {
 		if (windowoperations==0)
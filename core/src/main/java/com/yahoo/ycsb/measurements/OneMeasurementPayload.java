@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.DecimalFormat;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Count the bytes carried by the operations of one kind, such as the bytes read by READ operations, and the
+ * rate at which they were carried.
+ *
+ * The rate is taken over the span from the first to the last operation measured, by the clock, so that the
+ * measurements of several clients can be merged.
+ */
+public class OneMeasurementPayload extends OneMeasurement
+{
+	long operations=0;
+	long totalbytes=0;
+	long minbytes=-1;
+	long maxbytes=-1;
+
+	/**
+	 * The times of the first and last operations measured, in milliseconds since the epoch, or -1 if none has been.
+	 */
+	long first=-1;
+	long last=-1;
+
+	//keep a windowed version of these stats for printing status
+	long windowbytes=0;
+	long windowstart=-1;
+
+	public OneMeasurementPayload(String name)
+	{
+		super(name);
+	}
+
+	/**
+	 * Return codes are counted with the latencies of the operation, not here.
+	 */
+	@Override
+	public void reportReturnCode(int code)
+	{
+	}
+
+	@Override
+	public void measure(int bytes)
+	{
+		measureBytes(bytes);
+	}
+
+	/**
+	 * Count the bytes carried by one operation.
+	 */
+	public synchronized void measureBytes(long bytes)
+	{
+		long now=System.currentTimeMillis();
+		if (first<0)
+		{
+			first=now;
+		}
+		last=now;
+		if (windowstart<0)
+		{
+			windowstart=now;
+		}
+
+		operations++;
+		totalbytes+=bytes;
+		windowbytes+=bytes;
+
+		if ( (minbytes<0) || (bytes<minbytes) )
+		{
+			minbytes=bytes;
+		}
+		if (bytes>maxbytes)
+		{
+			maxbytes=bytes;
+		}
+	}
+
+	/**
+	 * Return the rate at which bytes were carried, in MB/sec, over the span from the first to the last
+	 * operation, or 0 if the span is too short to tell.
+	 */
+	public synchronized double getThroughput()
+	{
+		if (last<=first)
+		{
+			return 0;
+		}
+		return totalbytes/1048576.0*1000.0/(last-first);
+	}
+
+	@Override
+	public synchronized void write(DataOutputStream out) throws IOException
+	{
+		out.writeByte(PAYLOAD);
+		out.writeUTF(getName());
+		out.writeLong(operations);
+		out.writeLong(totalbytes);
+		out.writeLong(minbytes);
+		out.writeLong(maxbytes);
+		out.writeLong(first);
+		out.writeLong(last);
+		out.writeLong(windowbytes);
+		out.writeLong(windowstart);
+	}
+
+	/**
+	 * Read the rest of a measurement written by write(), after its tag and name.
+	 */
+	static OneMeasurementPayload read(String name, DataInputStream in) throws IOException
+	{
+		OneMeasurementPayload p=new OneMeasurementPayload(name);
+		p.operations=in.readLong();
+		p.totalbytes=in.readLong();
+		p.minbytes=in.readLong();
+		p.maxbytes=in.readLong();
+		p.first=in.readLong();
+		p.last=in.readLong();
+		p.windowbytes=in.readLong();
+		p.windowstart=in.readLong();
+		return p;
+	}
+
+	@Override
+	public synchronized void merge(OneMeasurement other)
+	{
+		if (!(other instanceof OneMeasurementPayload))
+		{
+			throw new IllegalArgumentException("Cannot merge "+other.getClass().getSimpleName()+" "+other.getName()+" into a payload measurement");
+		}
+		OneMeasurementPayload p=(OneMeasurementPayload)other;
+		synchronized (p)
+		{
+			operations+=p.operations;
+			totalbytes+=p.totalbytes;
+			windowbytes+=p.windowbytes;
+
+			if ( (p.minbytes>=0) && ((minbytes<0) || (p.minbytes<minbytes)) )
+			{
+				minbytes=p.minbytes;
+			}
+			if (p.maxbytes>maxbytes)
+			{
+				maxbytes=p.maxbytes;
+			}
+			if ( (p.first>=0) && ((first<0) || (p.first<first)) )
+			{
+				first=p.first;
+			}
+			if (p.last>last)
+			{
+				last=p.last;
+			}
+			if ( (p.windowstart>=0) && ((windowstart<0) || (p.windowstart<windowstart)) )
+			{
+				windowstart=p.windowstart;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void exportMeasurements(MeasurementsExporter exporter) throws IOException
+	{
+		write(exporter, getName(), "Operations", operations);
+		write(exporter, getName(), "Bytes", totalbytes);
+		exporter.write(getName(), "AverageBytes", ((double)totalbytes)/((double)operations));
+		write(exporter, getName(), "MinBytes", minbytes);
+		write(exporter, getName(), "MaxBytes", maxbytes);
+		exporter.write(getName(), "Throughput(MB/sec)", getThroughput());
+	}
+
+	@Override
+	public synchronized String getSummary()
+	{
+		if (windowstart<0)
+		{
+			return "";
+		}
+		long now=System.currentTimeMillis();
+		DecimalFormat d = new DecimalFormat("#.##");
+		double report=now>windowstart ? windowbytes/1048576.0*1000.0/(now-windowstart) : 0;
+		windowbytes=0;
+		windowstart=now;
+		return "["+getName()+" Throughput(MB/sec)="+d.format(report)+"]";
+	}
+}
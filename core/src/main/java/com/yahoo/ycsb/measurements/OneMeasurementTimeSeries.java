@@ -1,161 +1,516 @@
-/**                                                                                                                                                                                
- * Copyright (c) 2010 Yahoo! Inc. All rights reserved.                                                                                                                             
- *                                                                                                                                                                                 
- * Licensed under the Apache License, Version 2.0 (the "License"); you                                                                                                             
- * may not use this file except in compliance with the License. You                                                                                                                
- * may obtain a copy of the License at                                                                                                                                             
- *                                                                                                                                                                                 
- * http://www.apache.org/licenses/LICENSE-2.0                                                                                                                                      
- *                                                                                                                                                                                 
- * Unless required by applicable law or agreed to in writing, software                                                                                                             
- * distributed under the License is distributed on an "AS IS" BASIS,                                                                                                               
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or                                                                                                                 
- * implied. See the License for the specific language governing                                                                                                                    
- * permissions and limitations under the License. See accompanying                                                                                                                 
- * LICENSE file.                                                                                                                                                                   
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
  */
 
 package com.yahoo.ycsb.measurements;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Properties;
-import java.util.Vector;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
-class SeriesUnit
-{
-	/**
-	 * @param time
-	 * @param average
-	 */
-	public SeriesUnit(long time, double average) {
-		this.time = time;
-		this.average = average;
-	}
-	public long time;
-	public double average; 
-}
-
 /**
  * A time series measurement of a metric, such as READ LATENCY.
+ *
+ * The run is divided into units of "timeseries.granularity" milliseconds, aligned to the clock so that the
+ * series of several clients line up. Each unit keeps its number of operations, their total and maximum
+ * latency, and a small histogram of their latencies, with 8 buckets for every doubling of the latency, from
+ * which the percentiles of the unit are found to within 12.5%. The export gives, for each unit, the time from
+ * the start of the series in milliseconds, followed by the average latency, the throughput, the 50th and 99th
+ * percentile latencies and the maximum latency of the unit.
+ *
+ * The units are held in a fixed number of slots, "timeseries.units". When a run outlasts them, neighbouring
+ * units are combined and the granularity doubles, so the whole run is kept in fixed memory however long it
+ * lasts; a day of one second units needs 86400 slots. Each slot takes about 30 bytes, plus 4 bytes for each
+ * latency bucket its operations fall into, and each stripe of the measurements (see Measurements) keeps its own
+ * series for each operation.
+ *
+ * The time of each operation is read from a clock shared by all series that ticks every millisecond, rather
+ * than from the system for each operation.
  */
-public class OneMeasurementTimeSeries extends OneMeasurement 
+public class OneMeasurementTimeSeries extends OneMeasurement
 {
 	/**
-	 * Granularity for time series; measurements will be averaged in chunks of this granularity. Units are milliseconds.
+	 * Granularity for time series; measurements will be summarized in chunks of this granularity. Units are milliseconds.
 	 */
 	public static final String GRANULARITY="timeseries.granularity";
-	
+
 	public static final String GRANULARITY_DEFAULT="1000";
-	
+
+	/**
+	 * The number of units kept, after which neighbouring units are combined.
+	 */
+	public static final String UNITS="timeseries.units";
+
+	public static final String UNITS_DEFAULT="3600";
+
+	/**
+	 * The most units a series read from a stream may have.
+	 */
+	static final int MAX_UNITS=1<<24;
+
+	/**
+	 * The percentiles exported for the run as a whole, along with the name each is exported under.
+	 */
+	static final double[] PERCENTILES={50,90,99,99.9,99.99};
+	static final String[] PERCENTILE_NAMES={"50th","90th","99th","99.9th","99.99th"};
+
+	/**
+	 * log2 of the number of latency buckets for each doubling of the latency.
+	 */
+	static final int SUBBUCKETMAGNITUDE=3;
+
+	static final int BUCKETS=bucket(Integer.MAX_VALUE)+1;
+
+	/**
+	 * The time, in milliseconds since the epoch, as of the last tick of the shared clock.
+	 */
+	static volatile long clock=System.currentTimeMillis();
+
+	static Thread ticker=null;
+
+	/**
+	 * Start the shared clock, if it is not already running.
+	 */
+	static synchronized void startClock()
+	{
+		if (ticker!=null)
+		{
+			return;
+		}
+		ticker=new Thread("timeseries clock")
+		{
+			public void run()
+			{
+				while (true)
+				{
+					clock=System.currentTimeMillis();
+					try
+					{
+						Thread.sleep(1);
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+			}
+		};
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/**
+	 * The granularity asked for, and the granularity of the units now, which doubles each time they are combined.
+	 */
 	int _granularity;
-	Vector<SeriesUnit> _measurements;
-	
-	long start=-1;
-	long currentunit=-1;
-	int count=0;
-	int sum=0;
-	int operations=0;
+	long granularity;
+
+	/**
+	 * The start of the unit in the first slot, in milliseconds since the epoch, and the number of slots in use.
+	 */
+	long first;
+	int used=0;
+
+	long[] slotoperations;
+	long[] slottotallatency;
+	int[] slotmax;
+
+	/**
+	 * The latency histogram of each slot, trimmed to the buckets from its lowest to its highest non-empty one.
+	 * The first element is the index of the lowest bucket, and the rest are the counts. Null if it is empty.
+	 */
+	int[][] slothistogram;
+
+	/**
+	 * The untrimmed histogram of the slot being measured into, its slot, or -1 if there is none, and the times
+	 * at which its unit starts and ends.
+	 */
+	int[] live=new int[BUCKETS];
+	int liveslot=-1;
+	long livestart;
+	long liveend;
+
+	/**
+	 * The histogram of the run as a whole.
+	 */
+	long[] total=new long[BUCKETS];
+
+	long operations=0;
 	long totallatency=0;
-	
+
 	//keep a windowed version of these stats for printing status
-	int windowoperations=0;
+	long windowoperations=0;
 	long windowtotallatency=0;
-	
+
 	int min=-1;
 	int max=-1;
 
-	private HashMap<Integer, int[]> returncodes;
-	
+	private HashMap<Integer, long[]> returncodes;
+
 	public OneMeasurementTimeSeries(String name, Properties props)
 	{
 		super(name);
 		_granularity=Integer.parseInt(props.getProperty(GRANULARITY,GRANULARITY_DEFAULT));
-		_measurements=new Vector<SeriesUnit>();
-		returncodes=new HashMap<Integer,int[]>();
+		int units=Integer.parseInt(props.getProperty(UNITS,UNITS_DEFAULT));
+		if (_granularity<1)
+		{
+			throw new IllegalArgumentException(GRANULARITY+" must be at least 1");
+		}
+		if (units<2)
+		{
+			throw new IllegalArgumentException(UNITS+" must be at least 2");
+		}
+		granularity=_granularity;
+		slotoperations=new long[units];
+		slottotallatency=new long[units];
+		slotmax=new int[units];
+		slothistogram=new int[units][];
+		returncodes=new HashMap<Integer,long[]>();
+		startClock();
 	}
-	
-	void checkEndOfUnit(boolean forceend)
+
+	/**
+	 * Return the index of the bucket holding the given latency. Latencies below 16us have a bucket each, and
+	 * every doubling of the latency beyond is split into 8 buckets.
+	 */
+	static int bucket(long latency)
 	{
-		long now=System.currentTimeMillis();
-		
-		if (start<0)
+		int bucketindex=(63-SUBBUCKETMAGNITUDE)-Long.numberOfLeadingZeros(latency|((2L<<SUBBUCKETMAGNITUDE)-1));
+		int subbucketindex=(int)(latency>>>bucketindex);
+		return ((bucketindex+1)<<SUBBUCKETMAGNITUDE)+(subbucketindex-(1<<SUBBUCKETMAGNITUDE));
+	}
+
+	/**
+	 * Return the highest latency held by the bucket with the given index.
+	 */
+	static long highestValue(int index)
+	{
+		int bucketindex=(index>>SUBBUCKETMAGNITUDE)-1;
+		int subbucketindex=(index&((1<<SUBBUCKETMAGNITUDE)-1))+(1<<SUBBUCKETMAGNITUDE);
+		if (bucketindex<0)
 		{
-			currentunit=0;
-			start=now;
+			return index;
 		}
-		
-		long unit=((now-start)/_granularity)*_granularity;
-		
-		if ( (unit>currentunit) || (forceend) )
+		return ((((long)subbucketindex)+1)<<bucketindex)-1;
+	}
+
+	/**
+	 * Return a/b rounded towards negative infinity, so that times before 0 fall in the unit below them.
+	 */
+	static long floorDiv(long a, long b)
+	{
+		long q=a/b;
+		if ((a%b!=0) && ((a<0)!=(b<0)))
 		{
-			double avg=((double)sum)/((double)count);
-			_measurements.add(new SeriesUnit(currentunit,avg));
-			
-			currentunit=unit;
-			
-			count=0;
-			sum=0;
+			q--;
 		}
+		return q;
 	}
-	
+
+	/**
+	 * Return the non-empty part of an untrimmed histogram, in the form kept for a slot, or null if it is empty.
+	 */
+	static int[] trim(int[] histogram)
+	{
+		int lo=0;
+		while ( (lo<histogram.length) && (histogram[lo]==0) )
+		{
+			lo++;
+		}
+		if (lo==histogram.length)
+		{
+			return null;
+		}
+		int hi=histogram.length-1;
+		while (histogram[hi]==0)
+		{
+			hi--;
+		}
+		int[] ret=new int[hi-lo+2];
+		ret[0]=lo;
+		System.arraycopy(histogram,lo,ret,1,hi-lo+1);
+		return ret;
+	}
+
+	/**
+	 * Return the sum of two trimmed histograms, either of which may be null. Neither is changed.
+	 */
+	static int[] add(int[] a, int[] b)
+	{
+		if (a==null)
+		{
+			return b==null ? null : b.clone();
+		}
+		if (b==null)
+		{
+			return a.clone();
+		}
+		int lo=Math.min(a[0],b[0]);
+		int hi=Math.max(a[0]+a.length-2,b[0]+b.length-2);
+		int[] ret=new int[hi-lo+2];
+		ret[0]=lo;
+		for (int i=1; i<a.length; i++)
+		{
+			ret[a[0]-lo+i]+=a[i];
+		}
+		for (int i=1; i<b.length; i++)
+		{
+			ret[b[0]-lo+i]+=b[i];
+		}
+		return ret;
+	}
+
+	/**
+	 * Return the highest latency of the bucket of a trimmed histogram holding the given percentile, but never
+	 * more than the maximum latency measured.
+	 */
+	static long percentile(int[] histogram, long count, double percentile, int maxlatency)
+	{
+		if ( (histogram==null) || (count==0) )
+		{
+			return -1;
+		}
+		long target=Math.max((long)Math.ceil(percentile/100.0*count),1);
+		long opcounter=0;
+		for (int i=1; i<histogram.length; i++)
+		{
+			opcounter+=histogram[i];
+			if (opcounter>=target)
+			{
+				return Math.min(highestValue(histogram[0]+i-1),maxlatency);
+			}
+		}
+		return maxlatency;
+	}
+
+	/**
+	 * Move the histogram being measured into to its slot.
+	 */
+	void flush()
+	{
+		if (liveslot<0)
+		{
+			return;
+		}
+		slothistogram[liveslot]=add(slothistogram[liveslot],trim(live));
+		Arrays.fill(live,0);
+		liveslot=-1;
+	}
+
+	/**
+	 * Combine each pair of neighbouring units, doubling the granularity.
+	 */
+	void coalesce()
+	{
+		flush();
+		long newgranularity=granularity*2;
+		long newfirst=floorDiv(first,newgranularity)*newgranularity;
+		int newused=0;
+		//each slot moves to one no later than itself, which has already been emptied or filled
+		for (int i=0; i<used; i++)
+		{
+			int j=(int)((first+i*granularity-newfirst)/newgranularity);
+			long ops=slotoperations[i];
+			long latency=slottotallatency[i];
+			int m=slotmax[i];
+			int[] h=slothistogram[i];
+			slotoperations[i]=0;
+			slottotallatency[i]=0;
+			slotmax[i]=0;
+			slothistogram[i]=null;
+
+			slotoperations[j]+=ops;
+			slottotallatency[j]+=latency;
+			slotmax[j]=Math.max(slotmax[j],m);
+			slothistogram[j]=slothistogram[j]==null ? h : add(slothistogram[j],h);
+			newused=j+1;
+		}
+		granularity=newgranularity;
+		first=newfirst;
+		used=newused;
+	}
+
+	/**
+	 * Return the slot of the unit holding the given time, making room for it if need be.
+	 */
+	int slot(long time)
+	{
+		if (used==0)
+		{
+			first=floorDiv(time,granularity)*granularity;
+		}
+		while (true)
+		{
+			if (time<first)
+			{
+				long shift=(first-floorDiv(time,granularity)*granularity)/granularity;
+				if (shift>slotoperations.length-used)
+				{
+					coalesce();
+					continue;
+				}
+				flush();
+				int s=(int)shift;
+				for (int i=used-1; i>=0; i--)
+				{
+					slotoperations[i+s]=slotoperations[i];
+					slottotallatency[i+s]=slottotallatency[i];
+					slotmax[i+s]=slotmax[i];
+					slothistogram[i+s]=slothistogram[i];
+				}
+				Arrays.fill(slotoperations,0,s,0);
+				Arrays.fill(slottotallatency,0,s,0);
+				Arrays.fill(slotmax,0,s,0);
+				Arrays.fill(slothistogram,0,s,null);
+				first-=s*granularity;
+				used+=s;
+			}
+			long index=(time-first)/granularity;
+			if (index<slotoperations.length)
+			{
+				used=Math.max(used,(int)index+1);
+				return (int)index;
+			}
+			coalesce();
+		}
+	}
+
 	@Override
-	public void measure(int latency) 
+	public void measure(int latency)
+	{
+		measure(latency,clock);
+	}
+
+	/**
+	 * Measure a latency as of the given time, in milliseconds since the epoch.
+	 */
+	synchronized void measure(int latency, long now)
 	{
-		checkEndOfUnit(false);
-		
-		count++;
-		sum+=latency;
+		//a clock that steps backwards can give a negative latency
+		if (latency<0)
+		{
+			latency=0;
+		}
+		if ( (liveslot<0) || (now<livestart) || (now>=liveend) )
+		{
+			int s=slot(now);
+			flush();
+			liveslot=s;
+			livestart=first+s*granularity;
+			liveend=livestart+granularity;
+		}
+		int b=bucket(latency);
+		live[b]++;
+		slotoperations[liveslot]++;
+		slottotallatency[liveslot]+=latency;
+		if (latency>slotmax[liveslot])
+		{
+			slotmax[liveslot]=latency;
+		}
+
+		total[b]++;
 		totallatency+=latency;
 		operations++;
 		windowoperations++;
 		windowtotallatency+=latency;
-		
+
 		if (latency>max)
 		{
 			max=latency;
 		}
-		
+
 		if ( (latency<min) || (min<0) )
 		{
 			min=latency;
 		}
 	}
 
+	/**
+	 * Return the highest latency of the bucket holding the given percentile of the run as a whole, which is
+	 * within 12.5% of the exact value, and never more than the maximum latency measured.
+	 */
+	@Override
+	public synchronized long getPercentileLatency(double percentile)
+	{
+		if (operations==0)
+		{
+			return -1;
+		}
+		long target=Math.max((long)Math.ceil(percentile/100.0*operations),1);
+		long opcounter=0;
+		for (int i=0; i<total.length; i++)
+		{
+			opcounter+=total[i];
+			if (opcounter>=target)
+			{
+				return Math.min(highestValue(i),max);
+			}
+		}
+		return max;
+	}
 
   @Override
-  public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+  public synchronized void exportMeasurements(MeasurementsExporter exporter) throws IOException
   {
-    checkEndOfUnit(true);
+    flush();
 
-    exporter.write(getName(), "Operations", operations);
+    write(exporter, getName(), "Operations", operations);
     exporter.write(getName(), "AverageLatency(us)", (((double)totallatency)/((double)operations)));
     exporter.write(getName(), "MinLatency(us)", min);
     exporter.write(getName(), "MaxLatency(us)", max);
 
-    //TODO: 95th and 99th percentile latency
+    for (int p=0; p<PERCENTILES.length; p++)
+    {
+      write(exporter, getName(), PERCENTILE_NAMES[p]+"PercentileLatency(us)", getPercentileLatency(PERCENTILES[p]));
+    }
 
     for (Integer I : returncodes.keySet())
     {
-      int[] val=returncodes.get(I);
-      exporter.write(getName(), "Return="+I, val[0]);
-    }     
+      long[] val=returncodes.get(I);
+      write(exporter, getName(), "Return="+I, val[0]);
+    }
 
-    for (SeriesUnit unit : _measurements)
+    write(exporter, getName(), "Granularity(ms)", granularity);
+    for (int i=0; i<used; i++)
     {
-      exporter.write(getName(), Long.toString(unit.time), unit.average);
+      if (slotoperations[i]==0)
+      {
+        continue;
+      }
+      String time=Long.toString(i*granularity);
+      exporter.write(getName(), time, ((double)slottotallatency[i])/((double)slotoperations[i]));
+      exporter.write(getName(), time+" Throughput(ops/sec)", slotoperations[i]*1000.0/granularity);
+      write(exporter, getName(), time+" 50th(us)", percentile(slothistogram[i],slotoperations[i],50,slotmax[i]));
+      write(exporter, getName(), time+" 99th(us)", percentile(slothistogram[i],slotoperations[i],99,slotmax[i]));
+      exporter.write(getName(), time+" Max(us)", slotmax[i]);
     }
   }
-	
+
 	@Override
-	public void reportReturnCode(int code) {
+	public synchronized void reportReturnCode(int code) {
 		Integer Icode=code;
 		if (!returncodes.containsKey(Icode))
 		{
-			int[] val=new int[1];
+			long[] val=new long[1];
 			val[0]=0;
 			returncodes.put(Icode,val);
 		}
@@ -163,8 +518,206 @@ public class OneMeasurementTimeSeries extends OneMeasurement
 
 	}
 
+	/**
+	 * Add the measurements of another time series. Units are matched by the clock, so the series of clients
+	 * whose clocks agree line up. If the other series has combined more of its units, so does this one.
+	 */
+	@Override
+	public synchronized void merge(OneMeasurement other)
+	{
+		if ( !(other instanceof OneMeasurementTimeSeries) || (((OneMeasurementTimeSeries)other)._granularity!=_granularity) )
+		{
+			throw new IllegalArgumentException("Cannot merge "+other.getClass().getSimpleName()+" "+other.getName()+" into a time series of granularity "+_granularity);
+		}
+		OneMeasurementTimeSeries t=(OneMeasurementTimeSeries)other;
+		synchronized (t)
+		{
+			t.flush();
+			flush();
+			while ( (used>0) && (granularity<t.granularity) )
+			{
+				coalesce();
+			}
+			if (used==0)
+			{
+				granularity=Math.max(granularity,t.granularity);
+			}
+			for (int i=0; i<t.used; i++)
+			{
+				if (t.slotoperations[i]==0)
+				{
+					continue;
+				}
+				int s=slot(t.first+i*t.granularity);
+				slotoperations[s]+=t.slotoperations[i];
+				slottotallatency[s]+=t.slottotallatency[i];
+				slotmax[s]=Math.max(slotmax[s],t.slotmax[i]);
+				slothistogram[s]=add(slothistogram[s],t.slothistogram[i]);
+			}
+			for (int i=0; i<total.length; i++)
+			{
+				total[i]+=t.total[i];
+			}
+			operations+=t.operations;
+			totallatency+=t.totallatency;
+			windowoperations+=t.windowoperations;
+			windowtotallatency+=t.windowtotallatency;
+
+			if ( (t.min>=0) && ((min<0) || (t.min<min)) )
+			{
+				min=t.min;
+			}
+			if (t.max>max)
+			{
+				max=t.max;
+			}
+
+			for (Integer I : t.returncodes.keySet())
+			{
+				if (!returncodes.containsKey(I))
+				{
+					returncodes.put(I,new long[1]);
+				}
+				returncodes.get(I)[0]+=t.returncodes.get(I)[0];
+			}
+		}
+	}
+
+	/**
+	 * Write the series with the units in use only, and the histograms with their non-empty buckets only.
+	 */
+	@Override
+	public synchronized void write(DataOutputStream out) throws IOException
+	{
+		flush();
+		out.writeByte(TIMESERIES);
+		out.writeUTF(getName());
+		out.writeInt(_granularity);
+		out.writeInt(slotoperations.length);
+		out.writeLong(granularity);
+		out.writeLong(first);
+		out.writeInt(used);
+		for (int i=0; i<used; i++)
+		{
+			out.writeLong(slotoperations[i]);
+			out.writeLong(slottotallatency[i]);
+			out.writeInt(slotmax[i]);
+			int[] h=slothistogram[i];
+			if (h==null)
+			{
+				out.writeInt(0);
+				continue;
+			}
+			out.writeInt(h.length);
+			for (int j=0; j<h.length; j++)
+			{
+				OneMeasurementHdrHistogram.writeVarLong(out,h[j]);
+			}
+		}
+		int nonempty=0;
+		for (int i=0; i<total.length; i++)
+		{
+			if (total[i]>0)
+			{
+				nonempty++;
+			}
+		}
+		out.writeInt(nonempty);
+		int last=-1;
+		for (int i=0; i<total.length; i++)
+		{
+			if (total[i]>0)
+			{
+				OneMeasurementHdrHistogram.writeVarLong(out,i-last-1);
+				OneMeasurementHdrHistogram.writeVarLong(out,total[i]);
+				last=i;
+			}
+		}
+		out.writeLong(operations);
+		out.writeLong(totallatency);
+		out.writeLong(windowoperations);
+		out.writeLong(windowtotallatency);
+		out.writeInt(min);
+		out.writeInt(max);
+		writeReturnCodes(out,returncodes);
+	}
+
+	/**
+	 * Read the rest of a series written by write(), after its tag and name.
+	 */
+	static OneMeasurementTimeSeries read(String name, DataInputStream in) throws IOException
+	{
+		int askedgranularity=in.readInt();
+		int units=in.readInt();
+		if (units>MAX_UNITS)
+		{
+			throw new IOException("Bad time series of "+name+": "+units+" units");
+		}
+		Properties props=new Properties();
+		props.setProperty(GRANULARITY,Integer.toString(askedgranularity));
+		props.setProperty(UNITS,Integer.toString(units));
+		OneMeasurementTimeSeries t;
+		try
+		{
+			t=new OneMeasurementTimeSeries(name,props);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Bad time series of "+name+": "+e.getMessage());
+		}
+		t.granularity=in.readLong();
+		t.first=in.readLong();
+		t.used=in.readInt();
+		if ( (t.granularity<askedgranularity) || (t.used<0) || (t.used>units) )
+		{
+			throw new IOException("Bad time series of "+name+": "+t.used+" units of "+t.granularity+"ms in use");
+		}
+		for (int i=0; i<t.used; i++)
+		{
+			t.slotoperations[i]=in.readLong();
+			t.slottotallatency[i]=in.readLong();
+			t.slotmax[i]=in.readInt();
+			int length=in.readInt();
+			if (length==0)
+			{
+				continue;
+			}
+			int lo=(int)OneMeasurementHdrHistogram.readVarLong(in);
+			if ( (length<2) || (lo<0) || (lo>BUCKETS-(length-1)) )
+			{
+				throw new IOException("Bad time series of "+name+": histogram of "+(length-1)+" buckets from "+lo);
+			}
+			int[] h=new int[length];
+			h[0]=lo;
+			for (int j=1; j<length; j++)
+			{
+				h[j]=(int)OneMeasurementHdrHistogram.readVarLong(in);
+			}
+			t.slothistogram[i]=h;
+		}
+		int nonempty=in.readInt();
+		int index=-1;
+		for (int b=0; b<nonempty; b++)
+		{
+			index+=(int)OneMeasurementHdrHistogram.readVarLong(in)+1;
+			if ( (index<0) || (index>=BUCKETS) )
+			{
+				throw new IOException("Bad time series of "+name+": bucket "+index+" out of range");
+			}
+			t.total[index]=OneMeasurementHdrHistogram.readVarLong(in);
+		}
+		t.operations=in.readLong();
+		t.totallatency=in.readLong();
+		t.windowoperations=in.readLong();
+		t.windowtotallatency=in.readLong();
+		t.min=in.readInt();
+		t.max=in.readInt();
+		readReturnCodes(in,t.returncodes);
+		return t;
+	}
+
 	@Override
-	public String getSummary() {
+	public synchronized String getSummary() {
 		if (windowoperations==0)
 		{
 			return "";
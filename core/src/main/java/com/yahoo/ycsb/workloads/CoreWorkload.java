@@ -22,7 +22,6 @@ import com.yahoo.ycsb.*;
 import com.yahoo.ycsb.generator.CounterGenerator;
 import com.yahoo.ycsb.generator.DiscreteGenerator;
 import com.yahoo.ycsb.generator.ExponentialGenerator;
-import com.yahoo.ycsb.generator.Generator;
 import com.yahoo.ycsb.generator.ConstantIntegerGenerator;
 import com.yahoo.ycsb.generator.HotspotIntegerGenerator;
 import com.yahoo.ycsb.generator.HistogramGenerator;
@@ -36,6 +35,7 @@ import com.yahoo.ycsb.measurements.Measurements;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.Vector;
 
 /**
@@ -47,8 +47,11 @@ import java.util.Vector;
  * <UL>
  * <LI><b>fieldcount</b>: the number of fields in a record (default: 10)
  * <LI><b>fieldlength</b>: the size of each field (default: 100)
+ * <LI><b>valuepoolsize</b>: the size in bytes of the pool of random data that field values are sliced from, or 0 to generate each value afresh (default: 0)
+ * <LI><b>valuepooloffheap</b>: should the pool of random data be kept off the heap (default: false)
  * <LI><b>readallfields</b>: should reads read all fields (true) or just one (false) (default: true)
  * <LI><b>writeallfields</b>: should updates and read/modify/writes update all fields (true) or just one (false) (default: false)
+ * <LI><b>reuserecords</b>: should each client thread reuse the same maps and sets for the records of all its operations; only for DBs that do not keep them once an operation has returned (default: false)
  * <LI><b>readproportion</b>: what proportion of operations should be reads (default: 0.95)
  * <LI><b>updateproportion</b>: what proportion of operations should be updates (default: 0.05)
  * <LI><b>insertproportion</b>: what proportion of operations should be inserts (default: 0)
@@ -118,6 +121,32 @@ public class CoreWorkload extends Workload
 	 */
 	public static final String FIELD_LENGTH_HISTOGRAM_FILE_PROPERTY_DEFAULT = "hist.txt";
 
+	/**
+	 * The name of the property for the size in bytes of the pool of random data that field values are sliced
+	 * from. If 0, every value is generated afresh by a RandomByteIterator. Values sliced from a pool repeat
+	 * across records, which changes how well they compress or dedupe, so results with a pool are not comparable
+	 * with runs without one and it is off unless asked for; 16777216 (16MB) is a reasonable size.
+	 */
+	public static final String VALUE_POOL_SIZE_PROPERTY="valuepoolsize";
+	/**
+	 * The default is to generate each value afresh, without a pool.
+	 */
+	public static final String VALUE_POOL_SIZE_PROPERTY_DEFAULT="0";
+
+	/**
+	 * The name of the property for deciding whether to keep the pool of random data off the heap.
+	 */
+	public static final String VALUE_POOL_OFFHEAP_PROPERTY="valuepooloffheap";
+	/**
+	 * The default is to keep the pool of random data on the heap.
+	 */
+	public static final String VALUE_POOL_OFFHEAP_PROPERTY_DEFAULT="false";
+
+	/**
+	 * The random data that field values are sliced from, or null to generate each value afresh.
+	 */
+	RandomDataPool valuepool;
+
 	/**
 	 * Generator object that produces field lengths.  The value of this depends on the properties that start with "FIELD_LENGTH_".
 	 */
@@ -147,6 +176,46 @@ public class CoreWorkload extends Workload
 
 	boolean writeallfields;
 
+	/**
+	 * The name of the property for deciding whether each client thread reuses the same maps and sets for the
+	 * records of all its operations (true), rather than allocating new ones for each operation (false). When
+	 * they are reused, a DB must not keep a reference to them once an operation has returned (see DB), which
+	 * bindings written before this option existed may do, so it is off unless asked for.
+	 */
+	public static final String REUSE_RECORDS_PROPERTY="reuserecords";
+
+	/**
+	 * The default value for the reuserecords property.
+	 */
+	public static final String REUSE_RECORDS_PROPERTY_DEFAULT="false";
+
+	boolean reuserecords;
+
+	/**
+	 * The names of the fields, built once so that operations do not build them again.
+	 */
+	String[] fieldnames;
+
+	/**
+	 * The maps and sets that one client thread reuses for the records of its operations.
+	 */
+	static class Records
+	{
+		final HashMap<String,ByteIterator> values;
+		final HashMap<String,ByteIterator> result;
+		final HashSet<String> fields;
+		final Vector<HashMap<String,ByteIterator>> results=new Vector<HashMap<String,ByteIterator>>();
+
+		Records(int fieldcount)
+		{
+			//large enough that they are never resized
+			int capacity=fieldcount*4/3+1;
+			values=new HashMap<String,ByteIterator>(capacity);
+			result=new HashMap<String,ByteIterator>(capacity);
+			fields=new HashSet<String>(capacity);
+		}
+	}
+
 
 	/**
 	 * The name of the property for the proportion of transactions that are reads.
@@ -262,9 +331,26 @@ public class CoreWorkload extends Workload
 
 	DiscreteGenerator operationchooser;
 
+	/**
+	 * The kinds of transaction operation, and the kind of each value of the operation chooser, by its index, so
+	 * that the operation is chosen without comparing strings.
+	 */
+	static final int READ=0;
+	static final int UPDATE=1;
+	static final int INSERT=2;
+	static final int SCAN=3;
+	static final int READMODIFYWRITE=4;
+
+	int[] operations;
+
+	/**
+	 * The names under which the chosen transaction operations are measured.
+	 */
+	HashSet<String> transactionoperations;
+
 	IntegerGenerator keychooser;
 
-	Generator fieldchooser;
+	IntegerGenerator fieldchooser;
 
 	CounterGenerator transactioninsertkeysequence;
 	
@@ -272,7 +358,7 @@ public class CoreWorkload extends Workload
 	
 	boolean orderedinserts;
 
-	int recordcount;
+	long recordcount;
 	
 	protected static IntegerGenerator getFieldLengthGenerator(Properties p) throws WorkloadException{
 		IntegerGenerator fieldlengthgenerator;
@@ -307,21 +393,33 @@ public class CoreWorkload extends Workload
 		
 		fieldcount=Integer.parseInt(p.getProperty(FIELD_COUNT_PROPERTY,FIELD_COUNT_PROPERTY_DEFAULT));
 		fieldlengthgenerator = CoreWorkload.getFieldLengthGenerator(p);
+		int valuepoolsize=Integer.parseInt(p.getProperty(VALUE_POOL_SIZE_PROPERTY,VALUE_POOL_SIZE_PROPERTY_DEFAULT));
+		if (valuepoolsize>0)
+		{
+			valuepool=new RandomDataPool(valuepoolsize,Boolean.parseBoolean(p.getProperty(VALUE_POOL_OFFHEAP_PROPERTY,VALUE_POOL_OFFHEAP_PROPERTY_DEFAULT)));
+		}
 		
 		double readproportion=Double.parseDouble(p.getProperty(READ_PROPORTION_PROPERTY,READ_PROPORTION_PROPERTY_DEFAULT));
 		double updateproportion=Double.parseDouble(p.getProperty(UPDATE_PROPORTION_PROPERTY,UPDATE_PROPORTION_PROPERTY_DEFAULT));
 		double insertproportion=Double.parseDouble(p.getProperty(INSERT_PROPORTION_PROPERTY,INSERT_PROPORTION_PROPERTY_DEFAULT));
 		double scanproportion=Double.parseDouble(p.getProperty(SCAN_PROPORTION_PROPERTY,SCAN_PROPORTION_PROPERTY_DEFAULT));
 		double readmodifywriteproportion=Double.parseDouble(p.getProperty(READMODIFYWRITE_PROPORTION_PROPERTY,READMODIFYWRITE_PROPORTION_PROPERTY_DEFAULT));
-		recordcount=Integer.parseInt(p.getProperty(Client.RECORD_COUNT_PROPERTY));
+		recordcount=Long.parseLong(p.getProperty(Client.RECORD_COUNT_PROPERTY));
 		String requestdistrib=p.getProperty(REQUEST_DISTRIBUTION_PROPERTY,REQUEST_DISTRIBUTION_PROPERTY_DEFAULT);
 		int maxscanlength=Integer.parseInt(p.getProperty(MAX_SCAN_LENGTH_PROPERTY,MAX_SCAN_LENGTH_PROPERTY_DEFAULT));
 		String scanlengthdistrib=p.getProperty(SCAN_LENGTH_DISTRIBUTION_PROPERTY,SCAN_LENGTH_DISTRIBUTION_PROPERTY_DEFAULT);
 		
-		int insertstart=Integer.parseInt(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
+		long insertstart=Long.parseLong(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
 		
 		readallfields=Boolean.parseBoolean(p.getProperty(READ_ALL_FIELDS_PROPERTY,READ_ALL_FIELDS_PROPERTY_DEFAULT));
 		writeallfields=Boolean.parseBoolean(p.getProperty(WRITE_ALL_FIELDS_PROPERTY,WRITE_ALL_FIELDS_PROPERTY_DEFAULT));
+		reuserecords=Boolean.parseBoolean(p.getProperty(REUSE_RECORDS_PROPERTY,REUSE_RECORDS_PROPERTY_DEFAULT));
+
+		fieldnames=new String[fieldcount];
+		for (int i=0; i<fieldcount; i++)
+		{
+			fieldnames[i]=("field"+i).intern();
+		}
 		
 		if (p.getProperty(INSERT_ORDER_PROPERTY,INSERT_ORDER_PROPERTY_DEFAULT).compareTo("hashed")==0)
 		{
@@ -342,29 +440,60 @@ public class CoreWorkload extends Workload
 
 		keysequence=new CounterGenerator(insertstart);
 		operationchooser=new DiscreteGenerator();
+		Vector<Integer> chosen=new Vector<Integer>();
 		if (readproportion>0)
 		{
 			operationchooser.addValue(readproportion,"READ");
+			chosen.add(READ);
 		}
 
 		if (updateproportion>0)
 		{
 			operationchooser.addValue(updateproportion,"UPDATE");
+			chosen.add(UPDATE);
 		}
 
 		if (insertproportion>0)
 		{
 			operationchooser.addValue(insertproportion,"INSERT");
+			chosen.add(INSERT);
 		}
 		
 		if (scanproportion>0)
 		{
 			operationchooser.addValue(scanproportion,"SCAN");
+			chosen.add(SCAN);
 		}
 		
 		if (readmodifywriteproportion>0)
 		{
 			operationchooser.addValue(readmodifywriteproportion,"READMODIFYWRITE");
+			chosen.add(READMODIFYWRITE);
+		}
+		operations=new int[chosen.size()];
+		transactionoperations=new HashSet<String>();
+		for (int i=0; i<operations.length; i++)
+		{
+			operations[i]=chosen.get(i);
+			switch (operations[i])
+			{
+			case READ:
+				transactionoperations.add("READ");
+				break;
+			case UPDATE:
+				transactionoperations.add("UPDATE");
+				break;
+			case INSERT:
+				transactionoperations.add("INSERT");
+				break;
+			case SCAN:
+				transactionoperations.add("SCAN");
+				break;
+			default:
+				transactionoperations.add("READ");
+				transactionoperations.add("UPDATE");
+				transactionoperations.add("READ-MODIFY-WRITE");
+			}
 		}
 
 		transactioninsertkeysequence=new CounterGenerator(recordcount);
@@ -381,8 +510,8 @@ public class CoreWorkload extends Workload
 			//plus the number of predicted keys as the total keyspace. then, if the generator picks a key that hasn't been inserted yet, will
 			//just ignore it and pick another key. this way, the size of the keyspace doesn't change from the perspective of the scrambled zipfian generator
 			
-			int opcount=Integer.parseInt(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
-			int expectednewkeys=(int)(((double)opcount)*insertproportion*2.0); //2 is fudge factor
+			long opcount=Long.parseLong(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
+			long expectednewkeys=(long)(((double)opcount)*insertproportion*2.0); //2 is fudge factor
 			
 			keychooser=new ScrambledZipfianGenerator(recordcount+expectednewkeys);
 		}
@@ -427,25 +556,119 @@ public class CoreWorkload extends Workload
  		}
 		return "user"+keynum;
 	}
+	ByteIterator buildValue() {
+		int length=fieldlengthgenerator.nextInt();
+		if (valuepool!=null)
+		{
+			return valuepool.next(length);
+		}
+		return new RandomByteIterator(length);
+	}
+	/**
+	 * Return the records to reuse for the operations of a client thread, or null to allocate new ones.
+	 */
+	static Records records(Object threadstate) {
+		return (threadstate instanceof Records) ? (Records)threadstate : null;
+	}
 	HashMap<String, ByteIterator> buildValues() {
- 		HashMap<String,ByteIterator> values=new HashMap<String,ByteIterator>();
+		return buildValues(null);
+	}
+	HashMap<String, ByteIterator> buildValues(Records records) {
+		HashMap<String,ByteIterator> values;
+		if (records!=null)
+		{
+			values=records.values;
+			values.clear();
+		}
+		else
+		{
+			values=new HashMap<String,ByteIterator>();
+		}
 
  		for (int i=0; i<fieldcount; i++)
  		{
- 			String fieldkey="field"+i;
- 			ByteIterator data= new RandomByteIterator(fieldlengthgenerator.nextInt());
- 			values.put(fieldkey,data);
+ 			ByteIterator data= buildValue();
+ 			values.put(fieldnames[i],data);
  		}
 		return values;
 	}
+	HashSet<String> buildFields() {
+		return buildFields(null);
+	}
+	HashSet<String> buildFields(Records records) {
+		if (readallfields)
+		{
+			return null;
+		}
+		//read a random field
+		HashSet<String> fields;
+		if (records!=null)
+		{
+			fields=records.fields;
+			fields.clear();
+		}
+		else
+		{
+			fields=new HashSet<String>();
+		}
+		fields.add(fieldnames[fieldchooser.nextInt()]);
+		return fields;
+	}
 	HashMap<String, ByteIterator> buildUpdate() {
+		return buildUpdate(null);
+	}
+	HashMap<String, ByteIterator> buildUpdate(Records records) {
 		//update a random field
-		HashMap<String, ByteIterator> values=new HashMap<String,ByteIterator>();
-		String fieldname="field"+fieldchooser.nextString();
-		ByteIterator data = new RandomByteIterator(fieldlengthgenerator.nextInt());
+		HashMap<String, ByteIterator> values;
+		if (records!=null)
+		{
+			values=records.values;
+			values.clear();
+		}
+		else
+		{
+			values=new HashMap<String,ByteIterator>();
+		}
+		String fieldname=fieldnames[fieldchooser.nextInt()];
+		ByteIterator data = buildValue();
 		values.put(fieldname,data);
 		return values;
 	}
+	HashMap<String, ByteIterator> buildResult(Records records) {
+		if (records!=null)
+		{
+			records.result.clear();
+			return records.result;
+		}
+		return new HashMap<String,ByteIterator>();
+	}
+	Vector<HashMap<String, ByteIterator>> buildResults(Records records) {
+		if (records!=null)
+		{
+			records.results.clear();
+			return records.results;
+		}
+		return new Vector<HashMap<String,ByteIterator>>();
+	}
+
+	/**
+	 * Give each client thread the records it reuses for its operations, unless they are not to be reused.
+	 */
+	@Override
+	public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException
+	{
+		return reuserecords ? new Records(fieldcount) : null;
+	}
+
+	/**
+	 * Return the names under which the transaction operations chosen by the proportions are measured; a
+	 * read-modify-write is also measured as a read and an update.
+	 */
+	@Override
+	public Set<String> getTransactionOperations()
+	{
+		return transactionoperations;
+	}
 
 	/**
 	 * Do one insert operation. Because it will be called concurrently from multiple client threads, this 
@@ -455,15 +678,27 @@ public class CoreWorkload extends Workload
 	 */
 	public boolean doInsert(DB db, Object threadstate)
 	{
-		int keynum=keysequence.nextInt();
+		long keynum=keysequence.nextLong();
 		String dbkey = buildKeyName(keynum);
-		HashMap<String, ByteIterator> values = buildValues();
+		HashMap<String, ByteIterator> values = buildValues(records(threadstate));
 		if (db.insert(table,dbkey,values) == 0)
 			return true;
 		else
 			return false;
 	}
 
+	/**
+	 * Do one insert operation without waiting for it to complete. The callback is passed the return code of the insert.
+	 */
+	public boolean doInsertAsync(DB db, Object threadstate, DBCallback callback)
+	{
+		long keynum=keysequence.nextLong();
+		String dbkey = buildKeyName(keynum);
+		HashMap<String, ByteIterator> values = buildValues();
+		db.insertAsync(table,dbkey,values,callback);
+		return true;
+	}
+
 	/**
 	 * Do one transaction operation. Because it will be called concurrently from multiple client threads, this 
 	 * function must be thread safe. However, avoid synchronized, or the threads will block waiting for each 
@@ -472,143 +707,196 @@ public class CoreWorkload extends Workload
 	 */
 	public boolean doTransaction(DB db, Object threadstate)
 	{
-		String op=operationchooser.nextString();
-
-		if (op.compareTo("READ")==0)
-		{
-			doTransactionRead(db);
-		}
-		else if (op.compareTo("UPDATE")==0)
-		{
-			doTransactionUpdate(db);
-		}
-		else if (op.compareTo("INSERT")==0)
+		Records records=records(threadstate);
+		switch (operations[operationchooser.nextIndex()])
 		{
-			doTransactionInsert(db);
+		case READ:
+			doTransactionRead(db,records);
+			break;
+		case UPDATE:
+			doTransactionUpdate(db,records);
+			break;
+		case INSERT:
+			doTransactionInsert(db,records);
+			break;
+		case SCAN:
+			doTransactionScan(db,records);
+			break;
+		default:
+			doTransactionReadModifyWrite(db,records);
 		}
-		else if (op.compareTo("SCAN")==0)
-		{
-			doTransactionScan(db);
-		}
-		else
+		
+		return true;
+	}
+
+	/**
+	 * Do one transaction operation without waiting for it to complete. The callback is invoked once the whole
+	 * transaction, including both halves of a read-modify-write, has completed.
+	 */
+	public boolean doTransactionAsync(DB db, Object threadstate, DBCallback callback)
+	{
+		switch (operations[operationchooser.nextIndex()])
 		{
-			doTransactionReadModifyWrite(db);
+		case READ:
+			db.readAsync(table,buildKeyName(nextKeynum()),buildFields(),new HashMap<String,ByteIterator>(),callback);
+			break;
+		case UPDATE:
+			String keyname=buildKeyName(nextKeynum());
+			db.updateAsync(table,keyname,writeallfields ? buildValues() : buildUpdate(),callback);
+			break;
+		case INSERT:
+			String dbkey=buildKeyName(transactioninsertkeysequence.nextLong());
+			db.insertAsync(table,dbkey,buildValues(),callback);
+			break;
+		case SCAN:
+			String startkeyname=buildKeyName(nextKeynum());
+			db.scanAsync(table,startkeyname,scanlength.nextInt(),buildFields(),new Vector<HashMap<String,ByteIterator>>(),callback);
+			break;
+		default:
+			doTransactionReadModifyWriteAsync(db,callback);
 		}
-		
+
 		return true;
 	}
 
-    int nextKeynum() {
-        int keynum;
+	/**
+	 * Read a record and, once the read has completed, write it back; the read-modify-write is timed as a whole.
+	 */
+	public void doTransactionReadModifyWriteAsync(final DB db, final DBCallback callback)
+	{
+		final String keyname=buildKeyName(nextKeynum());
+		HashSet<String> fields=buildFields();
+		final HashMap<String,ByteIterator> values=writeallfields ? buildValues() : buildUpdate();
+
+		final Measurements measurements=Measurements.getMeasurements();
+		final long ist=measurements.getIntendedStartTimeNs();
+		final long st=System.nanoTime();
+
+		db.readAsync(table,keyname,fields,new HashMap<String,ByteIterator>(),new DBCallback()
+		{
+			public void completed(int returncode)
+			{
+				db.updateAsync(table,keyname,values,new DBCallback()
+				{
+					public void completed(int returncode)
+					{
+						long en=System.nanoTime();
+						measurements.measure("READ-MODIFY-WRITE", (int)((en-st)/1000));
+						measurements.measureIntended("READ-MODIFY-WRITE", (int)((en-ist)/1000));
+						callback.completed(returncode);
+					}
+				});
+			}
+		});
+	}
+
+    long nextKeynum() {
+        long keynum;
         if(keychooser instanceof ExponentialGenerator) {
             do
                 {
-                    keynum=transactioninsertkeysequence.lastInt() - keychooser.nextInt();
+                    keynum=transactioninsertkeysequence.lastLong() - keychooser.nextLong();
                 }
             while(keynum < 0);
         } else {
             do
                 {
-                    keynum=keychooser.nextInt();
+                    keynum=keychooser.nextLong();
                 }
-            while (keynum > transactioninsertkeysequence.lastInt());
+            while (keynum > transactioninsertkeysequence.lastLong());
         }
         return keynum;
     }
 
 	public void doTransactionRead(DB db)
+	{
+		doTransactionRead(db,null);
+	}
+
+	void doTransactionRead(DB db, Records records)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 		
 		String keyname = buildKeyName(keynum);
 		
-		HashSet<String> fields=null;
-
-		if (!readallfields)
-		{
-			//read a random field  
-			String fieldname="field"+fieldchooser.nextString();
+		HashSet<String> fields=buildFields(records);
 
-			fields=new HashSet<String>();
-			fields.add(fieldname);
-		}
-
-		db.read(table,keyname,fields,new HashMap<String,ByteIterator>());
+		db.read(table,keyname,fields,buildResult(records));
 	}
 	
 	public void doTransactionReadModifyWrite(DB db)
+	{
+		doTransactionReadModifyWrite(db,null);
+	}
+
+	void doTransactionReadModifyWrite(DB db, Records records)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String keyname = buildKeyName(keynum);
 
-		HashSet<String> fields=null;
-
-		if (!readallfields)
-		{
-			//read a random field  
-			String fieldname="field"+fieldchooser.nextString();
-
-			fields=new HashSet<String>();
-			fields.add(fieldname);
-		}
+		HashSet<String> fields=buildFields(records);
 		
 		HashMap<String,ByteIterator> values;
 
 		if (writeallfields)
 		{
 		   //new data for all the fields
-		   values = buildValues();
+		   values = buildValues(records);
 		}
 		else
 		{
 		   //update a random field
-		   values = buildUpdate();
+		   values = buildUpdate(records);
 		}
 
 		//do the transaction
-		
+
+		Measurements measurements=Measurements.getMeasurements();
+		long ist=measurements.getIntendedStartTimeNs();
 		long st=System.nanoTime();
 
-		db.read(table,keyname,fields,new HashMap<String,ByteIterator>());
+		db.read(table,keyname,fields,buildResult(records));
 		
 		db.update(table,keyname,values);
 
 		long en=System.nanoTime();
 		
-		Measurements.getMeasurements().measure("READ-MODIFY-WRITE", (int)((en-st)/1000));
+		measurements.measure("READ-MODIFY-WRITE", (int)((en-st)/1000));
+		measurements.measureIntended("READ-MODIFY-WRITE", (int)((en-ist)/1000));
 	}
 	
 	public void doTransactionScan(DB db)
+	{
+		doTransactionScan(db,null);
+	}
+
+	void doTransactionScan(DB db, Records records)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String startkeyname = buildKeyName(keynum);
 		
 		//choose a random scan length
 		int len=scanlength.nextInt();
 
-		HashSet<String> fields=null;
+		HashSet<String> fields=buildFields(records);
 
-		if (!readallfields)
-		{
-			//read a random field  
-			String fieldname="field"+fieldchooser.nextString();
-
-			fields=new HashSet<String>();
-			fields.add(fieldname);
-		}
-
-		db.scan(table,startkeyname,len,fields,new Vector<HashMap<String,ByteIterator>>());
+		db.scan(table,startkeyname,len,fields,buildResults(records));
 	}
 
 	public void doTransactionUpdate(DB db)
+	{
+		doTransactionUpdate(db,null);
+	}
+
+	void doTransactionUpdate(DB db, Records records)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String keyname=buildKeyName(keynum);
 
@@ -617,25 +905,30 @@ public class CoreWorkload extends Workload
 		if (writeallfields)
 		{
 		   //new data for all the fields
-		   values = buildValues();
+		   values = buildValues(records);
 		}
 		else
 		{
 		   //update a random field
-		   values = buildUpdate();
+		   values = buildUpdate(records);
 		}
 
 		db.update(table,keyname,values);
 	}
 
 	public void doTransactionInsert(DB db)
+	{
+		doTransactionInsert(db,null);
+	}
+
+	void doTransactionInsert(DB db, Records records)
 	{
 		//choose the next key
-		int keynum=transactioninsertkeysequence.nextInt();
+		long keynum=transactioninsertkeysequence.nextLong();
 
 		String dbkey = buildKeyName(keynum);
 
-		HashMap<String, ByteIterator> values = buildValues();
+		HashMap<String, ByteIterator> values = buildValues(records);
 		db.insert(table,dbkey,values);
 	}
 }
@@ -0,0 +1,32 @@
+package com.yahoo.ycsb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestClient {
+  @Test
+  public void testLaterPhasesCannotChangeTheMeasurements() throws Exception {
+    File phase = File.createTempFile("ycsb-phase", ".properties");
+    try {
+      FileWriter out = new FileWriter(phase);
+      out.write("readproportion=1\nmeasurement.interval=both\n");
+      out.close();
+      Properties props = new Properties();
+      props.setProperty(Client.PHASES_PROPERTY, "load,t:" + phase.getPath());
+      props.setProperty(Client.WORKLOAD_PROPERTY, "com.yahoo.ycsb.workloads.CoreWorkload");
+      props.setProperty("db", BasicDB.class.getName());
+      try {
+        Client.runPhases(props, new Properties(), false, "");
+        fail("the second phase changed the measurements");
+      } catch (ClientException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("Phase 2 sets measurement.interval"));
+      }
+    } finally {
+      phase.delete();
+    }
+  }
+}
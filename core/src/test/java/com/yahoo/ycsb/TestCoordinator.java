@@ -0,0 +1,126 @@
+package com.yahoo.ycsb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestCoordinator {
+  /** A DB whose reads fail with an exception, as a buggy binding's might. */
+  public static class FailingDB extends BasicDB {
+    @Override
+    public int read(String table, String key, Set<String> fields, HashMap<String, ByteIterator> result) {
+      throw new IllegalStateException("read failed");
+    }
+  }
+
+  private static int freePort() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    return port;
+  }
+
+  /** Start a worker in a JVM of its own, and wait until it is listening. */
+  private static Process startWorker(int port) throws Exception {
+    ProcessBuilder builder = new ProcessBuilder(
+        new File(System.getProperty("java.home"), "bin/java").getPath(),
+        "-cp", System.getProperty("java.class.path"),
+        Worker.class.getName(), "-port", Integer.toString(port));
+    builder.redirectErrorStream(true);
+    final Process worker = builder.start();
+    final CountDownLatch listening = new CountDownLatch(1);
+    Thread reader = new Thread() {
+      public void run() {
+        try {
+          BufferedReader in = new BufferedReader(new InputStreamReader(worker.getInputStream()));
+          String line;
+          while ((line = in.readLine()) != null) {
+            if (line.startsWith("Waiting for a coordinator")) {
+              listening.countDown();
+            }
+          }
+        } catch (Exception e) {
+        }
+      }
+    };
+    reader.setDaemon(true);
+    reader.start();
+    assertTrue("worker on port " + port + " did not start", listening.await(30, TimeUnit.SECONDS));
+    return worker;
+  }
+
+  private static long exported(File file, String metric, String measurement) throws Exception {
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      String prefix = "[" + metric + "], " + measurement + ", ";
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith(prefix)) {
+          return (long) Double.parseDouble(line.substring(prefix.length()));
+        }
+      }
+      return 0;
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testTwoWorkersOnLocalhostAreMerged() throws Exception {
+    int port1 = freePort();
+    int port2 = freePort();
+    Process worker1 = startWorker(port1);
+    Process worker2 = startWorker(port2);
+    File export = File.createTempFile("ycsb-coordinator", ".txt");
+    try {
+      Properties props = new Properties();
+      props.setProperty(Coordinator.WORKERS_PROPERTY, "127.0.0.1:" + port1 + ",127.0.0.1:" + port2);
+      props.setProperty(Coordinator.INTERVAL_PROPERTY, "0.2");
+      props.setProperty(Client.WORKLOAD_PROPERTY, "com.yahoo.ycsb.workloads.NoSuchWorkload");
+      props.setProperty("db", BasicDB.class.getName());
+      props.setProperty(BasicDB.VERBOSE, "false");
+      props.setProperty(Client.RECORD_COUNT_PROPERTY, "100");
+      props.setProperty(Client.OPERATION_COUNT_PROPERTY, "1000");
+      props.setProperty("threadcount", "2");
+      props.setProperty("exportfile", export.getPath());
+
+      // a run the workers cannot set up is reported back, and leaves them waiting for the next
+      try {
+        Coordinator.run(props, true, false, "");
+        fail("the workers set up a workload that does not exist");
+      } catch (ClientException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("NoSuchWorkload"));
+      }
+
+      props.setProperty(Client.WORKLOAD_PROPERTY, "com.yahoo.ycsb.workloads.CoreWorkload");
+
+      // so does a run in which a client thread fails
+      props.setProperty("db", FailingDB.class.getName());
+      try {
+        Coordinator.run(props, true, false, "");
+        fail("the client threads did not fail");
+      } catch (ClientException e) {
+      }
+
+      props.setProperty("db", BasicDB.class.getName());
+      Coordinator.run(props, true, true, "");
+
+      assertEquals(1000, exported(export, "READ", "Operations") + exported(export, "UPDATE", "Operations"));
+      assertEquals(1000, exported(export, "READ", "Return=0") + exported(export, "UPDATE", "Return=0"));
+    } finally {
+      worker1.destroy();
+      worker2.destroy();
+      export.delete();
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package com.yahoo.ycsb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestOperationTrace {
+  private static final long MS = 1000000;
+
+  private static OperationTrace newTrace(File file, String threshold, String samplerate, String buffersize) throws Exception {
+    Properties props = new Properties();
+    props.setProperty(OperationTrace.TRACE_FILE_PROPERTY, file.getPath());
+    props.setProperty(OperationTrace.TRACE_THRESHOLD_PROPERTY, threshold);
+    props.setProperty(OperationTrace.TRACE_SAMPLE_RATE_PROPERTY, samplerate);
+    props.setProperty(OperationTrace.TRACE_BUFFER_SIZE_PROPERTY, buffersize);
+    return new OperationTrace(props);
+  }
+
+  private static Vector<String> lines(File file) throws Exception {
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      in.close();
+    }
+    return lines;
+  }
+
+  @Test
+  public void testSlowOperationsAreTracedWithEveryColumn() throws Exception {
+    File file = File.createTempFile("ycsb-trace", ".csv");
+    try {
+      OperationTrace trace = newTrace(file, "1000", "0", "16");
+      long before = System.currentTimeMillis();
+      OperationTrace.setClientThread(7);
+      trace.record("READ", "user1", 0, 0, 2 * MS, 100);
+      trace.record("UPDATE", "user2", 0, 0, MS / 2, 100);
+      // an operation completed on another thread is traced under the client thread that issued it
+      trace.record(3, "SCAN", "user3", 0, 0, 2 * MS, 100);
+      trace.flush();
+      trace.stop();
+
+      Vector<String> lines = lines(file);
+      assertEquals(3, lines.size());
+      assertEquals("Timestamp(ms),Thread,Operation,Key,Latency(us),Return,Payload(bytes),Reason", lines.get(0));
+      String[] columns = lines.get(1).split(",");
+      assertEquals(8, columns.length);
+      assertTrue(Long.parseLong(columns[0]) >= before);
+      assertEquals("7", columns[1]);
+      assertEquals("READ", columns[2]);
+      assertEquals("user1", columns[3]);
+      assertEquals("2000", columns[4]);
+      assertEquals("0", columns[5]);
+      assertEquals("100", columns[6]);
+      assertEquals("slow", columns[7]);
+      assertEquals("3", lines.get(2).split(",")[1]);
+    } finally {
+      OperationTrace.setClientThread(-1);
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testSampledOperationsAreTracedWhateverTheirLatency() throws Exception {
+    File file = File.createTempFile("ycsb-trace", ".csv");
+    try {
+      OperationTrace trace = newTrace(file, "1000", "1", "16");
+      trace.record("READ", "user1", 0, 0, MS / 2, 100);
+      trace.record("READ", "user2", -1, 0, 2 * MS, 100);
+      trace.flush();
+      trace.stop();
+
+      Vector<String> lines = lines(file);
+      assertEquals(3, lines.size());
+      assertTrue(lines.get(1), lines.get(1).endsWith(",READ,user1,500,0,100,sample"));
+      assertTrue(lines.get(2), lines.get(2).endsWith(",READ,user2,2000,-1,100,slow"));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testOverflowIsNotedAsLost() throws Exception {
+    File file = File.createTempFile("ycsb-trace", ".csv");
+    try {
+      OperationTrace trace = newTrace(file, "0", "0", "3");
+      for (int i = 0; i < 10; i++) {
+        trace.record("READ", "user" + i, 0, 0, MS, 0);
+      }
+      trace.flush();
+      trace.record("READ", "user10", 0, 0, MS, 0);
+      trace.flush();
+      trace.stop();
+
+      // the buffer is rounded up to 4, so the 4 most recent operations are kept
+      Vector<String> lines = lines(file);
+      assertEquals(7, lines.size());
+      for (int i = 0; i < 4; i++) {
+        assertTrue(lines.get(i + 1), lines.get(i + 1).contains(",user" + (i + 6) + ","));
+      }
+      assertEquals("# 6 operations were traced faster than they could be written out, and lost", lines.get(5));
+      // the count starts again after it is noted
+      assertTrue(lines.get(6), lines.get(6).contains(",user10,"));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testOverwrittenSlotsAreCountedAsLost() throws Exception {
+    File file = File.createTempFile("ycsb-trace", ".csv");
+    try {
+      OperationTrace trace = newTrace(file, "0", "0", "4");
+      for (int i = 0; i < 4; i++) {
+        trace.record("READ", "user" + i, 0, 0, MS, 0);
+      }
+      // as if a later operation overwrote the slot of user1 while it was being written out
+      OperationTrace.Entry later = new OperationTrace.Entry();
+      later._seq = 5;
+      trace._ring.set(1, later);
+      trace.flush();
+      trace.stop();
+
+      Vector<String> lines = lines(file);
+      assertEquals(5, lines.size());
+      assertTrue(lines.get(1).contains(",user0,"));
+      assertTrue(lines.get(2).contains(",user2,"));
+      assertTrue(lines.get(3).contains(",user3,"));
+      assertEquals("# 1 operations were traced faster than they could be written out, and lost", lines.get(4));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testClaimedSlotsAreLeftForTheNextFlush() throws Exception {
+    File file = File.createTempFile("ycsb-trace", ".csv");
+    try {
+      OperationTrace trace = newTrace(file, "0", "0", "4");
+      trace.record("READ", "user0", 0, 0, MS, 0);
+      // claim a slot without filling it yet, as a client thread between its two steps does
+      long seq = trace._head.getAndIncrement();
+      trace.record("READ", "user2", 0, 0, MS, 0);
+      trace.flush();
+      assertEquals(2, lines(file).size());
+
+      OperationTrace.Entry filled = new OperationTrace.Entry();
+      filled._seq = seq;
+      filled._clientthread = 0;
+      filled._op = "READ";
+      filled._key = "user1";
+      trace._ring.set((int) seq, filled);
+      trace.flush();
+      trace.stop();
+
+      Vector<String> lines = lines(file);
+      assertEquals(4, lines.size());
+      assertTrue(lines.get(2).contains(",user1,"));
+      assertTrue(lines.get(3).contains(",user2,"));
+    } finally {
+      file.delete();
+    }
+  }
+}
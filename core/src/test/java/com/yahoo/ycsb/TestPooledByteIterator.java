@@ -0,0 +1,74 @@
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestPooledByteIterator {
+  private static byte[] byteByByte(RandomDataPool pool, int start, int len) {
+    ByteIterator it = new PooledByteIterator(pool, start, len);
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) {
+      assertTrue(it.hasNext());
+      bytes[i] = it.nextByte();
+    }
+    assertFalse(it.hasNext());
+    return bytes;
+  }
+
+  @Test
+  public void testValuesArePrintable() {
+    RandomDataPool pool = new RandomDataPool(1000, false);
+    ByteIterator it = pool.next(500);
+    assertEquals(500, it.bytesLeft());
+    byte[] bytes = it.toArray();
+    assertEquals(500, bytes.length);
+    for (byte b : bytes) {
+      assertTrue(b >= ' ' && b < ' ' + 32);
+    }
+  }
+
+  @Test
+  public void testBulkReadsMatchByteReads() {
+    for (boolean offheap : new boolean[] {false, true}) {
+      RandomDataPool pool = new RandomDataPool(100, offheap);
+      // starts near the end of the pool and wraps around it more than once
+      byte[] expected = byteByByte(pool, 90, 250);
+      byte[] actual = new PooledByteIterator(pool, 90, 250).toArray();
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], actual[i]);
+        assertEquals(expected[i], pool.get((90 + i) % 100));
+      }
+    }
+  }
+
+  @Test
+  public void testPartialBulkReads() {
+    RandomDataPool pool = new RandomDataPool(64, false);
+    byte[] expected = byteByByte(pool, 10, 40);
+    ByteIterator it = new PooledByteIterator(pool, 10, 40);
+    byte[] buf = new byte[30];
+    assertEquals(30, it.nextBuf(buf, 5));
+    assertEquals(15, it.bytesLeft());
+    for (int i = 0; i < 25; i++) {
+      assertEquals(expected[i], buf[5 + i]);
+    }
+    assertEquals(expected[25], it.nextByte());
+  }
+
+  @Test
+  public void testBufferIsAViewOfThePool() {
+    RandomDataPool pool = new RandomDataPool(100, true);
+    byte[] expected = byteByByte(pool, 20, 50);
+    ByteIterator it = new PooledByteIterator(pool, 20, 50);
+    it.nextByte();
+    ByteBuffer buf = it.toByteBuffer();
+    assertFalse(it.hasNext());
+    assertTrue(buf.isReadOnly());
+    assertEquals(49, buf.remaining());
+    for (int i = 1; i < 50; i++) {
+      assertEquals(expected[i], buf.get());
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestRandom {
+  private static long[] draw(Random random, int n) {
+    long[] values = new long[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = random.nextLong();
+    }
+    return values;
+  }
+
+  @Test
+  public void testSameSeedGivesSameSequence() {
+    long[] a = draw(new FastRandom(42), 100);
+    long[] b = draw(new FastRandom(42), 100);
+    long[] c = draw(new FastRandom(43), 100);
+    for (int i = 0; i < a.length; i++) {
+      assertEquals(a[i], b[i]);
+    }
+    assertFalse(a[0] == c[0] && a[1] == c[1]);
+  }
+
+  @Test
+  public void testDrawsAreInRange() {
+    Random random = new FastRandom(1);
+    double sum = 0;
+    int n = 100000;
+    for (int i = 0; i < n; i++) {
+      double d = random.nextDouble();
+      assertTrue(d >= 0 && d < 1);
+      int k = random.nextInt(10);
+      assertTrue(k >= 0 && k < 10);
+      sum += d;
+    }
+    assertEquals(0.5, sum / n, 0.01);
+  }
+
+  @Test
+  public void testThreadStreamsFollowTheSeed() {
+    Properties props = new Properties();
+    props.setProperty(Utils.SEED_PROPERTY, "42");
+
+    Utils.setRandomProperties(props);
+    Utils.setThreadRandom(3);
+    long[] a = draw(Utils.random(), 10);
+    Utils.setThreadRandom(4);
+    long[] other = draw(Utils.random(), 10);
+
+    Utils.setRandomProperties(props);
+    Utils.setThreadRandom(3);
+    long[] nextrun = draw(Utils.random(), 10);
+
+    props.setProperty(Utils.SEED_PROPERTY, "43");
+    Utils.setRandomProperties(props);
+    Utils.setThreadRandom(3);
+    long[] otherseed = draw(Utils.random(), 10);
+
+    for (int i = 0; i < a.length; i++) {
+      assertEquals(a[i], nextrun[i]);
+    }
+    assertFalse(a[0] == other[0]);
+    assertFalse(a[0] == otherseed[0]);
+  }
+
+  @Test
+  public void testJavaRandomCanBeChosen() {
+    Properties props = new Properties();
+    props.setProperty(Utils.RANDOM_PROPERTY, "java");
+    Utils.setRandomProperties(props);
+    assertEquals(Random.class, Utils.random().getClass());
+    Utils.setRandomProperties(new Properties());
+    assertEquals(FastRandom.class, Utils.random().getClass());
+  }
+}
@@ -0,0 +1,52 @@
+package com.yahoo.ycsb;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestRateLimiter {
+  @Test
+  public void testReservationsAreEvenlySpaced() {
+    // 1.5 operations per ms: the interval is not a whole number of nanoseconds
+    RateLimiter limiter = new RateLimiter(1500);
+    long first = limiter.reserve();
+    long last = first;
+    for (int i = 0; i < 3000; i++) {
+      last = limiter.reserve();
+    }
+    // 3000 intervals of 666666.67ns, without accumulating rounding error
+    assertEquals(2000000000L, last - first, 1);
+  }
+
+  @Test
+  public void testBurstLimitsCatchUp() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(1000, 5);
+    limiter.reserve();
+    Thread.sleep(100);
+    long now = System.nanoTime();
+    long slot = limiter.reserve();
+    // the 100ms backlog is forgiven, apart from 5 operations' worth
+    assertTrue(slot >= now - 5000000L - 1);
+    assertTrue(slot < now);
+  }
+
+  @Test
+  public void testSetRate() {
+    RateLimiter limiter = new RateLimiter(1000);
+    limiter.setRate(250000);
+    assertEquals(250000.0, limiter.getRate(), 1.0);
+    long first = limiter.reserve();
+    long second = limiter.reserve();
+    assertEquals(4000L, second - first, 1);
+  }
+
+  @Test
+  public void testSkipBacklogStartsTheScheduleNow() throws InterruptedException {
+    // an unlimited burst would otherwise make up the whole delay
+    RateLimiter limiter = new RateLimiter(1000);
+    Thread.sleep(50);
+    limiter.skipBacklog();
+    long now = System.nanoTime();
+    long slot = limiter.reserve();
+    assertTrue(slot >= now - 1000000L);
+  }
+}
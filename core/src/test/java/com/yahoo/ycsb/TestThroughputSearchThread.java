@@ -0,0 +1,53 @@
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.workloads.CoreWorkload;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestThroughputSearchThread {
+  private static CoreWorkload workload(String readproportion, String readmodifywriteproportion) throws Exception {
+    Properties props = new Properties();
+    props.setProperty(CoreWorkload.READ_PROPORTION_PROPERTY, readproportion);
+    props.setProperty(CoreWorkload.UPDATE_PROPORTION_PROPERTY, "0");
+    props.setProperty(CoreWorkload.READMODIFYWRITE_PROPORTION_PROPERTY, readmodifywriteproportion);
+    props.setProperty(Client.RECORD_COUNT_PROPERTY, "10");
+    CoreWorkload workload = new CoreWorkload();
+    workload.init(props);
+    return workload;
+  }
+
+  @Test
+  public void testObjectivesForOperationsTheWorkloadIssuesAreAccepted() throws Exception {
+    ThroughputSearchThread.check(ThroughputSearchThread.parse("READ:99:10,Intended-READ:99:20"), workload("1", "0").getTransactionOperations());
+    ThroughputSearchThread.check(ThroughputSearchThread.parse("Corrected-UPDATE:99:10,READ-MODIFY-WRITE:50:5"), workload("0", "1").getTransactionOperations());
+  }
+
+  @Test
+  public void testObjectivesForOtherOperationsAreRejected() throws Exception {
+    for (String slo : new String[]{"REDA:99:10", "UPDATE:99:10", "Intended-SCAN:99:10"}) {
+      try {
+        ThroughputSearchThread.check(ThroughputSearchThread.parse(slo), workload("1", "0").getTransactionOperations());
+        fail(slo);
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testProbeFailsIfAnObjectiveWasNotMeasured() {
+    Vector<ThroughputSearchThread.Objective> objectives = ThroughputSearchThread.parse("READ:99:10,UPDATE:99:10");
+    ThroughputSearchThread search = new ThroughputSearchThread(objectives, null, null, null, new Properties());
+    Measurements probe = new Measurements(new Properties());
+    probe.measure("READ", 100);
+    assertFalse(search.passes(probe, 100, 100));
+    probe.measure("UPDATE", 100);
+    assertTrue(search.passes(probe, 100, 100));
+    probe.measure("UPDATE", 20000);
+    assertFalse(search.passes(probe, 100, 100));
+  }
+}
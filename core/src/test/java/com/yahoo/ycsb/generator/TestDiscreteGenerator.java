@@ -0,0 +1,36 @@
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestDiscreteGenerator {
+  @Test
+  public void testValuesAreChosenInProportionToTheirWeights() {
+    DiscreteGenerator chooser = new DiscreteGenerator();
+    double[] weights = {0.5, 0.0, 0.05, 0.3, 0.15};
+    for (int i = 0; i < weights.length; i++) {
+      chooser.addValue(weights[i], "OP" + i);
+    }
+    int draws = 1000000;
+    int[] counts = new int[weights.length];
+    for (int i = 0; i < draws; i++) {
+      counts[chooser.nextIndex()]++;
+    }
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals("OP" + i, weights[i], counts[i] / (double) draws, 0.005);
+    }
+  }
+
+  @Test
+  public void testStringsFollowTheIndices() {
+    DiscreteGenerator chooser = new DiscreteGenerator();
+    chooser.addValue(1, "READ");
+    assertEquals(0, chooser.nextIndex());
+    assertEquals("READ", chooser.nextString());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testNoValuesCannotBeChosen() {
+    new DiscreteGenerator().nextIndex();
+  }
+}
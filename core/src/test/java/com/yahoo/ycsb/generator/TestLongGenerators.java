@@ -0,0 +1,30 @@
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestLongGenerators {
+  private static final long BILLIONS = 8000000000L;
+
+  @Test
+  public void testCounterPassesIntegerRange() {
+    CounterGenerator counter = new CounterGenerator(Integer.MAX_VALUE);
+    assertEquals((long) Integer.MAX_VALUE, counter.nextLong());
+    assertEquals(Integer.MAX_VALUE + 1L, counter.nextLong());
+    assertEquals(Integer.MAX_VALUE + 1L, counter.lastLong());
+    assertEquals(Long.toString(Integer.MAX_VALUE + 1L), counter.lastString());
+  }
+
+  @Test
+  public void testUniformCoversLongRange() {
+    UniformIntegerGenerator uniform = new UniformIntegerGenerator(0, BILLIONS - 1);
+    boolean beyondint = false;
+    for (int i = 0; i < 1000; i++) {
+      long v = uniform.nextLong();
+      assertTrue(v >= 0 && v < BILLIONS);
+      assertEquals(v, uniform.lastLong());
+      beyondint |= v > Integer.MAX_VALUE;
+    }
+    assertTrue(beyondint);
+  }
+}
@@ -0,0 +1,40 @@
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestZipfianGenerator {
+  private static double slowZeta(long n, double theta) {
+    double sum = 0;
+    for (long i = n; i >= 1; i--) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    return sum;
+  }
+
+  @Test
+  public void testZetaMatchesTheSumOfItsTerms() {
+    for (double theta : new double[] {0.5, 0.99, 1.0, 1.5}) {
+      for (long n : new long[] {1, 10, 1999, 2001, 123456, 3000000}) {
+        double expected = slowZeta(n, theta);
+        double actual = ZipfianGenerator.zetastatic(n, theta);
+        assertEquals("theta=" + theta + " n=" + n, expected, actual, expected * 1e-12);
+      }
+    }
+  }
+
+  @Test
+  public void testZetaIsComputedIncrementally() {
+    double zeta = ZipfianGenerator.zetastatic(5000, 0.99);
+    double extended = ZipfianGenerator.zetastatic(5000, 2000000, 0.99, zeta);
+    assertEquals(ZipfianGenerator.zetastatic(2000000, 0.99), extended, extended * 1e-12);
+  }
+
+  @Test
+  public void testZetaOfBillionsIsQuick() {
+    long st = System.nanoTime();
+    double zeta = ZipfianGenerator.zetastatic(ScrambledZipfianGenerator.ITEM_COUNT, ScrambledZipfianGenerator.USED_ZIPFIAN_CONSTANT);
+    assertTrue(System.nanoTime() - st < 1000000000L);
+    assertEquals(ScrambledZipfianGenerator.ZETAN, zeta, ScrambledZipfianGenerator.ZETAN * 1e-10);
+  }
+}
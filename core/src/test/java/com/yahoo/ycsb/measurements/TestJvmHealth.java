@@ -0,0 +1,82 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestJvmHealth {
+  static volatile byte[] sink;
+
+  private static void allocate(int megabytes) {
+    for (int i = 0; i < megabytes; i++) {
+      sink = new byte[1024 * 1024];
+    }
+  }
+
+  @Test
+  public void testEachSampleCoversOnlyItsOwnInterval() throws Exception {
+    JvmHealth health = new JvmHealth(new Properties());
+    allocate(16);
+    Thread.sleep(50);
+    JvmHealth.Sample s = health.next();
+    assertTrue(s._length >= 50);
+    assertTrue(s._gctime >= 0);
+    assertTrue(s._gccount >= 0);
+    assertTrue(s._safepointtime >= -1);
+    assertTrue(s._cputime >= -1);
+    if (s._allocated >= 0) {
+      assertTrue(Long.toString(s._allocated), s._allocated >= 16 * 1024 * 1024);
+    }
+
+    // allocation by another live thread is counted, and its end does not make the total go backwards
+    final CountDownLatch allocated = new CountDownLatch(1);
+    final CountDownLatch end = new CountDownLatch(1);
+    Thread t = new Thread() {
+      public void run() {
+        allocate(8);
+        allocated.countDown();
+        try {
+          end.await();
+        } catch (InterruptedException e) {
+        }
+      }
+    };
+    t.start();
+    allocated.await();
+    s = health.next();
+    if (s._allocated >= 0) {
+      assertTrue(Long.toString(s._allocated), s._allocated >= 8 * 1024 * 1024);
+    }
+    end.countDown();
+    t.join();
+    s = health.next();
+    assertTrue(Long.toString(s._allocated), (s._allocated >= -1) && (s._allocated < 8 * 1024 * 1024));
+  }
+
+  @Test
+  public void testPausesAboveTheThresholdAreFlagged() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(JvmHealth.PAUSE_THRESHOLD_PROPERTY, "-1");
+    JvmHealth.Sample s = new JvmHealth(props).next();
+    assertTrue(s._paused);
+    assertTrue(s.toString(), s.toString().startsWith("[JVM GC(ms)="));
+    assertTrue(s.toString(), s.toString().endsWith(" CLIENT-PAUSED]"));
+
+    props.setProperty(JvmHealth.PAUSE_THRESHOLD_PROPERTY, Long.toString(Long.MAX_VALUE));
+    s = new JvmHealth(props).next();
+    assertFalse(s._paused);
+    assertFalse(s.toString(), s.toString().contains("CLIENT-PAUSED"));
+  }
+
+  @Test
+  public void testPauseTimeIsTheSafepointTimeIfKnown() {
+    JvmHealth.Sample s = new JvmHealth.Sample();
+    s._gctime = 30;
+    s._safepointtime = -1;
+    assertEquals(30, s.getPauseTime());
+    s._safepointtime = 45;
+    assertEquals(45, s.getPauseTime());
+  }
+}
@@ -0,0 +1,39 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestMeasurementsCorrection {
+  @Test
+  public void testStallIsBackFilled() {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_CORRECTION, "true");
+    props.setProperty("measurementtype", "hdrhistogram");
+    Measurements measurements = new Measurements(props);
+    measurements.setExpectedIntervalNs(1000000);
+    long interval = measurements.getExpectedIntervalNs();
+    for (int i = 0; i < 99; i++) {
+      measurements.measure("READ", 100);
+      measurements.measureCorrected("READ", 100, interval);
+    }
+    // one 100ms stall hides the 99 operations that should have been issued during it
+    measurements.measure("READ", 100000);
+    measurements.measureCorrected("READ", 100000, interval);
+
+    assertEquals(100L, measurements.getPercentileLatency("READ", 99));
+    long corrected = measurements.getPercentileLatency("Corrected-READ", 75);
+    assertTrue(corrected >= 51000 && corrected <= 51100);
+    assertEquals(100000L, measurements.getPercentileLatency("Corrected-READ", 100));
+  }
+
+  @Test
+  public void testNothingIsCorrectedUnlessAskedFor() {
+    Measurements measurements = new Measurements(new Properties());
+    measurements.setExpectedIntervalNs(1000000);
+    assertEquals(0L, measurements.getExpectedIntervalNs());
+    measurements.measureCorrected("READ", 100000, 1000000);
+    assertEquals(-1L, measurements.getPercentileLatency("Corrected-READ", 50));
+  }
+}
@@ -0,0 +1,201 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestMeasurementsMerge {
+  private static void send(Measurements from, Measurements to) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    from.write(out);
+    out.close();
+    to.merge(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void testMergedPercentilesAreThoseOfTheWhole() throws Exception {
+    Properties props = new Properties();
+    Measurements fast = new Measurements(props);
+    Measurements slow = new Measurements(props);
+    for (int i = 0; i < 98; i++) {
+      fast.measure("READ", 500);
+    }
+    slow.measure("READ", 7500);
+    slow.measure("READ", 9500);
+    slow.reportReturnCode("READ", 0);
+
+    Measurements merged = new Measurements(props);
+    send(fast, merged);
+    send(slow, merged);
+
+    // percentiles are reported at the end of their 1ms bucket, or the maximum if that is lower
+    assertEquals(1000L, merged.getPercentileLatency("READ", 98));
+    assertEquals(8000L, merged.getPercentileLatency("READ", 99));
+    assertEquals(9500L, merged.getPercentileLatency("READ", 100));
+    // neither client alone sees the merged 99th percentile
+    assertEquals(500L, fast.getPercentileLatency("READ", 99));
+    assertEquals(9500L, slow.getPercentileLatency("READ", 99));
+  }
+
+  @Test
+  public void testStripesAreMergedWhenReported() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_STRIPES, "4");
+    final Measurements measurements = new Measurements(props);
+    measurements.startSegment();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int latency = t * 1000;
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 1000; i++) {
+            measurements.measure("READ", latency);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    Measurements segment = measurements.endSegment();
+    assertEquals(1000L, measurements.getPercentileLatency("READ", 12.5));
+    assertEquals(7000L, measurements.getPercentileLatency("READ", 100));
+    assertEquals(4000L, segment.getPercentileLatency("READ", 50));
+
+    Measurements merged = new Measurements(props);
+    send(measurements, merged);
+    assertEquals(5000L, merged.getPercentileLatency("READ", 50.1));
+    assertNull(measurements.endSegment());
+  }
+
+  @Test
+  public void testEveryKindOfMeasurementIsSent() throws Exception {
+    for (String type : new String[] {"histogram", "hdrhistogram", "timeseries"}) {
+      Properties props = new Properties();
+      props.setProperty("measurementtype", type);
+      props.setProperty(Measurements.MEASUREMENT_PAYLOAD, "true");
+      Measurements from = new Measurements(props);
+      for (int i = 1; i <= 100; i++) {
+        from.measure("UPDATE", i * 100);
+      }
+      from.reportReturnCode("UPDATE", 0);
+      from.measurePayload("UPDATE", 1000, 100);
+
+      Measurements to = new Measurements(props);
+      send(from, to);
+      send(from, to);
+      assertEquals(type, from.getPercentileLatency("UPDATE", 50), to.getPercentileLatency("UPDATE", 50));
+      assertEquals(type, from.getPercentileLatency("UPDATE", 100), to.getPercentileLatency("UPDATE", 100));
+      assertTrue(type, to.merged().containsKey("Payload-UPDATE"));
+    }
+  }
+
+  @Test
+  public void testMalformedMeasurementsAreRejected() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(1);
+    out.writeByte(99);
+    out.writeUTF("READ");
+    out.close();
+    Measurements to = new Measurements(new Properties());
+    try {
+      to.merge(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      fail("an unknown kind of measurement was read");
+    } catch (IOException e) {
+      // expected
+    }
+    assertNull(to.merged().get("READ"));
+  }
+
+  @Test
+  public void testEachIntervalHoldsOnlyItsOwnMeasurements() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_STRIPES, "4");
+    final Measurements measurements = new Measurements(props);
+    int series = measurements.addIntervals();
+    for (int interval = 1; interval <= 3; interval++) {
+      final int latency = interval * 1000;
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        threads[t] = new Thread() {
+          public void run() {
+            for (int i = 0; i < 100; i++) {
+              measurements.measure("READ", latency);
+            }
+            measurements.reportReturnCode("READ", 0);
+          }
+        };
+        threads[t].start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      HashMap<String, OneMeasurementHdrHistogram> ended = measurements.nextInterval(series);
+      OneMeasurementHdrHistogram read = ended.get("READ");
+      assertEquals(400, read.operations);
+      assertEquals(latency, read.min);
+      assertEquals(latency, read.max);
+      assertEquals(4, read.returncodes.get(0)[0]);
+    }
+
+    // an interval with nothing measured reports nothing, in the same histograms as before
+    HashMap<String, OneMeasurementHdrHistogram> before = measurements.nextInterval(series);
+    assertEquals(0, before.get("READ").operations);
+    assertSame(before.get("READ"), measurements.nextInterval(series).get("READ"));
+    assertEquals(3000L, measurements.getPercentileLatency("READ", 100));
+  }
+
+  @Test
+  public void testSeriesShareOneIntervalHistogramPerStripe() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_STRIPES, "2");
+    Measurements measurements = new Measurements(props);
+    int status = measurements.addIntervals();
+    int log = measurements.addIntervals();
+    for (Measurements.Stripe s : measurements.stripes) {
+      assertNotNull(s.interval);
+    }
+
+    measurements.measure("READ", 1000);
+    assertEquals(1, measurements.nextInterval(status).get("READ").operations);
+    measurements.measure("READ", 2000);
+    // the log has not ended an interval yet, so it sees what the status series ended as well
+    OneMeasurementHdrHistogram read = measurements.nextInterval(log).get("READ");
+    assertEquals(2, read.operations);
+    assertEquals(1000, read.min);
+    assertEquals(2000, read.max);
+    assertEquals(2, read._significantdigits);
+    assertEquals(1, measurements.nextInterval(status).get("READ").operations);
+    assertEquals(0, measurements.nextInterval(log).get("READ").operations);
+  }
+
+  @Test
+  public void testIntervalsFromSeveralClientsAreMerged() throws Exception {
+    HashMap<String, OneMeasurementHdrHistogram> merged = new HashMap<String, OneMeasurementHdrHistogram>();
+    for (int latency : new int[]{1000, 9000}) {
+      Measurements measurements = new Measurements(new Properties());
+      int series = measurements.addIntervals();
+      measurements.measure("READ", latency);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      Measurements.writeInterval(out, measurements.nextInterval(series));
+      out.close();
+      Measurements.mergeInterval(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), merged);
+    }
+    assertEquals(2, merged.get("READ").operations);
+    assertEquals(1000, merged.get("READ").min);
+    assertEquals(9000, merged.get("READ").max);
+    assertTrue(Measurements.getIntervalSummary(merged).contains("[READ Operations=2 "));
+  }
+}
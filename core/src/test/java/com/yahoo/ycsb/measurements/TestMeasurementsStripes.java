@@ -0,0 +1,78 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestMeasurementsStripes {
+  private static long operations(HashMap<String, ? extends OneMeasurement> measurements, String name) {
+    OneMeasurement m = measurements.get(name);
+    if (m instanceof OneMeasurementHistogram) {
+      return ((OneMeasurementHistogram) m).operations;
+    }
+    return m == null ? 0 : ((OneMeasurementHdrHistogram) m).operations;
+  }
+
+  @Test
+  public void testThreadsUpToTheStripeCountNeverShareALock() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_STRIPES, "8");
+    final Measurements measurements = new Measurements(props);
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int ops = (t + 1) * 1000;
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+          }
+          for (int i = 0; i < ops; i++) {
+            measurements.measure("READ", 100);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    // every stripe holds the operations of exactly one thread, so no thread ever waited for another
+    long[] perstripe = new long[8];
+    for (int i = 0; i < perstripe.length; i++) {
+      perstripe[i] = operations(measurements.stripes[i].data, "READ");
+    }
+    Arrays.sort(perstripe);
+    for (int i = 0; i < perstripe.length; i++) {
+      assertEquals((i + 1) * 1000L, perstripe[i]);
+    }
+    assertEquals(36000L, operations(measurements.merged(), "READ"));
+  }
+
+  @Test
+  public void testEachOperationUpdatesAtMostThreeHistogramsUnderTheLock() {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_STRIPES, "1");
+    Measurements measurements = new Measurements(props);
+    for (int i = 0; i < 3; i++) {
+      measurements.addIntervals();
+    }
+    measurements.startSegment();
+    measurements.measure("READ", 100);
+
+    // the run as a whole, the segment in progress and one interval histogram whatever the number of series
+    Measurements.Stripe s = measurements.stripes[0];
+    assertEquals(1, operations(s.data, "READ"));
+    assertEquals(1, operations(s.segment, "READ"));
+    assertEquals(1, operations(s.interval, "READ"));
+    assertEquals(1, s.interval.size());
+    assertTrue(s.spareinterval.isEmpty());
+  }
+}
@@ -0,0 +1,61 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestMetricsServer {
+  private static OneMeasurementHdrHistogram histogram(String name, int operations, int latency, int returncode) {
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram(name, new Properties());
+    for (int i = 0; i < operations; i++) {
+      h.measure(latency);
+      h.reportReturnCode(returncode);
+    }
+    return h;
+  }
+
+  private static List<String> format(MetricsServer server, long length, OneMeasurementHdrHistogram... histograms) throws Exception {
+    HashMap<String, OneMeasurementHdrHistogram> interval = new HashMap<String, OneMeasurementHdrHistogram>();
+    for (OneMeasurementHdrHistogram h : histograms) {
+      interval.put(h.getName(), h);
+    }
+    return Arrays.asList(new String(server.format(interval, length), "UTF-8").split("\n"));
+  }
+
+  @Test
+  public void testMetricsAreTotalledOverTheRun() throws Exception {
+    Measurements.setProperties(new Properties());
+    Properties props = new Properties();
+    props.setProperty(MetricsServer.METRICS_PORT_PROPERTY, "0");
+    MetricsServer server = new MetricsServer(props);
+    try {
+      format(server, 1000, histogram("READ", 100, 2000, 0), histogram("UPDATE", 10, 4000, -1));
+      List<String> page = format(server, 2000, histogram("READ", 50, 1000, 0));
+
+      assertEquals("# EOF", page.get(page.size() - 1));
+      assertTrue(page.contains("# TYPE ycsb_operations counter"));
+      assertTrue(page.contains("ycsb_operations_total{operation=\"READ\"} 150"));
+      assertTrue(page.contains("ycsb_operations_total{operation=\"UPDATE\"} 10"));
+      assertTrue(page.contains("ycsb_returns_total{operation=\"READ\",return=\"0\"} 150"));
+      assertTrue(page.contains("ycsb_returns_total{operation=\"UPDATE\",return=\"-1\"} 10"));
+
+      // quantiles are over the last interval only, and left out for operations it did not see
+      assertTrue(page.contains("ycsb_latency_seconds{operation=\"READ\",quantile=\"0.99\"} 0.001"));
+      for (String line : page) {
+        assertFalse(line, line.startsWith("ycsb_latency_seconds{operation=\"UPDATE\""));
+      }
+      assertTrue(page.contains("ycsb_latency_seconds_sum{operation=\"READ\"} 0.25"));
+      assertTrue(page.contains("ycsb_latency_seconds_count{operation=\"READ\"} 150"));
+      assertTrue(page.contains("ycsb_latency_seconds_sum{operation=\"UPDATE\"} 0.04"));
+
+      assertTrue(page.contains("ycsb_throughput_operations_per_second{operation=\"READ\"} 25.0"));
+      assertTrue(page.contains("ycsb_throughput_operations_per_second{operation=\"UPDATE\"} 0.0"));
+    } finally {
+      server.abandon();
+    }
+  }
+}
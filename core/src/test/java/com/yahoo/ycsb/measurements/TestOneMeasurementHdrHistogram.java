@@ -0,0 +1,96 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestOneMeasurementHdrHistogram {
+  @Test
+  public void testSubMillisecondPercentilesAreResolved() {
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram("READ", new Properties());
+    for (int latency = 1; latency <= 1000; latency++) {
+      h.measure(latency);
+    }
+    assertEquals(500L, h.getPercentileLatency(50));
+    assertEquals(990L, h.getPercentileLatency(99));
+    assertEquals(1000L, h.getPercentileLatency(100));
+  }
+
+  @Test
+  public void testLargeLatenciesKeepTheirSignificantDigits() {
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram("READ", new Properties());
+    h.measure(123456789);
+    h.measure(1);
+    long p100 = h.getPercentileLatency(100);
+    assertEquals(123456789L, p100);
+    long p50 = h.getPercentileLatency(50);
+    assertEquals(1L, p50);
+
+    h.measure(123456789);
+    h.measure(123456789);
+    long p75 = h.getPercentileLatency(75);
+    assertTrue(Math.abs(p75 - 123456789L) <= 123456789L / 1000);
+  }
+
+  @Test
+  public void testBucketsRoundTrip() {
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram("READ", new Properties());
+    for (long v = 0; v < Integer.MAX_VALUE; v = v * 3 + 1) {
+      int i = h.countsIndex(v);
+      assertTrue(h.lowestValue(i) <= v);
+      assertTrue(h.highestValue(i) >= v);
+    }
+  }
+
+  @Test
+  public void testMergeAddsCounts() {
+    Properties props = new Properties();
+    OneMeasurementHdrHistogram fast = new OneMeasurementHdrHistogram("READ", props);
+    OneMeasurementHdrHistogram slow = new OneMeasurementHdrHistogram("READ", props);
+    for (int i = 0; i < 98; i++) {
+      fast.measure(150);
+    }
+    slow.measure(7500);
+    slow.measure(9500);
+
+    fast.merge(slow);
+    assertEquals(150L, fast.getPercentileLatency(98));
+    // 7500 shares a bucket 4us wide with its neighbours
+    long p99 = fast.getPercentileLatency(99);
+    assertTrue(p99 >= 7500 && p99 < 7504);
+    assertEquals(9500L, fast.getPercentileLatency(100));
+  }
+
+  @Test
+  public void testEncodeRoundTrip() throws Exception {
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram("UPDATE", new Properties());
+    for (int latency = 0; latency < 100000; latency += 7) {
+      h.measure(latency);
+    }
+    h.measure(Integer.MAX_VALUE);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    h.encode(out);
+    out.close();
+
+    OneMeasurementHdrHistogram read = OneMeasurementHdrHistogram.decode("UPDATE", new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(h.operations, read.operations);
+    assertEquals(h.min, read.min);
+    assertEquals(h.max, read.max);
+    for (double p : new double[] { 1, 50, 99, 99.99, 100 }) {
+      assertEquals(h.getPercentileLatency(p), read.getPercentileLatency(p));
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testMergeRejectsOtherPrecision() {
+    Properties other = new Properties();
+    other.setProperty(OneMeasurementHdrHistogram.SIGNIFICANT_DIGITS, "2");
+    new OneMeasurementHdrHistogram("READ", new Properties()).merge(new OneMeasurementHdrHistogram("READ", other));
+  }
+}
@@ -0,0 +1,55 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestOneMeasurementPayload {
+  @Test
+  public void testBytesAreCountedAndMerged() {
+    OneMeasurementPayload a = new OneMeasurementPayload("Payload-READ");
+    OneMeasurementPayload b = new OneMeasurementPayload("Payload-READ");
+    a.measureBytes(1000);
+    a.measureBytes(3000);
+    b.measureBytes(500);
+    a.merge(b);
+    assertEquals(3L, a.operations);
+    assertEquals(4500L, a.totalbytes);
+    assertEquals(500L, a.minbytes);
+    assertEquals(3000L, a.maxbytes);
+  }
+
+  @Test
+  public void testLatenciesAreRecordedBySizeClass() {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_PAYLOAD_CLASSES, "1048576, 4096");
+    Measurements measurements = new Measurements(props);
+    measurements.measurePayload("READ", 100, 1000);
+    measurements.measurePayload("READ", 4096, 2000);
+    measurements.measurePayload("READ", 2000000, 9000);
+
+    assertEquals(1000L, measurements.getPercentileLatency("READ-Payload<4KB", 100));
+    assertEquals(2000L, measurements.getPercentileLatency("READ-Payload<1MB", 100));
+    assertEquals(9000L, measurements.getPercentileLatency("READ-Payload>=1MB", 100));
+    OneMeasurementPayload payload = (OneMeasurementPayload) measurements.merged().get("Payload-READ");
+    assertEquals(2004196L, payload.totalbytes);
+    // the payload itself keeps no distribution of latencies
+    assertEquals(-1L, payload.getPercentileLatency(50));
+  }
+
+  @Test
+  public void testPayloadsAreOnlyCountedIfAskedFor() {
+    Properties props = new Properties();
+    Measurements measurements = new Measurements(props);
+    assertFalse(measurements.isMeasuringPayload());
+    measurements.measurePayload("READ", 100, 1000);
+    assertNull(measurements.merged().get("Payload-READ"));
+
+    props.setProperty(Measurements.MEASUREMENT_PAYLOAD, "true");
+    measurements = new Measurements(props);
+    assertTrue(measurements.isMeasuringPayload());
+    measurements.measurePayload("READ", 100, 1000);
+    assertEquals(100L, ((OneMeasurementPayload) measurements.merged().get("Payload-READ")).totalbytes);
+  }
+}
@@ -0,0 +1,81 @@
+package com.yahoo.ycsb.measurements;
+
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestOneMeasurementTimeSeries {
+  private static final long START = 1000000000000L;
+
+  @Test
+  public void testEachUnitKeepsItsOwnPercentiles() {
+    OneMeasurementTimeSeries t = new OneMeasurementTimeSeries("READ", new Properties());
+    for (int i = 1; i <= 100; i++) {
+      t.measure(i * 10, START + 200);
+      t.measure(i * 1000, START + 1500);
+    }
+    t.flush();
+    assertEquals(2, t.used);
+    assertEquals(100L, t.slotoperations[0]);
+    assertEquals(1000, t.slotmax[0]);
+    long p50 = OneMeasurementTimeSeries.percentile(t.slothistogram[0], 100, 50, 1000);
+    assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+    long p99 = OneMeasurementTimeSeries.percentile(t.slothistogram[1], 100, 99, 100000);
+    assertTrue(p99 >= 99000 && p99 <= 99000 * 1.125);
+    assertEquals(100000L, t.getPercentileLatency(100));
+  }
+
+  @Test
+  public void testUnitsAreCombinedWhenTheSlotsRunOut() {
+    Properties props = new Properties();
+    props.setProperty(OneMeasurementTimeSeries.UNITS, "4");
+    OneMeasurementTimeSeries t = new OneMeasurementTimeSeries("READ", props);
+    for (int s = 0; s < 10; s++) {
+      t.measure(100, START + s * 1000);
+    }
+    t.flush();
+    assertEquals(4000L, t.granularity);
+    assertTrue(t.used <= 4);
+    long ops = 0;
+    for (int i = 0; i < t.used; i++) {
+      ops += t.slotoperations[i];
+    }
+    assertEquals(10L, ops);
+    assertEquals(10L, t.operations);
+  }
+
+  @Test
+  public void testMergedUnitsLineUpByTime() {
+    OneMeasurementTimeSeries a = new OneMeasurementTimeSeries("READ", new Properties());
+    OneMeasurementTimeSeries b = new OneMeasurementTimeSeries("READ", new Properties());
+    a.measure(100, START + 5000);
+    b.measure(300, START + 5999);
+    b.measure(900, START + 2000);
+    a.merge(b);
+    a.flush();
+    assertEquals(START + 2000, a.first);
+    assertEquals(3L, a.operations);
+    assertEquals(2L, a.slotoperations[3]);
+    assertEquals(400L, a.slottotallatency[3]);
+    assertEquals(900, a.slotmax[0]);
+  }
+
+  @Test
+  public void testBucketsHoldTheirLatencies() {
+    for (long v = 0; v < Integer.MAX_VALUE; v = v * 3 + 1) {
+      int i = OneMeasurementTimeSeries.bucket(v);
+      assertTrue(OneMeasurementTimeSeries.highestValue(i) >= v);
+      assertTrue(i == 0 || OneMeasurementTimeSeries.highestValue(i - 1) < v);
+    }
+  }
+
+  @Test
+  public void testUnitsStartAtOrBeforeTheirTimes() {
+    assertEquals(2L, OneMeasurementTimeSeries.floorDiv(5, 2));
+    assertEquals(-3L, OneMeasurementTimeSeries.floorDiv(-5, 2));
+    assertEquals(-2L, OneMeasurementTimeSeries.floorDiv(-4, 2));
+    assertEquals(-3L, OneMeasurementTimeSeries.floorDiv(5, -2));
+    assertEquals(0L, OneMeasurementTimeSeries.floorDiv(0, 1000));
+  }
+}
@@ -0,0 +1,127 @@
+package com.yahoo.ycsb.workloads;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.DB;
+import com.yahoo.ycsb.PooledByteIterator;
+import com.yahoo.ycsb.RandomByteIterator;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestCoreWorkloadRecords {
+  /**
+   * Remembers the maps and sets it is passed.
+   */
+  static class RecordingDB extends DB {
+    final List<Object> passed = new ArrayList<Object>();
+
+    public int read(String table, String key, Set<String> fields, HashMap<String, ByteIterator> result) {
+      passed.add(fields);
+      passed.add(result);
+      return 0;
+    }
+
+    public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {
+      passed.add(result);
+      return 0;
+    }
+
+    public int update(String table, String key, HashMap<String, ByteIterator> values) {
+      passed.add(values);
+      assertEquals(1, values.size());
+      return 0;
+    }
+
+    public int insert(String table, String key, HashMap<String, ByteIterator> values) {
+      passed.add(values);
+      assertEquals(10, values.size());
+      return 0;
+    }
+
+    public int delete(String table, String key) {
+      return 0;
+    }
+  }
+
+  private static Properties properties(String reuse) {
+    Properties p = new Properties();
+    p.setProperty("recordcount", "100");
+    p.setProperty("operationcount", "100");
+    p.setProperty(CoreWorkload.READ_ALL_FIELDS_PROPERTY, "false");
+    p.setProperty(CoreWorkload.READ_PROPORTION_PROPERTY, "0.25");
+    p.setProperty(CoreWorkload.UPDATE_PROPORTION_PROPERTY, "0.25");
+    p.setProperty(CoreWorkload.INSERT_PROPORTION_PROPERTY, "0.25");
+    p.setProperty(CoreWorkload.SCAN_PROPORTION_PROPERTY, "0.25");
+    p.setProperty(CoreWorkload.REUSE_RECORDS_PROPERTY, reuse);
+    return p;
+  }
+
+  private static int distinct(List<Object> objects) {
+    List<Object> seen = new ArrayList<Object>();
+    for (Object o : objects) {
+      boolean found = false;
+      for (Object s : seen) {
+        found |= (s == o);
+      }
+      if (!found) {
+        seen.add(o);
+      }
+    }
+    return seen.size();
+  }
+
+  @Test
+  public void testRecordsAreReused() throws Exception {
+    CoreWorkload workload = new CoreWorkload();
+    Properties p = properties("true");
+    workload.init(p);
+    Object state = workload.initThread(p, 0, 1);
+    RecordingDB db = new RecordingDB();
+    for (int i = 0; i < 200; i++) {
+      workload.doTransaction(db, state);
+    }
+    // the fields, the result of reads, the values of writes and the results of scans
+    assertEquals(4, distinct(db.passed));
+  }
+
+  @Test
+  public void testRecordsAreNotReusedUnlessAskedFor() throws Exception {
+    CoreWorkload workload = new CoreWorkload();
+    Properties p = properties("false");
+    p.remove(CoreWorkload.REUSE_RECORDS_PROPERTY);
+    workload.init(p);
+    Object state = workload.initThread(p, 0, 1);
+    RecordingDB db = new RecordingDB();
+    for (int i = 0; i < 10; i++) {
+      workload.doTransaction(db, state);
+    }
+    assertTrue(distinct(db.passed) > 10);
+  }
+
+  @Test
+  public void testFieldNamesAreBuiltOnce() throws Exception {
+    CoreWorkload workload = new CoreWorkload();
+    workload.init(properties("true"));
+    assertSame(workload.buildValues().keySet().iterator().next(), workload.buildValues().keySet().iterator().next());
+  }
+
+  @Test
+  public void testValuesAreSlicedFromAPoolOnlyIfAskedFor() throws Exception {
+    CoreWorkload workload = new CoreWorkload();
+    workload.init(properties("false"));
+    assertEquals(RandomByteIterator.class, workload.buildValues().values().iterator().next().getClass());
+
+    Properties p = properties("false");
+    p.setProperty(CoreWorkload.VALUE_POOL_SIZE_PROPERTY, "65536");
+    workload = new CoreWorkload();
+    workload.init(p);
+    assertEquals(PooledByteIterator.class, workload.buildValues().values().iterator().next().getClass());
+  }
+}